@@ -19,14 +19,22 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import nl.gogognome.lib.businessobject.BusinessObject;
 import nl.gogognome.lib.businessobject.PrimaryKey;
-import nl.gogognome.lib.dao.OrderByClause.TableColumnAndDirection;
+import nl.gogognome.lib.dao.SqlTemplateCache.Operation;
 import nl.gogognome.lib.util.Factory;
 
 
@@ -40,8 +48,23 @@ import nl.gogognome.lib.util.Factory;
 public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends BusinessObject<P>>
 		extends AbstractDAO {
 
+    /** The default maximum number of statements that are sent to the database in one batch. */
+    public final static int DEFAULT_BATCH_SIZE = 100;
+
+    /** The default number of rows that streaming queries fetch from the database at once. */
+    public final static int DEFAULT_FETCH_SIZE = 500;
+
+    /** Limits the memory allocated up front for a page, since the last page may be much smaller than the limit. */
+    private final static int MAX_INITIAL_PAGE_CAPACITY = 1000;
+
+    private final static Map<Class<?>, BusinessObjectChangeListener> DAO_CLASS_TO_CHANGE_LISTENER_MAP =
+    		new ConcurrentHashMap<Class<?>, BusinessObjectChangeListener>();
+
     protected final DBMSSpecificDAOPlugin plugin;
 
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
     /**
      * Constructor.
      * @param connection the connection to the database used by this DAO.
@@ -52,6 +75,96 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
         this.plugin = Factory.createInstance(DBMSSpecificDAOPlugin.class, connection, table);
     }
 
+    /**
+     * Override this method to enable dirty tracking. If dirty tracking is enabled, then a snapshot
+     * of each loaded business object is kept and {@link #updateBO(BusinessObject)} only updates the columns
+     * that changed since the business object was loaded, also if the business object was loaded in another
+     * transaction. The snapshot belongs to the loaded instance, so copies of the business object are fully updated.
+     * Creating, saving or updating a business object removes its snapshot.
+     * @return <code>true</code> if dirty tracking is enabled; <code>false</code> otherwise
+     */
+    protected boolean isDirtyTrackingEnabled() {
+    	return false;
+    }
+
+    /**
+     * Discards the snapshots that dirty tracking keeps for the loaded business objects.
+     * Call this method when a transaction is rolled back, because the snapshots taken in that transaction
+     * may contain values that have been rolled back.
+     */
+    public static void discardSnapshots() {
+    	BusinessObjectSnapshots.removeAll();
+    }
+
+    /**
+     * Sets the listener that is notified of the changes that DAOs of a class make to their table.
+     * The listener also applies to DAOs of subclasses of the class, unless a listener has been set
+     * for the subclass.
+     * @param daoClass the class of the DAOs
+     * @param listener the listener; <code>null</code> to remove the listener
+     */
+    public static void setChangeListener(Class<?> daoClass, BusinessObjectChangeListener listener) {
+    	if (listener != null) {
+    		DAO_CLASS_TO_CHANGE_LISTENER_MAP.put(daoClass, listener);
+    	} else {
+    		DAO_CLASS_TO_CHANGE_LISTENER_MAP.remove(daoClass);
+    	}
+    }
+
+    private BusinessObjectChangeListener getChangeListener() {
+    	for (Class<?> c = getClass(); c != AbstractBusinessObjectDAO.class; c = c.getSuperclass()) {
+    		BusinessObjectChangeListener listener = DAO_CLASS_TO_CHANGE_LISTENER_MAP.get(c);
+    		if (listener != null) {
+    			return listener;
+    		}
+    	}
+    	return null;
+    }
+
+    private void fireBusinessObjectChanged(P pk) {
+    	BusinessObjectChangeListener listener = getChangeListener();
+    	if (listener != null && pk != null) {
+    		listener.businessObjectChanged(pk);
+    	}
+    }
+
+    private void fireAllBusinessObjectsChanged() {
+    	BusinessObjectChangeListener listener = getChangeListener();
+    	if (listener != null) {
+    		listener.allBusinessObjectsChanged();
+    	}
+    }
+
+    public int getBatchSize() {
+    	return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of statements that are sent to the database in one batch.
+     * @param batchSize the batch size; must be at least 1
+     */
+    public void setBatchSize(int batchSize) {
+    	if (batchSize < 1) {
+    		throw new IllegalArgumentException("Batch size must be at least 1 but was " + batchSize);
+    	}
+    	this.batchSize = batchSize;
+    }
+
+    public int getFetchSize() {
+    	return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows that streaming queries fetch from the database at once.
+     * @param fetchSize the fetch size; must be at least 1
+     */
+    public void setFetchSize(int fetchSize) {
+    	if (fetchSize < 1) {
+    		throw new IllegalArgumentException("Fetch size must be at least 1 but was " + fetchSize);
+    	}
+    	this.fetchSize = fetchSize;
+    }
+
     /**
      * Finds a business object by its primary key.
      * @param pk the primary key.
@@ -64,25 +177,104 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
         try {
 	        T result = null;
 	        ColumnValuePairs pkNamesAndValues = getPKColumnsAndValues(pk);
-	        statement = prepareStatement("SELECT * FROM " + table.getName()
-	        		+ ' ' + createWhereClause(pkNamesAndValues));
+	        statement = prepareStatement(getSql(Operation.FIND, null, pkNamesAndValues));
 	        setParameters(statement, 1, pkNamesAndValues);
-	        logger.debug("findByPk(): statement = " + statement.toString());
+	        logger.debug("findByPk(): statement = {}", statement);
 	        resultSet = statement.executeQuery();
+	        Record record = Record.forAllColumns(table, resultSet);
 	        while (resultSet.next()) {
 	            if (result != null) {
 	                throw new SQLException("Found more than 1 record with PK " + pk.getPresentationName());
 	            }
-	            result = convert(new Record(table, resultSet));
+	            result = load(record);
 	        }
 
 	        return result;
         } finally {
-            closeStatement(statement);
             closeResultSet(resultSet);
+            closeStatement(statement);
         }
     }
 
+    /**
+     * Finds business objects by their primary keys. The business objects are found with
+     * as few queries as possible: each query finds as many business objects as the IN list
+     * limit of the DBMS allows.
+     * @param pks the primary keys
+     * @return a map from primary key to business object. Primary keys for which no business object
+     *         exists are not present in the map.
+     * @throws SQLException if a problem occurs while searching for the BOs.
+     */
+    public Map<P, T> findByPKs(Collection<P> pks) throws SQLException {
+    	Map<P, T> result = new HashMap<P, T>();
+    	if (pks.isEmpty()) {
+    		return result;
+    	}
+
+    	List<ColumnValuePairs> keys = getDistinctKeys(pks);
+    	List<TableColumn> keyColumns = getKeyColumns(keys);
+    	int maxNrKeysPerQuery = Math.max(1, plugin.getMaxInListSize() / keyColumns.size());
+    	String queryPrefix = getSql(Operation.FIND, null, new ColumnValuePairs()) + " WHERE ";
+    	for (int start=0; start<keys.size(); start += maxNrKeysPerQuery) {
+    		List<ColumnValuePairs> chunk = keys.subList(start, Math.min(keys.size(), start + maxNrKeysPerQuery));
+    		PreparedStatement statement = prepareInListStatement(queryPrefix, keyColumns, chunk, maxNrKeysPerQuery);
+    		executeSelectStatement(statement, bo -> result.put(bo.getPK(), bo));
+    	}
+    	return result;
+    }
+
+    private List<ColumnValuePairs> getDistinctKeys(Collection<P> pks) throws SQLException {
+    	List<ColumnValuePairs> keys = new ArrayList<ColumnValuePairs>(pks.size());
+    	for (P pk : new LinkedHashSet<P>(pks)) {
+    		keys.add(getPKColumnsAndValues(pk));
+    	}
+    	return keys;
+    }
+
+    private List<TableColumn> getKeyColumns(List<ColumnValuePairs> keys) {
+    	List<TableColumn> keyColumns = new ArrayList<TableColumn>();
+    	for (ColumnValuePair cvp : keys.get(0)) {
+    		keyColumns.add(cvp.getColumn());
+    	}
+    	return keyColumns;
+    }
+
+    /**
+     * Prepares a statement that consists of a query prefix followed by a condition on the keys.
+     * @param queryPrefix the query prefix, ending with "WHERE "
+     * @param keyColumns the columns of the keys
+     * @param keys the keys
+     * @param maxNrKeysPerQuery the maximum number of keys per statement
+     * @return the statement with all parameters set
+     * @throws SQLException if a problem occurs while preparing the statement
+     */
+    private PreparedStatement prepareInListStatement(String queryPrefix, List<TableColumn> keyColumns,
+    		List<ColumnValuePairs> keys, int maxNrKeysPerQuery) throws SQLException {
+    	// Round the number of keys up to a power of two so that only a few different
+    	// queries are used, which keeps caches of prepared statements effective.
+    	int nrKeys = Math.min(maxNrKeysPerQuery, Integer.highestOneBit(keys.size() * 2 - 1));
+    	String query = queryPrefix
+    			+ SqlTemplateCache.createInCondition(keyColumns, nrKeys, plugin.supportsRowValueInList());
+
+    	PreparedStatement statement = prepareStatement(query);
+    	try {
+	    	int index = 1;
+	    	for (int i=0; i<nrKeys; i++) {
+	    		// Surplus parameters are filled with the last key.
+	    		ColumnValuePairs key = keys.get(Math.min(i, keys.size() - 1));
+	    		if (key.size() != keyColumns.size()) {
+	    			throw new SQLException("All primary keys must consist of the same columns: " + key);
+	    		}
+	    		setParameters(statement, index, key);
+	    		index += key.size();
+	    	}
+	    	return statement;
+    	} catch (SQLException | RuntimeException e) {
+    		closeStatement(statement);
+    		throw e;
+    	}
+    }
+
     /**
      * Controleert of een record bestaat met het opgegeven PK.
      * @param pk de PK
@@ -94,10 +286,10 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
         ResultSet resultSet = null;
         try {
             ColumnValuePairs pkNamesAndValues = getPKColumnsAndValues(pk);
-            statement = prepareStatement("SELECT * FROM " + table.getName() + ' '
-            		+ createWhereClause(pkNamesAndValues));
+            // At most two rows are needed to detect a PK that is not unique.
+            statement = prepareStatement(plugin.addLimit(getSql(Operation.EXISTS, null, pkNamesAndValues), 2));
             setParameters(statement, 1, pkNamesAndValues);
-            logger.debug("exists(): statement = " + statement.toString());
+            logger.debug("exists(): statement = {}", statement);
             resultSet = statement.executeQuery();
             int count = 0;
             while (resultSet.next()) {
@@ -111,8 +303,104 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
         } catch (SQLException e) {
             throw new SQLException("Probleem opgetreden bij het zoeken met de PK " + pk.getPresentationName() + ".", e);
         } finally {
+            closeResultSet(resultSet);
             closeStatement(statement);
+        }
+    }
+
+    /**
+     * Checks whether at least one record matches a list of columns and values.
+     * @param columnsAndValues the columns and values. If empty, then all records match.
+     * @return <code>true</code> if a record matches; <code>false</code> otherwise
+     * @throws SQLException if a problem occurs while searching.
+     */
+    protected boolean exists(ColumnValuePairs columnsAndValues) throws SQLException {
+        String query = plugin.addLimit(getSql(Operation.EXISTS, null, columnsAndValues), 1);
+        return executeAggregateQuery(query, columnsAndValues, null) != null;
+    }
+
+    /**
+     * Counts the records that match a list of columns and values.
+     * @param columnsAndValues the columns and values. If empty, then all records are counted.
+     * @return the number of matching records
+     * @throws SQLException if a problem occurs while counting.
+     */
+    protected long count(ColumnValuePairs columnsAndValues) throws SQLException {
+        Object count = executeAggregateQuery(getSql(Operation.COUNT, null, columnsAndValues),
+        		columnsAndValues, null);
+        return ((Number) count).longValue();
+    }
+
+    /**
+     * Sums the values of a numeric column of the records that match a list of columns and values.
+     * @param column the column to be summed
+     * @param columnsAndValues the columns and values. If empty, then all records are summed.
+     * @return the sum: a {@link Double} for a column of type DOUBLE or else a {@link Long};
+     *         <code>null</code> if no record matches
+     * @throws SQLException if a problem occurs while summing.
+     */
+    protected Number sum(TableColumn column, ColumnValuePairs columnsAndValues) throws SQLException {
+    	if (column.getType() != TableColumn.INTEGER && column.getType() != TableColumn.LONG
+    			&& column.getType() != TableColumn.DOUBLE) {
+    		throw new SQLException("Column " + column.getName() + " is not numeric.");
+    	}
+    	Object sum = executeAggregateQuery(getSql(Operation.SUM, ColumnValuePairs.of(column, null), columnsAndValues),
+    			columnsAndValues, null);
+    	if (sum == null) {
+    		return null;
+    	}
+    	Number number = (Number) sum;
+    	return column.getType() == TableColumn.DOUBLE ? (Number) number.doubleValue() : (Number) number.longValue();
+    }
+
+    /**
+     * Gets the minimum value of a column of the records that match a list of columns and values.
+     * @param column the column
+     * @param columnsAndValues the columns and values. If empty, then all records are used.
+     * @return the minimum value; <code>null</code> if no record matches
+     * @throws SQLException if a problem occurs while searching.
+     */
+    protected Object min(TableColumn column, ColumnValuePairs columnsAndValues) throws SQLException {
+    	return executeAggregateQuery(getSql(Operation.MIN, ColumnValuePairs.of(column, null), columnsAndValues),
+    			columnsAndValues, column);
+    }
+
+    /**
+     * Gets the maximum value of a column of the records that match a list of columns and values.
+     * @param column the column
+     * @param columnsAndValues the columns and values. If empty, then all records are used.
+     * @return the maximum value; <code>null</code> if no record matches
+     * @throws SQLException if a problem occurs while searching.
+     */
+    protected Object max(TableColumn column, ColumnValuePairs columnsAndValues) throws SQLException {
+    	return executeAggregateQuery(getSql(Operation.MAX, ColumnValuePairs.of(column, null), columnsAndValues),
+    			columnsAndValues, column);
+    }
+
+    /**
+     * Executes a query that returns at most one row with a single value.
+     * @param query the query
+     * @param columnsAndValues the values for the parameters of the query
+     * @param column if not <code>null</code>, the value is converted to the type of this column
+     * @return the value or <code>null</code> if the query returns no row or SQL NULL
+     * @throws SQLException if a problem occurs while executing the query
+     */
+    private Object executeAggregateQuery(String query, ColumnValuePairs columnsAndValues, TableColumn column)
+    		throws SQLException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = prepareStatement(query);
+            setParameters(statement, 1, columnsAndValues);
+            logger.debug("executeAggregateQuery(): statement = {}", statement);
+            resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+            	return null;
+            }
+            return column != null ? getValue(resultSet, 1, column) : resultSet.getObject(1);
+        } finally {
             closeResultSet(resultSet);
+            closeStatement(statement);
         }
     }
 
@@ -136,33 +424,22 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
             } else {
                 throw new Exception("Waarde van het type " + value.getClass() +  " wordt niet ondersteund.");
             }
-            logger.debug("findExactlyOne(): statement = " + statement.toString());
+            logger.debug("findExactlyOne(): statement = {}", statement);
             resultSet = statement.executeQuery();
+            Record record = Record.forResultSet(table, resultSet);
             while (resultSet.next()) {
                 if (result != null) {
                     throw new Exception("Meer dan 1 resultaat gevonden met de waarde " + value);
                 }
-                result = convert(new Record(table, resultSet));
+                result = load(record);
             }
 
             return result;
         } catch (SQLException e) {
             throw new Exception("Probleem opgetreden bij het zoeken met de waarde " + value + ".", e);
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                    // ignore
-                }
-            }
-            if (resultSet != null) {
-                try {
-                    resultSet.close();
-                } catch (SQLException e) {
-                    // ignore
-                }
-            }
+            closeResultSet(resultSet);
+            closeStatement(statement);
         }
     }
 
@@ -186,47 +463,144 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
         ResultSet resultSet = null;
         try {
             List<T> result = new LinkedList<T>();
-            Connection con = connection;
-            StringBuilder query = new StringBuilder();
-            query.append("SELECT * FROM ").append(table.getName());
+            String query = getSql(Operation.FIND, null, new ColumnValuePairs());
             if (orderByClause != null) {
-                query.append(" order by ");
-                List<TableColumnAndDirection> colDirs = orderByClause.getColumnAndDirections();
-                for (Iterator<TableColumnAndDirection> iter = colDirs.iterator(); iter.hasNext();) {
-                	TableColumnAndDirection colDir = iter.next();
-                	query.append(colDir.getColumn().getName()).append(' ');
-                	query.append(colDir.isAscending() ? "ASC" : "DESC");
-                	if (iter.hasNext()) {
-                		query.append(", ");
-                	}
-                }
+                query += ' ' + SqlTemplateCache.createOrderByClause(orderByClause);
             }
-            statement = prepareStatement(query.toString());
-            logger.debug("findAll(): statement = " + statement.toString());
+            statement = prepareStatement(query);
+            logger.debug("findAll(): statement = {}", statement);
             resultSet = statement.executeQuery();
+            Record record = Record.forAllColumns(table, resultSet);
             while (resultSet.next()) {
-                result.add(convert(new Record(table, resultSet)));
+                result.add(load(record));
             }
 
             return result;
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                    // ignore
-                }
-            }
-            if (resultSet != null) {
-                try {
-                    resultSet.close();
-                } catch (SQLException e) {
-                    // ignore
-                }
+            closeResultSet(resultSet);
+            closeStatement(statement);
+        }
+    }
+
+    /**
+     * Passes all business objects one by one to a consumer. In contrast to {@link #findAllBOs(OrderByClause)}
+     * the business objects are not collected in memory. Rows are fetched from the database
+     * in chunks of {@link #getFetchSize()} rows.
+     * @param orderByClause an optional order-by clause. Can be <code>null</code>.
+     * @param consumer the consumer
+     * @throws SQLException if a problem occurs reading a business object
+     */
+    protected void forEachBO(OrderByClause orderByClause, Consumer<? super T> consumer) throws SQLException {
+    	try (BusinessObjectCursor<P, T> cursor = openCursor(orderByClause)) {
+    		while (cursor.hasNext()) {
+    			consumer.accept(cursor.next());
+    		}
+    	} catch (UncheckedSQLException e) {
+    		throw e.getCause();
+    	}
+    }
+
+    /**
+     * Opens a cursor over all business objects. Rows are fetched from the database
+     * in chunks of {@link #getFetchSize()} rows. The caller must close the cursor.
+     * @param orderByClause an optional order-by clause. Can be <code>null</code>.
+     * @return the cursor
+     * @throws SQLException if a problem occurs while executing the query
+     */
+    protected BusinessObjectCursor<P, T> openCursor(OrderByClause orderByClause) throws SQLException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            String query = getSql(Operation.FIND, null, new ColumnValuePairs());
+            if (orderByClause != null) {
+                query += ' ' + SqlTemplateCache.createOrderByClause(orderByClause);
             }
+            statement = plugin.prepareStreamingStatement(query, fetchSize);
+            logger.debug("openCursor(): statement = {}", statement);
+            resultSet = statement.executeQuery();
+            return new BusinessObjectCursor<P, T>(this, statement, resultSet, Record.forAllColumns(table, resultSet));
+        } catch (SQLException | RuntimeException e) {
+            closeResultSet(resultSet);
+            closeStatement(statement);
+            throw e;
         }
     }
 
+    /**
+     * Gets a stream of all business objects. Rows are fetched from the database
+     * in chunks of {@link #getFetchSize()} rows. The caller must close the stream, for example
+     * using try-with-resources. Problems that occur while reading the stream are thrown
+     * as {@link UncheckedSQLException}.
+     * @param orderByClause an optional order-by clause. Can be <code>null</code>.
+     * @return the stream
+     * @throws SQLException if a problem occurs while executing the query
+     */
+    protected Stream<T> streamAllBOs(OrderByClause orderByClause) throws SQLException {
+    	return openCursor(orderByClause).stream();
+    }
+
+    /**
+     * Gets a page of business objects using keyset pagination. The page starts directly after
+     * the row with the specified key in the order of the order-by clause. In contrast to
+     * skipping rows with an offset, the cost of a page does not depend on how many rows precede it.
+     *
+     * <p>The order-by clause must order the rows uniquely, for example by ending with the
+     * primary key columns, and its columns must not contain <code>null</code> values.
+     * @param orderByClause the order-by clause
+     * @param lastSeenKey the values of the order-by columns of the last row of the previous page;
+     *        <code>null</code> to get the first page
+     * @param limit the maximum number of business objects in the page; must be positive
+     * @return the business objects of the page
+     * @throws SQLException if a problem occurs reading a business object
+     */
+    protected List<T> findPage(OrderByClause orderByClause, ColumnValuePairs lastSeenKey, int limit)
+    		throws SQLException {
+    	if (limit < 1) {
+    		throw new IllegalArgumentException("The limit must be positive.");
+    	}
+    	StringBuilder query = new StringBuilder(getSql(Operation.FIND, null, new ColumnValuePairs()));
+    	if (lastSeenKey != null) {
+    		query.append(" WHERE ").append(SqlTemplateCache.createKeysetCondition(orderByClause));
+    	}
+    	query.append(' ').append(SqlTemplateCache.createOrderByClause(orderByClause));
+
+    	// The limit is a parameter, so that pages of different sizes share the query.
+    	PreparedStatement statement = prepareStatement(plugin.addLimitParameter(query.toString()));
+    	try {
+	    	int index = 1;
+	    	if (lastSeenKey != null) {
+	    		for (TableColumn column : SqlTemplateCache.getKeysetParameterColumns(orderByClause)) {
+	    			ColumnValuePair cvp = lastSeenKey.getColumnValuePair(column);
+	    			if (cvp == null) {
+	    				throw new SQLException("The last seen key has no value for column " + column.getName());
+	    			}
+	    			setParameter(statement, index++, cvp);
+	    		}
+	    	}
+	    	statement.setInt(index, limit);
+    	} catch (SQLException | RuntimeException e) {
+    		closeStatement(statement);
+    		throw e;
+    	}
+
+    	List<T> result = new ArrayList<T>(Math.min(limit, MAX_INITIAL_PAGE_CAPACITY));
+    	executeSelectStatement(statement, result::add);
+    	return result;
+    }
+
+    /**
+     * Gets the page of business objects that follows a business object.
+     * See {@link #findPage(OrderByClause, ColumnValuePairs, int)}.
+     * @param orderByClause the order-by clause
+     * @param lastSeenBO the last business object of the previous page; <code>null</code> to get the first page
+     * @param limit the maximum number of business objects in the page
+     * @return the business objects of the page
+     * @throws SQLException if a problem occurs reading a business object
+     */
+    protected List<T> findPageAfter(OrderByClause orderByClause, T lastSeenBO, int limit) throws SQLException {
+    	return findPage(orderByClause, lastSeenBO != null ? convert(lastSeenBO) : null, limit);
+    }
+
     /**
      * Gets a list of {@link BusinessObject}s matching a list of columns and values.
      * @param columnsAndValues the columns  and values
@@ -237,6 +611,61 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
         return findByWhereClause(columnsAndValues, null);
     }
 
+    /**
+     * Checks whether this DAO supports scans over ranges of the primary key. This is the case
+     * if the primary key consists of one INTEGER or LONG column.
+     * @return <code>true</code> if ranges of the primary key are supported; <code>false</code> otherwise
+     */
+    public boolean supportsPKRanges() {
+    	List<TableColumn> pkColumns = table.getPrimaryKeyColumns();
+    	return pkColumns.size() == 1 && (pkColumns.get(0).getType() == TableColumn.INTEGER
+    			|| pkColumns.get(0).getType() == TableColumn.LONG);
+    }
+
+    /**
+     * Gets the smallest and largest value of the primary key.
+     * @return an array containing the smallest and largest value or <code>null</code> if the table is empty
+     * @throws SQLException if a problem occurs or if {@link #supportsPKRanges()} returns <code>false</code>
+     */
+    public long[] getPKRange() throws SQLException {
+    	if (!supportsPKRanges()) {
+    		throw new SQLException("Table " + table.getName() + " has no primary key of one integer column.");
+    	}
+    	TableColumn pkColumn = table.getPrimaryKeyColumns().get(0);
+    	Number min = (Number) min(pkColumn, new ColumnValuePairs());
+    	Number max = (Number) max(pkColumn, new ColumnValuePairs());
+    	return min != null && max != null ? new long[] { min.longValue(), max.longValue() } : null;
+    }
+
+    /**
+     * Passes the business objects whose primary key lies in a range one by one to a consumer,
+     * in the order of the primary key. The rows are fetched in chunks of {@link #getFetchSize()} rows.
+     * @param from the smallest value of the range (inclusive)
+     * @param to the largest value of the range (inclusive)
+     * @param consumer the consumer
+     * @throws SQLException if a problem occurs or if {@link #supportsPKRanges()} returns <code>false</code>
+     */
+    public void forEachBOInPKRange(long from, long to, Consumer<? super T> consumer) throws SQLException {
+    	if (!supportsPKRanges()) {
+    		throw new SQLException("Table " + table.getName() + " has no primary key of one integer column.");
+    	}
+    	TableColumn pkColumn = table.getPrimaryKeyColumns().get(0);
+    	Criteria criteria = pkColumn.getType() == TableColumn.INTEGER
+    			? new Criteria().between(pkColumn, (int) from, (int) to)
+    			: new Criteria().between(pkColumn, from, to);
+    	criteria.orderBy(OrderByClause.ascending(pkColumn));
+
+    	CriteriaQuery query = SqlTemplateCache.getCriteriaQuery(table, plugin, Operation.FIND, criteria);
+    	PreparedStatement statement = plugin.prepareStreamingStatement(query.getSql(), fetchSize);
+    	try {
+    		query.setParameters(statement, criteria);
+    	} catch (SQLException | RuntimeException e) {
+    		closeStatement(statement);
+    		throw e;
+    	}
+    	executeSelectStatement(statement, consumer);
+    }
+
     /**
      * Gets a list of {@link BusinessObject}s matching a list of column values.
      * @param columnNamesAndValues the column names and values
@@ -248,7 +677,7 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
     protected List<T> findByWhereClause(ColumnValuePairs columnNamesAndValues, String orderBy) throws SQLException {
         PreparedStatement statement = null;
         String whereClause = null;
-        whereClause = "SELECT * FROM " + table.getName() + ' ' + createWhereClause(columnNamesAndValues);
+        whereClause = getSql(Operation.FIND, null, columnNamesAndValues);
         if (orderBy != null) {
             whereClause += ' ' + orderBy;
         }
@@ -257,6 +686,157 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
         return executeSelectStatement(statement);
     }
 
+    /**
+     * Gets a list of {@link BusinessObject}s matching criteria.
+     * @param criteria the criteria
+     * @return the list of business objects, in the order of the order by clause of the criteria
+     * @throws SQLException if a problem occurs while creating the list.
+     */
+    protected List<T> findByCriteria(Criteria criteria) throws SQLException {
+    	return executeSelectStatement(prepareCriteriaStatement(Operation.FIND, criteria));
+    }
+
+    /**
+     * Passes the business objects that match criteria one by one to a consumer.
+     * @param criteria the criteria
+     * @param consumer the consumer
+     * @throws SQLException if a problem occurs while searching for the business objects.
+     */
+    protected void forEachByCriteria(Criteria criteria, Consumer<? super T> consumer) throws SQLException {
+    	executeSelectStatement(prepareCriteriaStatement(Operation.FIND, criteria), consumer);
+    }
+
+    /**
+     * Counts the records that match criteria.
+     * @param criteria the criteria. The order by clause and limit are ignored.
+     * @return the number of matching records
+     * @throws SQLException if a problem occurs while counting.
+     */
+    protected long count(Criteria criteria) throws SQLException {
+        PreparedStatement statement = prepareCriteriaStatement(Operation.COUNT, criteria);
+        ResultSet resultSet = null;
+        try {
+            logger.debug("count(): statement = {}", statement);
+            resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getLong(1);
+        } finally {
+            closeResultSet(resultSet);
+            closeStatement(statement);
+        }
+    }
+
+    /**
+     * Deletes the records that match criteria.
+     * @param criteria the criteria. The order by clause and limit are ignored.
+     * @return the number of deleted records
+     * @throws SQLException if a problem occurs while deleting the records.
+     */
+    protected int deleteByCriteria(Criteria criteria) throws SQLException {
+        PreparedStatement statement = prepareCriteriaStatement(Operation.DELETE, criteria);
+        try {
+            logger.debug("deleteByCriteria(): statement = {}", statement);
+            return statement.executeUpdate();
+        } finally {
+            closeStatement(statement);
+            fireAllBusinessObjectsChanged();
+        }
+    }
+
+    /**
+     * Gets the values of the columns of a projection for the records that match criteria.
+     * No business objects are created.
+     * @param projection the projection
+     * @param criteria the criteria
+     * @return the rows, in the order of the order by clause of the criteria
+     * @throws SQLException if a problem occurs while searching for the rows.
+     */
+    protected List<ProjectedRow> findProjection(Projection projection, Criteria criteria) throws SQLException {
+    	List<ProjectedRow> rows = new ArrayList<ProjectedRow>();
+    	forEachProjection(projection, criteria, rows::add);
+    	return rows;
+    }
+
+    /**
+     * Passes the values of the columns of a projection for the records that match criteria
+     * one by one to a consumer. No business objects are created.
+     * @param projection the projection
+     * @param criteria the criteria
+     * @param consumer the consumer
+     * @throws SQLException if a problem occurs while searching for the rows.
+     */
+    protected void forEachProjection(Projection projection, Criteria criteria, Consumer<? super ProjectedRow> consumer)
+    		throws SQLException {
+    	PreparedStatement statement = prepareCriteriaStatement(
+    			SqlTemplateCache.getProjectionQuery(table, plugin, projection, criteria), criteria);
+        ResultSet resultSet = null;
+        try {
+            logger.debug("forEachProjection(): statement = {}", statement);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                consumer.accept(projection.readRow(resultSet));
+            }
+        } finally {
+            closeResultSet(resultSet);
+            closeStatement(statement);
+        }
+    }
+
+    /**
+     * Loads the values of all columns of the table for the records that match criteria
+     * into a {@link ColumnarTable}. No business objects are created.
+     * @param criteria the criteria
+     * @return the columnar table
+     * @throws SQLException if a problem occurs while loading the rows.
+     */
+    protected ColumnarTable loadColumnar(Criteria criteria) throws SQLException {
+    	return loadColumnar(new Projection(table.getColumns().toArray(new TableColumn[0])), criteria);
+    }
+
+    /**
+     * Loads the values of the columns of a projection for the records that match criteria
+     * into a {@link ColumnarTable}. No business objects are created. The rows are fetched
+     * in chunks of {@link #getFetchSize()} rows.
+     * @param projection the projection
+     * @param criteria the criteria
+     * @return the columnar table
+     * @throws SQLException if a problem occurs while loading the rows.
+     */
+    protected ColumnarTable loadColumnar(Projection projection, Criteria criteria) throws SQLException {
+    	CriteriaQuery query = SqlTemplateCache.getProjectionQuery(table, plugin, projection, criteria);
+    	PreparedStatement statement = plugin.prepareStreamingStatement(query.getSql(), fetchSize);
+        ResultSet resultSet = null;
+        try {
+        	query.setParameters(statement, criteria);
+            logger.debug("loadColumnar(): statement = {}", statement);
+            resultSet = statement.executeQuery();
+            ColumnarTable columnarTable = new ColumnarTable(projection);
+            while (resultSet.next()) {
+                columnarTable.appendRow(resultSet);
+            }
+            columnarTable.trimToSize();
+            return columnarTable;
+        } finally {
+            closeResultSet(resultSet);
+            closeStatement(statement);
+        }
+    }
+
+    private PreparedStatement prepareCriteriaStatement(Operation operation, Criteria criteria) throws SQLException {
+    	return prepareCriteriaStatement(SqlTemplateCache.getCriteriaQuery(table, plugin, operation, criteria), criteria);
+    }
+
+    private PreparedStatement prepareCriteriaStatement(CriteriaQuery query, Criteria criteria) throws SQLException {
+    	PreparedStatement statement = prepareStatement(query.getSql());
+    	try {
+    		query.setParameters(statement, criteria);
+    		return statement;
+    	} catch (SQLException | RuntimeException e) {
+    		closeStatement(statement);
+    		throw e;
+    	}
+    }
+
     /**
      * Gets a list of business objects that are found by a prepared statement.
      * The statement will be closed by this method.
@@ -268,17 +848,41 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
     protected List<T> executeSelectStatement(PreparedStatement statement) throws SQLException {
         List<T> result = new ArrayList<T>();
         ResultSet resultSet = null;
-        logger.debug("executeSelectStatement(): statement = " + statement.toString());
+        logger.debug("executeSelectStatement(): statement = {}", statement);
         try {
             resultSet = statement.executeQuery();
+            Record record = Record.forResultSet(table, resultSet);
             while (resultSet.next()) {
-                result.add(convert(new Record(table, resultSet)));
+                result.add(load(record));
             }
 
             return result;
         } finally {
+            closeResultSet(resultSet);
             closeStatement(statement);
+        }
+    }
+
+    /**
+     * Passes the business objects that are found by a prepared statement one by one
+     * to a consumer. The statement will be closed by this method.
+     * @param statement the prepared statement
+     * @param consumer the consumer
+     * @throws SQLException if a problem occurs while executing the statement
+     */
+    protected void executeSelectStatement(PreparedStatement statement, Consumer<? super T> consumer)
+    		throws SQLException {
+        ResultSet resultSet = null;
+        logger.debug("executeSelectStatement(): statement = {}", statement);
+        try {
+            resultSet = statement.executeQuery();
+            Record record = Record.forResultSet(table, resultSet);
+            while (resultSet.next()) {
+                consumer.accept(load(record));
+            }
+        } finally {
             closeResultSet(resultSet);
+            closeStatement(statement);
         }
     }
 
@@ -290,61 +894,225 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
      * @throws SQLException if a problem occurs while creating the business object.
      */
     public T createBO(T bo) throws SQLException {
+    	BusinessObjectSnapshots.remove(bo);
         T result = bo;
         PreparedStatement statement = null;
-        ResultSet keysResultSet = null;
         try {
-            Connection con = connection;
-            StringBuilder query = new StringBuilder(200);
-            query.append("INSERT INTO ").append(table.getName()).append(" (");
             ColumnValuePairs colValues = convert(bo);
             plugin.prepareColumnValuesForAutoIncrementColumns(colValues);
-            for (Iterator<ColumnValuePair> iter = colValues.iterator(); iter.hasNext(); ) {
-                ColumnValuePair ColumnValuePair = iter.next();
-                query.append(ColumnValuePair.getColumn().getName());
-                if (iter.hasNext()) {
-                    query.append(", ");
-                }
-            }
-            query.append(") VALUES (");
-            for (Iterator<ColumnValuePair> iter = colValues.iterator(); iter.hasNext(); ) {
-            	ColumnValuePair cvp = iter.next();
-				if (cvp.getValue() instanceof Literal) {
-					query.append(((Literal)cvp.getValue()).getValue());
-				} else {
-					query.append('?');
-				}
-                if (iter.hasNext()) {
-                    query.append(", ");
-                }
-            }
-            query.append(')');
-            statement = prepareStatement(query.toString());
-            int index = 1;
-            for (ColumnValuePair cvp : colValues) {
-            	if (!(cvp.getValue() instanceof Literal)) {
-            		setParameter(statement, index, cvp);
-                    index++;
-            	}
-            }
-            logger.debug("createBO(): statement = " + statement.toString());
+            statement = prepareInsertStatement(getSql(Operation.INSERT, colValues, null));
+            setInsertParameters(statement, colValues);
+            logger.debug("createBO(): statement = {}", statement);
             int count = statement.executeUpdate();
             if (count != 1) {
                 throw new SQLException("Number of rows created: " + count + "; bo: " + bo);
             }
 
             // If values are automatically created, then the BO can be updated with these values.
-            colValues = plugin.getGeneratedValues(statement);
-            if (!colValues.isEmpty()) {
-            	result = updateCreatedBO(bo, colValues);
+            if (table.hasAutoIncrementColumns()) {
+	            colValues = plugin.getGeneratedValues(statement);
+	            if (!colValues.isEmpty()) {
+	            	result = updateCreatedBO(bo, colValues);
+	            }
+            }
+            fireBusinessObjectChanged(result.getPK());
+            return result;
+        } finally {
+        	closeStatement(statement);
+        }
+    }
+
+    /**
+     * Creates business objects in the database. The insert statements are sent to the database
+     * in batches of at most {@link #getBatchSize()} statements.
+     * @param bos the business objects
+     * @return the created business objects in the same order as <code>bos</code>. Business objects
+     *         that had no PK will have one in the returned list.
+     * @throws SQLException if a problem occurs while creating the business objects.
+     */
+    public List<T> createBOs(Collection<T> bos) throws SQLException {
+        List<T> result = new ArrayList<T>(bos.size());
+        List<T> batch = new ArrayList<T>(Math.min(bos.size(), batchSize));
+        PreparedStatement statement = null;
+        String batchQuery = null;
+        try {
+            for (T bo : bos) {
+            	BusinessObjectSnapshots.remove(bo);
+                ColumnValuePairs colValues = convert(bo);
+                plugin.prepareColumnValuesForAutoIncrementColumns(colValues);
+                String query = getSql(Operation.INSERT, colValues, null);
+                if (!query.equals(batchQuery)) {
+                	// Only statements with the same query can be part of the same batch.
+                	executeInsertBatch(statement, batch, result);
+                	closeStatement(statement);
+                	statement = prepareInsertStatement(query);
+                	batchQuery = query;
+                } else if (batch.size() == batchSize) {
+                	executeInsertBatch(statement, batch, result);
+                }
+                setInsertParameters(statement, colValues);
+                statement.addBatch();
+                batch.add(bo);
             }
+            executeInsertBatch(statement, batch, result);
             return result;
         } finally {
         	closeStatement(statement);
-        	closeResultSet(keysResultSet);
+        	fireAllBusinessObjectsChanged();
         }
     }
 
+    private void executeInsertBatch(PreparedStatement statement, List<T> batch, List<T> result)
+    		throws SQLException {
+    	if (batch.isEmpty()) {
+    		return;
+    	}
+
+    	logger.debug("createBOs(): statement = {}; batch size = {}", statement, batch.size());
+    	int[] counts = statement.executeBatch();
+    	for (int i=0; i<counts.length; i++) {
+    		if (counts[i] != 1 && counts[i] != Statement.SUCCESS_NO_INFO) {
+    			throw new SQLException("Number of rows created: " + counts[i] + "; bo: " + batch.get(i));
+    		}
+    	}
+
+        // If values are automatically created, then the BOs can be updated with these values.
+    	List<ColumnValuePairs> generatedValues = table.hasAutoIncrementColumns()
+    			? plugin.getGeneratedValues(statement, batch.size()) : Collections.<ColumnValuePairs>emptyList();
+    	for (int i=0; i<batch.size(); i++) {
+    		T bo = batch.get(i);
+    		if (i < generatedValues.size() && !generatedValues.get(i).isEmpty()) {
+    			bo = updateCreatedBO(bo, generatedValues.get(i));
+    		}
+    		result.add(bo);
+    	}
+    	batch.clear();
+    }
+
+    /**
+     * Prepares an insert statement. Generated keys are only requested for tables with auto increment
+     * columns, because the connection pool does not cache statements that return generated keys.
+     * @param query the insert statement
+     * @return the prepared statement
+     * @throws SQLException if a problem occurs while preparing the statement
+     */
+    private PreparedStatement prepareInsertStatement(String query) throws SQLException {
+    	if (table.hasAutoIncrementColumns()) {
+    		return prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+    	}
+    	return prepareStatement(query);
+    }
+
+    private void setInsertParameters(PreparedStatement statement, ColumnValuePairs colValues)
+    		throws SQLException {
+        int index = 1;
+        for (ColumnValuePair cvp : colValues) {
+        	if (!(cvp.getValue() instanceof Literal)) {
+        		setParameter(statement, index, cvp);
+                index++;
+        	}
+        }
+    }
+
+    /**
+     * Saves a business object: it is created if it does not exist yet in the database and
+     * updated otherwise. A business object with a PK is saved in a single statement.
+     * A business object without PK is created with {@link #createBO(BusinessObject)}.
+     * @param bo the business object
+     * @return the saved business object. If <code>bo</code> has no PK then the returned business
+     *         object will have one.
+     * @throws SQLException if a problem occurs while saving the business object.
+     */
+    public T saveBO(T bo) throws SQLException {
+    	if (bo.getPK() == null) {
+    		return createBO(bo);
+    	}
+    	BusinessObjectSnapshots.remove(bo);
+
+        PreparedStatement statement = null;
+        try {
+            ColumnValuePairs colValues = convert(bo);
+            statement = prepareStatement(getUpsertSql(colValues, getPKColumnsAndValues(bo.getPK())));
+            setParameters(statement, 1, colValues);
+            logger.debug("saveBO(): statement = {}", statement);
+            statement.executeUpdate();
+            return bo;
+        } finally {
+        	closeStatement(statement);
+        	fireBusinessObjectChanged(bo.getPK());
+        }
+    }
+
+    /**
+     * Saves business objects: each business object is created if it does not exist yet in the database
+     * and updated otherwise. The statements for business objects with a PK are sent to the database
+     * in batches of at most {@link #getBatchSize()} statements. Business objects without PK are
+     * created with {@link #createBOs(Collection)}.
+     * @param bos the business objects
+     * @return the saved business objects in the same order as <code>bos</code>. Business objects
+     *         that had no PK will have one in the returned list.
+     * @throws SQLException if a problem occurs while saving the business objects.
+     */
+    public List<T> saveBOs(Collection<T> bos) throws SQLException {
+    	List<T> result = new ArrayList<T>(bos);
+    	List<Integer> indicesWithoutPK = new ArrayList<Integer>();
+    	List<T> bosWithoutPK = new ArrayList<T>();
+        int nrStatementsInBatch = 0;
+        PreparedStatement statement = null;
+        String batchQuery = null;
+        try {
+            for (int i=0; i<result.size(); i++) {
+            	T bo = result.get(i);
+            	if (bo.getPK() == null) {
+            		indicesWithoutPK.add(i);
+            		bosWithoutPK.add(bo);
+            		continue;
+            	}
+            	BusinessObjectSnapshots.remove(bo);
+                ColumnValuePairs colValues = convert(bo);
+                String query = getUpsertSql(colValues, getPKColumnsAndValues(bo.getPK()));
+                if (!query.equals(batchQuery)) {
+                	// Only statements with the same query can be part of the same batch.
+                	executeSaveBatch(statement, nrStatementsInBatch);
+                	nrStatementsInBatch = 0;
+                	closeStatement(statement);
+                	statement = prepareStatement(query);
+                	batchQuery = query;
+                } else if (nrStatementsInBatch == batchSize) {
+                	executeSaveBatch(statement, nrStatementsInBatch);
+                	nrStatementsInBatch = 0;
+                }
+                setParameters(statement, 1, colValues);
+                statement.addBatch();
+                nrStatementsInBatch++;
+            }
+            executeSaveBatch(statement, nrStatementsInBatch);
+        } finally {
+        	closeStatement(statement);
+        	fireAllBusinessObjectsChanged();
+        }
+
+        if (!bosWithoutPK.isEmpty()) {
+        	List<T> createdBOs = createBOs(bosWithoutPK);
+        	for (int i=0; i<createdBOs.size(); i++) {
+        		result.set(indicesWithoutPK.get(i), createdBOs.get(i));
+        	}
+        }
+        return result;
+    }
+
+    private void executeSaveBatch(PreparedStatement statement, int nrStatementsInBatch) throws SQLException {
+    	if (nrStatementsInBatch > 0) {
+	    	logger.debug("saveBOs(): statement = {}; batch size = {}", statement, nrStatementsInBatch);
+	    	statement.executeBatch();
+    	}
+    }
+
+    private String getUpsertSql(ColumnValuePairs colValues, ColumnValuePairs pkNamesAndValues)
+    		throws SQLException {
+    	return SqlTemplateCache.getUpsertSql(table, plugin, colValues, pkNamesAndValues);
+    }
+
 	/**
      * Override this method to update a business object after it has been created.
      * This can be used to fill in automatically created values.
@@ -358,54 +1126,50 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
     }
 
     /**
-     * Updates a business object in the database.
+     * Updates a business object in the database. If dirty tracking is enabled and the business object
+     * has been loaded before, then only the changed columns are updated. If no column has changed,
+     * then no statement is executed at all.
      * @param bo the BO.
      * @throws Exception if a problem occurs while updating the BO.
      */
-    protected void updateBO(T bo) throws SQLException {
+    public void updateBO(T bo) throws SQLException {
         PreparedStatement statement = null;
-        ResultSet resultSet = null;
         try {
-            Connection con = connection;
-            StringBuilder query = new StringBuilder(200);
-            query.append("UPDATE ").append(table.getName()).append(" SET ");
             ColumnValuePairs colValues = convert(bo);
-            for (Iterator<ColumnValuePair> iter = colValues.iterator(); iter.hasNext(); ) {
-                ColumnValuePair ColumnValuePair = iter.next();
-                query.append(ColumnValuePair.getColumn().getName()).append("=?");
-                if (iter.hasNext()) {
-                    query.append(", ");
-                }
+            if (isDirtyTrackingEnabled()) {
+            	ColumnValuePairs snapshot = BusinessObjectSnapshots.get(bo);
+            	// The snapshot is removed, so that a later update does not rely on values of this update.
+            	BusinessObjectSnapshots.remove(bo);
+            	if (snapshot != null) {
+            		ColumnValuePairs changedColValues = BusinessObjectSnapshots.getChangedColumnValues(colValues, snapshot);
+            		if (changedColValues != null && changedColValues.isEmpty()) {
+            			logger.debug("updateBO(): no changes for business object: {}", bo);
+            			return;
+            		}
+            		if (changedColValues != null) {
+            			colValues = changedColValues;
+            		}
+            	}
             }
+
             ColumnValuePairs pkNamesAndValues = getPKColumnsAndValues(bo.getPK());
-            query.append(' ').append(createWhereClause(pkNamesAndValues));
-            statement = prepareStatement(query.toString());
+            statement = prepareStatement(getSql(Operation.UPDATE, colValues, pkNamesAndValues));
             int index = 1;
             for (ColumnValuePair ColumnValuePair : colValues) {
                 setParameter(statement, index, ColumnValuePair);
                 index++;
             }
             setParameters(statement, index, pkNamesAndValues);
-            logger.debug("updateBO(): statement = " + statement.toString());
+            logger.debug("updateBO(): statement = {}", statement);
             int count = statement.executeUpdate();
             if (count != 1) {
                 throw new SQLException(count + " rows updated instead of 1 row for business object: " + bo);
             }
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                    // ignore
-                }
-            }
-            if (resultSet != null) {
-                try {
-                    resultSet.close();
-                } catch (SQLException e) {
-                    // ignore
-                }
-            }
+        	closeStatement(statement);
+        	if (statement != null) {
+        		fireBusinessObjectChanged(bo.getPK());
+        	}
         }
     }
 
@@ -414,36 +1178,101 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
      * @param pk the PK of the business object.
      * @throws SQLException if a problem occurs while deleting the BO.
      */
-    protected void deleteBO(P pk) throws SQLException {
+    public void deleteBO(P pk) throws SQLException {
         PreparedStatement statement = null;
-        ResultSet resultSet = null;
         try {
             ColumnValuePairs pkNamesAndValues = getPKColumnsAndValues(pk);
-            statement = prepareStatement("DELETE FROM " + table.getName() + ' ' + createWhereClause(pkNamesAndValues));
+            statement = prepareStatement(getSql(Operation.DELETE, null, pkNamesAndValues));
             setParameters(statement, 1, pkNamesAndValues);
-            logger.debug("delete(): statement = " + statement.toString());
+            logger.debug("delete(): statement = {}", statement);
             int count = statement.executeUpdate();
             if (count != 1) {
                 throw new SQLException("Aantal regels verwijderd: " + count + "; pk: " + pk.getPresentationName());
             }
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                    // ignore
-                }
-            }
-            if (resultSet != null) {
-                try {
-                    resultSet.close();
-                } catch (SQLException e) {
-                    // ignore
-                }
-            }
+            closeStatement(statement);
+            fireBusinessObjectChanged(pk);
+        }
+    }
+
+    /**
+     * Deletes business objects. The business objects are deleted with as few statements as possible:
+     * each statement deletes as many business objects as the IN list limit of the DBMS allows.
+     * Primary keys for which no business object exists are ignored.
+     * @param pks the PKs of the business objects.
+     * @return the number of deleted business objects
+     * @throws SQLException if a problem occurs while deleting the BOs.
+     */
+    public int deleteBOs(Collection<P> pks) throws SQLException {
+    	if (pks.isEmpty()) {
+    		return 0;
+    	}
+
+    	List<ColumnValuePairs> keys = getDistinctKeys(pks);
+    	List<TableColumn> keyColumns = getKeyColumns(keys);
+    	int maxNrKeysPerQuery = Math.max(1, plugin.getMaxInListSize() / keyColumns.size());
+    	String queryPrefix = getSql(Operation.DELETE, null, new ColumnValuePairs()) + " WHERE ";
+    	int count = 0;
+    	for (int start=0; start<keys.size(); start += maxNrKeysPerQuery) {
+    		List<ColumnValuePairs> chunk = keys.subList(start, Math.min(keys.size(), start + maxNrKeysPerQuery));
+    		PreparedStatement statement = prepareInListStatement(queryPrefix, keyColumns, chunk, maxNrKeysPerQuery);
+    		try {
+    			logger.debug("deleteBOs(): statement = {}", statement);
+    			count += statement.executeUpdate();
+    		} finally {
+    			closeStatement(statement);
+    			fireAllBusinessObjectsChanged();
+    		}
+    	}
+    	return count;
+    }
+
+    /**
+     * Deletes all records that match a list of columns and values.
+     * @param columnsAndValues the columns and values. If empty, then all records are deleted.
+     * @return the number of deleted records
+     * @throws SQLException if a problem occurs while deleting the records.
+     */
+    protected int deleteByWhereClause(ColumnValuePairs columnsAndValues) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            statement = prepareStatement(getSql(Operation.DELETE, null, columnsAndValues));
+            setParameters(statement, 1, columnsAndValues);
+            logger.debug("deleteByWhereClause(): statement = {}", statement);
+            return statement.executeUpdate();
+        } finally {
+        	closeStatement(statement);
+        	fireAllBusinessObjectsChanged();
         }
     }
 
+    /**
+     * Gets the SQL text of a statement for the table of this DAO. The SQL text is
+     * built once per table, operation and set of columns and is cached after that.
+     * @param operation the operation
+     * @param colValues the columns to be inserted or updated
+     * @param whereColumns the columns of the where clause
+     * @return the SQL text
+     */
+    private String getSql(Operation operation, ColumnValuePairs colValues, ColumnValuePairs whereColumns) {
+    	return SqlTemplateCache.getSql(table, operation, colValues, whereColumns);
+    }
+
+    /**
+     * Converts the current row of a result set to a business object. If dirty tracking is enabled,
+     * then a snapshot of the business object is kept.
+     * @param record the record for the current row
+     * @return the business object
+     * @throws SQLException if a problem occurs while converting the record
+     */
+    T load(Record record) throws SQLException {
+    	T bo = convert(record);
+    	if (isDirtyTrackingEnabled()) {
+    		BusinessObjectSnapshots.put(bo, convert(bo));
+    	}
+    	return bo;
+    }
+
     /**
      * Gets the list of columns and values for the PK for a business object.
      * @param bo the business object.
@@ -454,7 +1283,8 @@ public abstract class AbstractBusinessObjectDAO<P extends PrimaryKey, T extends
 
     /**
      * Converts a record from the table to a business object.
-     * @param record a record from the table
+     * @param record a record from the table. The record reads the current row of a result set, so
+     *        it must not be used after this method returns.
      * @return the business object
      * @throws Exception if a problem occurs while converting the record.
      */
@@ -22,7 +22,6 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.Date;
-import java.util.Iterator;
 
 import nl.gogognome.lib.dbconnection.PreparedStatementWrapper;
 
@@ -68,6 +67,31 @@ public class AbstractDAO {
 		return PreparedStatementWrapper.preparedStatement(connection, query);
 	}
 
+	/**
+	 * Creates a prepared statement that can return auto-generated keys.
+	 * @param query the query
+	 * @param autoGeneratedKeys a flag indicating whether auto-generated keys should be returned;
+	 *        one of {@link Statement#RETURN_GENERATED_KEYS} or {@link Statement#NO_GENERATED_KEYS}
+	 * @return the prepared statement
+	 * @throws SQLException if a problem occurs
+	 */
+	protected PreparedStatement prepareStatement(String query, int autoGeneratedKeys) throws SQLException {
+		return PreparedStatementWrapper.preparedStatement(connection, query, autoGeneratedKeys);
+	}
+
+	/**
+	 * Creates a prepared statement that produces result sets with the given type and concurrency.
+	 * @param query the query
+	 * @param resultSetType a result set type, e.g. {@link ResultSet#TYPE_FORWARD_ONLY}
+	 * @param resultSetConcurrency a concurrency type, e.g. {@link ResultSet#CONCUR_READ_ONLY}
+	 * @return the prepared statement
+	 * @throws SQLException if a problem occurs
+	 */
+	protected PreparedStatement prepareStatement(String query, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		return PreparedStatementWrapper.preparedStatement(connection, query, resultSetType, resultSetConcurrency);
+	}
+
     protected void closeStatement(Statement statement) {
         if (statement != null) {
             try {
@@ -88,6 +112,54 @@ public class AbstractDAO {
         }
     }
 
+    /**
+     * Gets the values of the auto increment columns of the table from the current row
+     * of a result set containing generated keys.
+     * @param result the result set with the generated keys
+     * @return the column value pairs (never null)
+     * @throws SQLException if a problem occurs.
+     */
+    protected ColumnValuePairs getAutoIncrementValues(ResultSet result) throws SQLException {
+    	ColumnValuePairs cvp = new ColumnValuePairs();
+		int index = 1;
+		for (TableColumn column : table.getColumns()) {
+			if (column.isAutoIncrement()) {
+				Object o = result.getObject(index++);
+
+				if (column.getType() == TableColumn.INTEGER) {
+					o = ((Number) o).intValue();
+				}
+
+				cvp.add(column, o);
+			}
+		}
+		return cvp;
+    }
+
+    /**
+     * Gets a value from the current row of a result set. The value has the Java type
+     * that corresponds to the type of the column.
+     * @param resultSet the result set
+     * @param index the index of the value in the result set
+     * @param column the column whose type determines the type of the value
+     * @return the value; <code>null</code> if the value is SQL NULL
+     * @throws SQLException if a problem occurs.
+     */
+    protected static Object getValue(ResultSet resultSet, int index, TableColumn column) throws SQLException {
+    	Object value;
+    	switch (column.getType()) {
+        case TableColumn.STRING: value = resultSet.getString(index); break;
+        case TableColumn.INTEGER: value = resultSet.getInt(index); break;
+        case TableColumn.LONG: value = resultSet.getLong(index); break;
+        case TableColumn.DATE: value = resultSet.getDate(index); break;
+        case TableColumn.BOOLEAN: value = resultSet.getBoolean(index); break;
+        case TableColumn.DOUBLE: value = resultSet.getDouble(index); break;
+        default:
+            throw new SQLException("The type " + column.getType() +  " is unsupported.");
+    	}
+    	return resultSet.wasNull() ? null : value;
+    }
+
     /**
      * Sets a parameter in a prepared statement.
      * @param statement the statement.
@@ -162,16 +234,7 @@ public class AbstractDAO {
      * @return the where clause
      */
     protected String createWhereClause(ColumnValuePairs pkNamesAndValues) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("WHERE ");
-        for (Iterator<ColumnValuePair> iter = pkNamesAndValues.iterator(); iter.hasNext(); ) {
-        	ColumnValuePair c = iter.next();
-            sb.append(c.getColumn().getName()).append("=?");
-            if (iter.hasNext()) {
-                sb.append(" AND ");
-            }
-        }
-        return sb.toString();
+        return SqlTemplateCache.createWhereClause(pkNamesAndValues);
     }
 
     /**
@@ -0,0 +1,38 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import nl.gogognome.lib.businessobject.PrimaryKey;
+
+/**
+ * Listener that is notified when a DAO changes the records of its table. The listener is called
+ * right after the statement has been executed, before the transaction is committed.
+ *
+ * @see AbstractBusinessObjectDAO#setChangeListener(Class, BusinessObjectChangeListener)
+ */
+public interface BusinessObjectChangeListener {
+
+	/**
+	 * Called when the record of a single business object has been created, updated or deleted.
+	 * @param pk the PK of the business object
+	 */
+	void businessObjectChanged(PrimaryKey pk);
+
+	/**
+	 * Called when an unknown set of records has been created, updated or deleted.
+	 */
+	void allBusinessObjectsChanged();
+}
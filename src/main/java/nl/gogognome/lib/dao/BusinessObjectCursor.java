@@ -0,0 +1,123 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import nl.gogognome.lib.businessobject.BusinessObject;
+import nl.gogognome.lib.businessobject.PrimaryKey;
+
+/**
+ * This class iterates over the business objects of a result set. Business objects
+ * are converted one at a time, so the result set is never loaded into memory at once.
+ *
+ * <p>The cursor must be closed to release its statement and result set. The cursor closes
+ * itself once all business objects have been read or when reading the result set fails.
+ * Problems that occur while reading the result set are thrown as {@link UncheckedSQLException}.
+ *
+ * @param <P> the type of the primary key of the business objects
+ * @param <T> the type of the business objects
+ *
+ * @author Sander Kooijmans
+ */
+public class BusinessObjectCursor<P extends PrimaryKey, T extends BusinessObject<P>> implements Iterator<T>, AutoCloseable {
+
+	private final AbstractBusinessObjectDAO<P, T> dao;
+	private final PreparedStatement statement;
+	private final ResultSet resultSet;
+	private final Record record;
+
+	private boolean nextRowRead;
+	private boolean closed;
+
+	/**
+	 * Constructor.
+	 * @param dao the DAO that converts records to business objects
+	 * @param statement the statement; will be closed by this cursor
+	 * @param resultSet the result set of the statement; will be closed by this cursor
+	 * @param record the record that reads the current row of the result set
+	 */
+	BusinessObjectCursor(AbstractBusinessObjectDAO<P, T> dao, PreparedStatement statement,
+			ResultSet resultSet, Record record) {
+		this.dao = dao;
+		this.statement = statement;
+		this.resultSet = resultSet;
+		this.record = record;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		if (!nextRowRead) {
+			try {
+				nextRowRead = resultSet.next();
+			} catch (SQLException e) {
+				close();
+				throw new UncheckedSQLException(e);
+			}
+			if (!nextRowRead) {
+				close();
+			}
+		}
+		return nextRowRead;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		nextRowRead = false;
+		try {
+			return dao.load(record);
+		} catch (SQLException e) {
+			close();
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Gets a sequential stream of the remaining business objects. Closing the stream closes this cursor.
+	 * @return the stream
+	 */
+	public Stream<T> stream() {
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(this::close);
+	}
+
+	/**
+	 * Closes the result set and the statement of this cursor. Closing a closed cursor has no effect.
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			dao.closeResultSet(resultSet);
+			dao.closeStatement(statement);
+		}
+	}
+}
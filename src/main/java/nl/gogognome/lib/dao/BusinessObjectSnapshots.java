@@ -0,0 +1,177 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.gogognome.lib.businessobject.BusinessObject;
+
+/**
+ * This class keeps the column values of business objects as they were loaded from the database.
+ * DAOs with dirty tracking enabled use these snapshots to update only the changed columns.
+ *
+ * <p>Snapshots belong to the business object instance that was loaded, so a business object that is
+ * loaded in one transaction can be updated with only its changed columns in a later transaction.
+ * Other instances with the same primary key, like copies, do not share the snapshot. A snapshot is
+ * dropped once its business object can no longer be reached. All snapshots are dropped when
+ * {@link #removeAll()} is called, which must happen when a transaction is rolled back, because
+ * snapshots taken in that transaction may contain values that have been rolled back.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Sander Kooijmans
+ */
+class BusinessObjectSnapshots {
+
+	/** Contains the snapshots per business object. Guarded by itself. */
+	private final static Map<BusinessObjectKey, ColumnValuePairs> SNAPSHOTS =
+			new HashMap<BusinessObjectKey, ColumnValuePairs>();
+
+	/** Receives the keys of business objects that can no longer be reached. */
+	private final static ReferenceQueue<BusinessObject<?>> QUEUE = new ReferenceQueue<BusinessObject<?>>();
+
+	private BusinessObjectSnapshots() {
+	}
+
+	/**
+	 * Stores the snapshot of a business object. Mutable values like dates are copied, so that
+	 * changing them in the business object is detected.
+	 * @param bo the business object
+	 * @param columnValues the column values of the business object
+	 */
+	static void put(BusinessObject<?> bo, ColumnValuePairs columnValues) {
+		ColumnValuePairs snapshot = new ColumnValuePairs();
+		for (ColumnValuePair cvp : columnValues) {
+			snapshot.add(cvp.getColumn(), copy(cvp.getValue()));
+		}
+		synchronized (SNAPSHOTS) {
+			expungeStaleBusinessObjects();
+			SNAPSHOTS.put(new BusinessObjectKey(bo, QUEUE), snapshot);
+		}
+	}
+
+	/**
+	 * Gets the snapshot of a business object.
+	 * @param bo the business object
+	 * @return the column values of the business object when it was loaded
+	 *         or <code>null</code> if no snapshot is available
+	 */
+	static ColumnValuePairs get(BusinessObject<?> bo) {
+		synchronized (SNAPSHOTS) {
+			return SNAPSHOTS.get(new BusinessObjectKey(bo, null));
+		}
+	}
+
+	static void remove(BusinessObject<?> bo) {
+		synchronized (SNAPSHOTS) {
+			SNAPSHOTS.remove(new BusinessObjectKey(bo, null));
+		}
+	}
+
+	/**
+	 * Removes all snapshots.
+	 */
+	static void removeAll() {
+		synchronized (SNAPSHOTS) {
+			SNAPSHOTS.clear();
+		}
+	}
+
+	private static void expungeStaleBusinessObjects() {
+		for (Reference<? extends BusinessObject<?>> key = QUEUE.poll(); key != null; key = QUEUE.poll()) {
+			SNAPSHOTS.remove(key);
+		}
+	}
+
+	private static Object copy(Object value) {
+		if (value instanceof Date) {
+			return ((Date) value).clone();
+		} else if (value instanceof byte[]) {
+			return ((byte[]) value).clone();
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the column values that differ from the snapshot.
+	 * @param columnValues the current column values of a business object
+	 * @param snapshot the snapshot of the business object
+	 * @return the changed column values or <code>null</code> if the columns of the snapshot differ from
+	 *         the columns of <code>columnValues</code>
+	 */
+	static ColumnValuePairs getChangedColumnValues(ColumnValuePairs columnValues, ColumnValuePairs snapshot) {
+		if (columnValues.size() != snapshot.size()) {
+			return null;
+		}
+
+		ColumnValuePairs changedColumnValues = new ColumnValuePairs();
+		for (ColumnValuePair cvp : columnValues) {
+			ColumnValuePair snapshotCvp = snapshot.getColumnValuePair(cvp.getColumn());
+			if (snapshotCvp == null) {
+				return null;
+			}
+			Object value = cvp.getValue();
+			if (!equalValues(value, snapshotCvp.getValue())) {
+				changedColumnValues.add(cvp.getColumn(), value);
+			}
+		}
+		return changedColumnValues;
+	}
+
+	private static boolean equalValues(Object value, Object snapshotValue) {
+		if (value instanceof byte[] && snapshotValue instanceof byte[]) {
+			return Arrays.equals((byte[]) value, (byte[]) snapshotValue);
+		}
+		return value == null ? snapshotValue == null : value.equals(snapshotValue);
+	}
+
+	/**
+	 * Weak key that compares business objects by identity. {@link BusinessObject#equals(Object)} cannot be used,
+	 * because a snapshot only describes the instance that was loaded.
+	 */
+	private static class BusinessObjectKey extends WeakReference<BusinessObject<?>> {
+
+		private final int hashCode;
+
+		public BusinessObjectKey(BusinessObject<?> bo, ReferenceQueue<BusinessObject<?>> queue) {
+			super(bo, queue);
+			hashCode = System.identityHashCode(bo);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (obj instanceof BusinessObjectKey) {
+				BusinessObject<?> bo = get();
+				return bo != null && bo == ((BusinessObjectKey) obj).get();
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
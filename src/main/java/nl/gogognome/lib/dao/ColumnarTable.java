@@ -0,0 +1,497 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+/**
+ * This class holds the rows of a query for a {@link Projection} column by column. Each column
+ * is stored in a primitive array:
+ * <ul>
+ *   <li>INTEGER, LONG and DOUBLE columns in an <code>int[]</code>, <code>long[]</code> or <code>double[]</code></li>
+ *   <li>BOOLEAN columns in a {@link BitSet}</li>
+ *   <li>DATE columns in an <code>int[]</code> with the number of days since 1970-01-01</li>
+ *   <li>STRING columns in an <code>int[]</code> with ids of the distinct strings of the column</li>
+ * </ul>
+ * SQL NULL is marked in a {@link BitSet} per column, which is only created for columns that contain NULL.
+ *
+ * <p>Rows are selected with the filter methods, which return a {@link BitSet} of row numbers.
+ * The selections can be combined with {@link BitSet#and(BitSet)} and {@link BitSet#or(BitSet)}
+ * and passed to the aggregate methods. NULL values never match a filter and are skipped by aggregates.
+ *
+ * <p>A columnar table is not modified after it has been loaded and can be shared by multiple threads.
+ *
+ * @author Sander Kooijmans
+ */
+public class ColumnarTable {
+
+	private final static int INITIAL_CAPACITY = 1024;
+
+	private final Projection projection;
+
+	/** Per column an int[], long[], double[] or BitSet. */
+	private final Object[] data;
+
+	private final BitSet[] nulls;
+
+	/** Per STRING column the distinct strings; the id of a string is its index. */
+	private final List<List<String>> dictionaries;
+
+	private final List<Map<String, Integer>> stringToIds;
+
+	private int nrRows;
+
+	private int capacity;
+
+	ColumnarTable(Projection projection) {
+		this.projection = projection;
+		int nrColumns = projection.getColumns().size();
+		data = new Object[nrColumns];
+		nulls = new BitSet[nrColumns];
+		dictionaries = new ArrayList<List<String>>(nrColumns);
+		stringToIds = new ArrayList<Map<String, Integer>>(nrColumns);
+		capacity = INITIAL_CAPACITY;
+		for (int i=0; i<nrColumns; i++) {
+			TableColumn column = projection.getColumns().get(i);
+			switch (column.getType()) {
+			case TableColumn.INTEGER:
+			case TableColumn.DATE:
+			case TableColumn.STRING:
+				data[i] = new int[capacity];
+				break;
+			case TableColumn.LONG:
+				data[i] = new long[capacity];
+				break;
+			case TableColumn.DOUBLE:
+				data[i] = new double[capacity];
+				break;
+			case TableColumn.BOOLEAN:
+				data[i] = new BitSet();
+				break;
+			default:
+				throw new IllegalArgumentException("The type " + column.getType() +  " is unsupported.");
+			}
+			boolean isString = column.getType() == TableColumn.STRING;
+			dictionaries.add(isString ? new ArrayList<String>() : null);
+			stringToIds.add(isString ? new HashMap<String, Integer>() : null);
+		}
+	}
+
+	/**
+	 * Appends the current row of a result set that was returned by a query for the projection.
+	 * @param resultSet the result set
+	 * @throws SQLException if a problem occurs while reading the row
+	 */
+	void appendRow(ResultSet resultSet) throws SQLException {
+		if (nrRows == capacity) {
+			grow();
+		}
+		int row = nrRows;
+		for (int i=0; i<data.length; i++) {
+			int resultSetIndex = i + 1;
+			switch (projection.getColumns().get(i).getType()) {
+			case TableColumn.INTEGER:
+				((int[]) data[i])[row] = resultSet.getInt(resultSetIndex);
+				break;
+			case TableColumn.LONG:
+				((long[]) data[i])[row] = resultSet.getLong(resultSetIndex);
+				break;
+			case TableColumn.DOUBLE:
+				((double[]) data[i])[row] = resultSet.getDouble(resultSetIndex);
+				break;
+			case TableColumn.BOOLEAN:
+				if (resultSet.getBoolean(resultSetIndex)) {
+					((BitSet) data[i]).set(row);
+				}
+				break;
+			case TableColumn.DATE:
+				java.sql.Date date = resultSet.getDate(resultSetIndex);
+				((int[]) data[i])[row] = date != null ? (int) date.toLocalDate().toEpochDay() : 0;
+				break;
+			case TableColumn.STRING:
+				String string = resultSet.getString(resultSetIndex);
+				((int[]) data[i])[row] = string != null ? getOrAddStringId(i, string) : -1;
+				break;
+			}
+			if (resultSet.wasNull()) {
+				if (nulls[i] == null) {
+					nulls[i] = new BitSet();
+				}
+				nulls[i].set(row);
+			}
+		}
+		nrRows++;
+	}
+
+	private int getOrAddStringId(int columnIndex, String string) {
+		Map<String, Integer> stringToId = stringToIds.get(columnIndex);
+		Integer id = stringToId.get(string);
+		if (id == null) {
+			List<String> dictionary = dictionaries.get(columnIndex);
+			id = dictionary.size();
+			dictionary.add(string);
+			stringToId.put(string, id);
+		}
+		return id;
+	}
+
+	private void grow() {
+		capacity *= 2;
+		resize(capacity);
+	}
+
+	/**
+	 * Shrinks the arrays to the number of rows. Called after all rows have been appended.
+	 */
+	void trimToSize() {
+		if (capacity != nrRows) {
+			capacity = nrRows;
+			resize(capacity);
+		}
+	}
+
+	private void resize(int newCapacity) {
+		for (int i=0; i<data.length; i++) {
+			if (data[i] instanceof int[]) {
+				data[i] = Arrays.copyOf((int[]) data[i], newCapacity);
+			} else if (data[i] instanceof long[]) {
+				data[i] = Arrays.copyOf((long[]) data[i], newCapacity);
+			} else if (data[i] instanceof double[]) {
+				data[i] = Arrays.copyOf((double[]) data[i], newCapacity);
+			}
+		}
+	}
+
+	public Projection getProjection() {
+		return projection;
+	}
+
+	public int getNrRows() {
+		return nrRows;
+	}
+
+	/**
+	 * @return a selection containing all rows
+	 */
+	public BitSet selectAll() {
+		BitSet selection = new BitSet(nrRows);
+		selection.set(0, nrRows);
+		return selection;
+	}
+
+	public boolean isNull(TableColumn column, int row) {
+		BitSet columnNulls = nulls[projection.getIndex(column)];
+		return columnNulls != null && columnNulls.get(row);
+	}
+
+	public int getInt(TableColumn column, int row) {
+		return getInts(column, TableColumn.INTEGER)[row];
+	}
+
+	public long getLong(TableColumn column, int row) {
+		return getLongs(column)[row];
+	}
+
+	public double getDouble(TableColumn column, int row) {
+		return getDoubles(column)[row];
+	}
+
+	public boolean getBoolean(TableColumn column, int row) {
+		return getBits(column).get(row);
+	}
+
+	/**
+	 * Gets the value of a DATE column as number of days since 1970-01-01.
+	 * @param column the column
+	 * @param row the row
+	 * @return the number of days
+	 */
+	public int getEpochDay(TableColumn column, int row) {
+		return getInts(column, TableColumn.DATE)[row];
+	}
+
+	public Date getDate(TableColumn column, int row) {
+		return isNull(column, row) ? null : java.sql.Date.valueOf(LocalDate.ofEpochDay(getEpochDay(column, row)));
+	}
+
+	public String getString(TableColumn column, int row) {
+		int id = getInts(column, TableColumn.STRING)[row];
+		return id >= 0 ? dictionaries.get(projection.getIndex(column)).get(id) : null;
+	}
+
+	/**
+	 * Gets the distinct strings of a STRING column in order of first occurrence.
+	 * @param column the column
+	 * @return the distinct strings
+	 */
+	public List<String> getDistinctStrings(TableColumn column) {
+		getInts(column, TableColumn.STRING);
+		return Collections.unmodifiableList(dictionaries.get(projection.getIndex(column)));
+	}
+
+	/**
+	 * Selects the rows whose value of an INTEGER or DATE column matches a predicate.
+	 * For DATE columns the predicate is applied to the number of days since 1970-01-01.
+	 * @param column the column
+	 * @param predicate the predicate
+	 * @return the selected rows
+	 */
+	public BitSet filterInt(TableColumn column, IntPredicate predicate) {
+		int[] values = getInts(column, column.getType() == TableColumn.DATE ? TableColumn.DATE : TableColumn.INTEGER);
+		BitSet selection = new BitSet(nrRows);
+		for (int row=0; row<nrRows; row++) {
+			if (predicate.test(values[row])) {
+				selection.set(row);
+			}
+		}
+		return removeNulls(column, selection);
+	}
+
+	public BitSet filterLong(TableColumn column, LongPredicate predicate) {
+		long[] values = getLongs(column);
+		BitSet selection = new BitSet(nrRows);
+		for (int row=0; row<nrRows; row++) {
+			if (predicate.test(values[row])) {
+				selection.set(row);
+			}
+		}
+		return removeNulls(column, selection);
+	}
+
+	public BitSet filterDouble(TableColumn column, DoublePredicate predicate) {
+		double[] values = getDoubles(column);
+		BitSet selection = new BitSet(nrRows);
+		for (int row=0; row<nrRows; row++) {
+			if (predicate.test(values[row])) {
+				selection.set(row);
+			}
+		}
+		return removeNulls(column, selection);
+	}
+
+	public BitSet filterBoolean(TableColumn column, boolean value) {
+		BitSet selection = (BitSet) getBits(column).clone();
+		if (!value) {
+			selection.flip(0, nrRows);
+		}
+		return removeNulls(column, selection);
+	}
+
+	/**
+	 * Selects the rows whose value of a STRING column equals a string. The string is looked up
+	 * once in the dictionary of the column; the rows are compared by id.
+	 * @param column the column
+	 * @param value the string
+	 * @return the selected rows
+	 */
+	public BitSet filterString(TableColumn column, String value) {
+		int[] ids = getInts(column, TableColumn.STRING);
+		Integer id = stringToIds.get(projection.getIndex(column)).get(value);
+		BitSet selection = new BitSet(nrRows);
+		if (id != null) {
+			int searchedId = id;
+			for (int row=0; row<nrRows; row++) {
+				if (ids[row] == searchedId) {
+					selection.set(row);
+				}
+			}
+		}
+		return selection;
+	}
+
+	private BitSet removeNulls(TableColumn column, BitSet selection) {
+		BitSet columnNulls = nulls[projection.getIndex(column)];
+		if (columnNulls != null) {
+			selection.andNot(columnNulls);
+		}
+		return selection;
+	}
+
+	/**
+	 * Sums the values of an INTEGER or LONG column of the selected rows.
+	 * @param column the column
+	 * @param selection the selected rows
+	 * @return the sum
+	 */
+	public long sumLong(TableColumn column, BitSet selection) {
+		BitSet rows = withoutNulls(column, selection);
+		long sum = 0;
+		if (column.getType() == TableColumn.INTEGER) {
+			int[] values = getInts(column, TableColumn.INTEGER);
+			for (int row = rows.nextSetBit(0); row >= 0 && row < nrRows; row = rows.nextSetBit(row + 1)) {
+				sum += values[row];
+			}
+		} else {
+			long[] values = getLongs(column);
+			for (int row = rows.nextSetBit(0); row >= 0 && row < nrRows; row = rows.nextSetBit(row + 1)) {
+				sum += values[row];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Sums the values of a numeric column of the selected rows.
+	 * @param column the column
+	 * @param selection the selected rows
+	 * @return the sum
+	 */
+	public double sumDouble(TableColumn column, BitSet selection) {
+		if (column.getType() != TableColumn.DOUBLE) {
+			return sumLong(column, selection);
+		}
+		BitSet rows = withoutNulls(column, selection);
+		double[] values = getDoubles(column);
+		double sum = 0;
+		for (int row = rows.nextSetBit(0); row >= 0 && row < nrRows; row = rows.nextSetBit(row + 1)) {
+			sum += values[row];
+		}
+		return sum;
+	}
+
+	/**
+	 * Sums the values of a numeric column of the selected rows per distinct string of a STRING column.
+	 * The sums are calculated in an array indexed by the ids of the strings, directly from the
+	 * primitive values of the numeric column. Ids are only mapped to strings for the result.
+	 * @param groupColumn the STRING column whose values form the groups
+	 * @param valueColumn the numeric column to be summed
+	 * @param selection the selected rows
+	 * @return the sums per string, in order of first occurrence of the strings. Groups without
+	 *         selected rows are not present. Rows for which the group column is NULL are skipped.
+	 */
+	public Map<String, Double> sumGroupedBy(TableColumn groupColumn, TableColumn valueColumn, BitSet selection) {
+		int[] ids = getInts(groupColumn, TableColumn.STRING);
+		List<String> dictionary = dictionaries.get(projection.getIndex(groupColumn));
+		double[] sums = new double[dictionary.size()];
+		BitSet groupsPresent = new BitSet(dictionary.size());
+
+		BitSet rows = withoutNulls(valueColumn, selection);
+		switch (valueColumn.getType()) {
+		case TableColumn.INTEGER:
+			int[] intValues = getInts(valueColumn, TableColumn.INTEGER);
+			for (int row = rows.nextSetBit(0); row >= 0 && row < nrRows; row = rows.nextSetBit(row + 1)) {
+				int id = ids[row];
+				if (id >= 0) {
+					sums[id] += intValues[row];
+					groupsPresent.set(id);
+				}
+			}
+			break;
+		case TableColumn.LONG:
+			long[] longValues = getLongs(valueColumn);
+			for (int row = rows.nextSetBit(0); row >= 0 && row < nrRows; row = rows.nextSetBit(row + 1)) {
+				int id = ids[row];
+				if (id >= 0) {
+					sums[id] += longValues[row];
+					groupsPresent.set(id);
+				}
+			}
+			break;
+		case TableColumn.DOUBLE:
+			double[] doubleValues = getDoubles(valueColumn);
+			for (int row = rows.nextSetBit(0); row >= 0 && row < nrRows; row = rows.nextSetBit(row + 1)) {
+				int id = ids[row];
+				if (id >= 0) {
+					sums[id] += doubleValues[row];
+					groupsPresent.set(id);
+				}
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Column " + valueColumn.getName() + " is not numeric.");
+		}
+
+		Map<String, Double> result = new LinkedHashMap<String, Double>();
+		for (int id = groupsPresent.nextSetBit(0); id >= 0; id = groupsPresent.nextSetBit(id + 1)) {
+			result.put(dictionary.get(id), sums[id]);
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the selected rows per distinct string of a STRING column.
+	 * @param groupColumn the STRING column whose values form the groups
+	 * @param selection the selected rows
+	 * @return the counts per string, in order of first occurrence of the strings. Groups without
+	 *         selected rows are not present.
+	 */
+	public Map<String, Integer> countGroupedBy(TableColumn groupColumn, BitSet selection) {
+		int[] ids = getInts(groupColumn, TableColumn.STRING);
+		List<String> dictionary = dictionaries.get(projection.getIndex(groupColumn));
+		int[] counts = new int[dictionary.size()];
+		for (int row = selection.nextSetBit(0); row >= 0 && row < nrRows; row = selection.nextSetBit(row + 1)) {
+			if (ids[row] >= 0) {
+				counts[ids[row]]++;
+			}
+		}
+
+		Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+		for (int id=0; id<counts.length; id++) {
+			if (counts[id] > 0) {
+				result.put(dictionary.get(id), counts[id]);
+			}
+		}
+		return result;
+	}
+
+	private BitSet withoutNulls(TableColumn column, BitSet selection) {
+		BitSet columnNulls = nulls[projection.getIndex(column)];
+		if (columnNulls == null) {
+			return selection;
+		}
+		BitSet rows = (BitSet) selection.clone();
+		rows.andNot(columnNulls);
+		return rows;
+	}
+
+	private int[] getInts(TableColumn column, int type) {
+		return (int[]) getData(column, type);
+	}
+
+	private long[] getLongs(TableColumn column) {
+		return (long[]) getData(column, TableColumn.LONG);
+	}
+
+	private double[] getDoubles(TableColumn column) {
+		return (double[]) getData(column, TableColumn.DOUBLE);
+	}
+
+	private BitSet getBits(TableColumn column) {
+		return (BitSet) getData(column, TableColumn.BOOLEAN);
+	}
+
+	private Object getData(TableColumn column, int type) {
+		if (column.getType() != type) {
+			throw new IllegalArgumentException("Column " + column.getName() + " has type " + column.getType()
+					+ " instead of type " + type);
+		}
+		return data[projection.getIndex(column)];
+	}
+}
@@ -0,0 +1,370 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import nl.gogognome.lib.businessobject.IntegerPrimaryKey;
+import nl.gogognome.lib.dao.OrderByClause.TableColumnAndDirection;
+
+/**
+ * This class represents the criteria of a query: conditions that must all hold, an optional
+ * order by clause and an optional limit on the number of rows.
+ *
+ * <p>The SQL text of a query only depends on the shape of its criteria: the columns, operators,
+ * number of values in IN lists rounded up to a power of two, order and whether a limit is present.
+ * The values and the limit themselves are passed as parameters. DAOs cache the SQL text per shape,
+ * so that queries with criteria of the same shape are only built once.
+ *
+ * <p>Example:
+ * <pre>
+ * Criteria criteria = new Criteria()
+ *     .greaterOrEqual(DATE, startDate)
+ *     .or(new Criteria().isNull(NAME), new Criteria().like(NAME, "A%"))
+ *     .orderBy(OrderByClause.ascending(DATE))
+ *     .limit(10);
+ * </pre>
+ *
+ * @author Sander Kooijmans
+ */
+public class Criteria {
+
+	enum Operator {
+		EQUAL("="),
+		NOT_EQUAL("<>"),
+		LESS("<"),
+		LESS_OR_EQUAL("<="),
+		GREATER(">"),
+		GREATER_OR_EQUAL(">="),
+		LIKE(" LIKE "),
+		IS_NULL(" IS NULL"),
+		IS_NOT_NULL(" IS NOT NULL"),
+		BETWEEN(" BETWEEN ? AND ?"),
+		IN(" IN "),
+		OR(" OR ");
+
+		private final String sql;
+
+		private Operator(String sql) {
+			this.sql = sql;
+		}
+	}
+
+	private final static class Condition {
+		private final Operator operator;
+		private final TableColumn column;
+		private final Object[] values;
+		private final Criteria[] alternatives;
+
+		public Condition(Operator operator, TableColumn column, Object[] values, Criteria[] alternatives) {
+			this.operator = operator;
+			this.column = column;
+			this.values = values;
+			this.alternatives = alternatives;
+		}
+	}
+
+	private final List<Condition> conditions = new ArrayList<Condition>();
+
+	private OrderByClause orderByClause;
+
+	private int limit;
+
+	public Criteria equal(TableColumn column, Object value) {
+		if (value == null) {
+			return isNull(column);
+		}
+		return add(Operator.EQUAL, column, value);
+	}
+
+	public Criteria notEqual(TableColumn column, Object value) {
+		if (value == null) {
+			return isNotNull(column);
+		}
+		return add(Operator.NOT_EQUAL, column, value);
+	}
+
+	public Criteria less(TableColumn column, Object value) {
+		return add(Operator.LESS, column, value);
+	}
+
+	public Criteria lessOrEqual(TableColumn column, Object value) {
+		return add(Operator.LESS_OR_EQUAL, column, value);
+	}
+
+	public Criteria greater(TableColumn column, Object value) {
+		return add(Operator.GREATER, column, value);
+	}
+
+	public Criteria greaterOrEqual(TableColumn column, Object value) {
+		return add(Operator.GREATER_OR_EQUAL, column, value);
+	}
+
+	/**
+	 * Adds a condition that the value of a column lies in a range.
+	 * @param column the column
+	 * @param from the lower bound (inclusive)
+	 * @param to the upper bound (inclusive)
+	 * @return this criteria
+	 */
+	public Criteria between(TableColumn column, Object from, Object to) {
+		return add(Operator.BETWEEN, column, from, to);
+	}
+
+	/**
+	 * Adds a condition that the value of a column matches a pattern.
+	 * @param column the column
+	 * @param pattern the pattern. Use % to match any sequence of characters and _ to match one character.
+	 * @return this criteria
+	 */
+	public Criteria like(TableColumn column, String pattern) {
+		return add(Operator.LIKE, column, pattern);
+	}
+
+	public Criteria isNull(TableColumn column) {
+		return add(Operator.IS_NULL, column);
+	}
+
+	public Criteria isNotNull(TableColumn column) {
+		return add(Operator.IS_NOT_NULL, column);
+	}
+
+	/**
+	 * Adds a condition that the value of a column equals one of a number of values.
+	 * If no values are passed, then the condition never holds.
+	 * @param column the column
+	 * @param values the values
+	 * @return this criteria
+	 */
+	public Criteria in(TableColumn column, Collection<?> values) {
+		return add(Operator.IN, column, values.toArray());
+	}
+
+	/**
+	 * Adds a condition that at least one of a number of criteria holds. Only the conditions
+	 * of the alternatives are used; their order by clauses and limits are ignored.
+	 * @param alternatives the alternatives
+	 * @return this criteria
+	 */
+	public Criteria or(Criteria... alternatives) {
+		if (alternatives.length == 0) {
+			throw new IllegalArgumentException("At least one alternative must be specified.");
+		}
+		conditions.add(new Condition(Operator.OR, null, null, alternatives.clone()));
+		return this;
+	}
+
+	public Criteria orderBy(OrderByClause orderByClause) {
+		this.orderByClause = orderByClause;
+		return this;
+	}
+
+	/**
+	 * Limits the number of rows returned by the query.
+	 * @param limit the maximum number of rows; 0 for no limit
+	 * @return this criteria
+	 */
+	public Criteria limit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("The limit must not be negative.");
+		}
+		this.limit = limit;
+		return this;
+	}
+
+	boolean hasConditions() {
+		return !conditions.isEmpty();
+	}
+
+	OrderByClause getOrderByClause() {
+		return orderByClause;
+	}
+
+	int getLimit() {
+		return limit;
+	}
+
+	private Criteria add(Operator operator, TableColumn column, Object... values) {
+		for (int i=0; i<values.length; i++) {
+			if (values[i] instanceof IntegerPrimaryKey) {
+				values[i] = ((IntegerPrimaryKey) values[i]).getId();
+			}
+		}
+		conditions.add(new Condition(operator, column, values, null));
+		return this;
+	}
+
+	/**
+	 * Adds the shape of these criteria to a list. Two criteria with equal shapes result in
+	 * the same SQL text.
+	 * @param shape the list to which the shape is added
+	 * @param includeOrderAndLimit <code>true</code> if the order by clause and limit are part of the shape
+	 * @param maxInListSize the maximum number of parameters in one IN list
+	 */
+	void addShape(List<Object> shape, boolean includeOrderAndLimit, int maxInListSize) {
+		for (Condition condition : conditions) {
+			shape.add(condition.operator);
+			if (condition.operator == Operator.OR) {
+				shape.add(condition.alternatives.length);
+				for (Criteria alternative : condition.alternatives) {
+					alternative.addShape(shape, false, maxInListSize);
+					shape.add(Operator.OR); // separates the alternatives
+				}
+			} else {
+				shape.add(condition.column);
+				if (condition.operator == Operator.IN) {
+					shape.add(getNrInListParameters(condition.values.length, maxInListSize));
+				}
+			}
+		}
+		if (includeOrderAndLimit) {
+			if (orderByClause != null) {
+				for (TableColumnAndDirection cd : orderByClause.getColumnAndDirections()) {
+					shape.add(cd.getColumn());
+					shape.add(cd.isAscending());
+				}
+			}
+			shape.add(limit > 0);
+		}
+	}
+
+	/**
+	 * Gets the number of parameters of an IN condition. The number of values is rounded up to a power of two,
+	 * so that only a few different queries are used, which keeps caches of prepared statements effective.
+	 * The number of parameters never exceeds the maximum IN list size, unless there are more values than that.
+	 * Then the values are split in IN lists of the maximum size and the number of values is rounded up
+	 * to a multiple of the maximum size.
+	 * @param nrValues the number of values
+	 * @param maxInListSize the maximum number of parameters in one IN list
+	 * @return the number of parameters
+	 */
+	static int getNrInListParameters(int nrValues, int maxInListSize) {
+		if (nrValues == 0) {
+			return 0;
+		} else if (nrValues <= maxInListSize) {
+			return Math.min(Integer.highestOneBit(nrValues * 2 - 1), maxInListSize);
+		} else {
+			return (nrValues + maxInListSize - 1) / maxInListSize * maxInListSize;
+		}
+	}
+
+	/**
+	 * Appends the conditions to an SQL query.
+	 * @param sb the SQL query
+	 * @param parameterColumns the columns of the parameters are added to this list in the order
+	 *        in which the parameters occur in the SQL query
+	 * @param maxInListSize the maximum number of parameters in one IN list. Longer IN conditions
+	 *        are split in IN lists that are combined with OR.
+	 */
+	void appendConditions(StringBuilder sb, List<TableColumn> parameterColumns, int maxInListSize) {
+		if (conditions.isEmpty()) {
+			sb.append("1 = 1");
+			return;
+		}
+
+		for (int i=0; i<conditions.size(); i++) {
+			if (i > 0) {
+				sb.append(" AND ");
+			}
+			Condition condition = conditions.get(i);
+			switch (condition.operator) {
+			case OR:
+				sb.append('(');
+				for (int j=0; j<condition.alternatives.length; j++) {
+					if (j > 0) {
+						sb.append(Operator.OR.sql);
+					}
+					sb.append('(');
+					condition.alternatives[j].appendConditions(sb, parameterColumns, maxInListSize);
+					sb.append(')');
+				}
+				sb.append(')');
+				break;
+
+			case IS_NULL:
+			case IS_NOT_NULL:
+				sb.append(condition.column.getName()).append(condition.operator.sql);
+				break;
+
+			case BETWEEN:
+				sb.append(condition.column.getName()).append(condition.operator.sql);
+				parameterColumns.add(condition.column);
+				parameterColumns.add(condition.column);
+				break;
+
+			case IN:
+				if (condition.values.length == 0) {
+					sb.append("1 = 0");
+				} else {
+					int nrParameters = getNrInListParameters(condition.values.length, maxInListSize);
+					if (nrParameters > maxInListSize) {
+						sb.append('(');
+					}
+					for (int j=0; j<nrParameters; j++) {
+						if (j % maxInListSize == 0) {
+							if (j > 0) {
+								sb.append(')').append(Operator.OR.sql);
+							}
+							sb.append(condition.column.getName()).append(condition.operator.sql).append("(?");
+						} else {
+							sb.append(", ?");
+						}
+						parameterColumns.add(condition.column);
+					}
+					sb.append(')');
+					if (nrParameters > maxInListSize) {
+						sb.append(')');
+					}
+				}
+				break;
+
+			default:
+				sb.append(condition.column.getName()).append(condition.operator.sql).append('?');
+				parameterColumns.add(condition.column);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds the values of the parameters to a list, in the same order as
+	 * {@link #appendConditions(StringBuilder, List, int)} adds the columns of the parameters.
+	 * @param values the list to which the values are added
+	 * @param maxInListSize the maximum number of parameters in one IN list
+	 */
+	void addParameterValues(List<Object> values, int maxInListSize) {
+		for (Condition condition : conditions) {
+			if (condition.operator == Operator.OR) {
+				for (Criteria alternative : condition.alternatives) {
+					alternative.addParameterValues(values, maxInListSize);
+				}
+			} else {
+				for (Object value : condition.values) {
+					values.add(value);
+				}
+				if (condition.operator == Operator.IN) {
+					// Surplus parameters are filled with the last value.
+					int nrParameters = getNrInListParameters(condition.values.length, maxInListSize);
+					for (int i=condition.values.length; i<nrParameters; i++) {
+						values.add(condition.values[condition.values.length - 1]);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a query compiled from {@link Criteria}: the SQL text and the columns
+ * of its parameters. A compiled query can be used for all criteria with the same shape.
+ *
+ * @author Sander Kooijmans
+ */
+class CriteriaQuery {
+
+	private final String sql;
+
+	private final TableColumn[] parameterColumns;
+
+	/** Indicates whether the limit of the criteria is passed as the last parameter. */
+	private final boolean limitParameter;
+
+	/** The maximum number of parameters in one IN list with which the SQL text was created. */
+	private final int maxInListSize;
+
+	CriteriaQuery(String sql, List<TableColumn> parameterColumns, boolean limitParameter, int maxInListSize) {
+		this.sql = sql;
+		this.parameterColumns = parameterColumns.toArray(new TableColumn[parameterColumns.size()]);
+		this.limitParameter = limitParameter;
+		this.maxInListSize = maxInListSize;
+	}
+
+	String getSql() {
+		return sql;
+	}
+
+	/**
+	 * Sets the parameters of a statement prepared for the SQL text of this query.
+	 * @param statement the statement
+	 * @param criteria criteria with the same shape as the criteria from which this query was compiled
+	 * @throws SQLException if a problem occurs while setting the parameters
+	 */
+	void setParameters(PreparedStatement statement, Criteria criteria) throws SQLException {
+		List<Object> values = new ArrayList<Object>(parameterColumns.length);
+		criteria.addParameterValues(values, maxInListSize);
+		if (values.size() != parameterColumns.length) {
+			throw new SQLException("Expected " + parameterColumns.length + " parameters but got " + values.size());
+		}
+		for (int i=0; i<parameterColumns.length; i++) {
+			AbstractDAO.setParameter(statement, i + 1, new ColumnValuePair(parameterColumns[i], values.get(i)));
+		}
+		if (limitParameter) {
+			statement.setInt(parameterColumns.length + 1, criteria.getLimit());
+		}
+	}
+}
@@ -0,0 +1,685 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.gogognome.lib.dao.SqlTemplateCache.Operation;
+
+/**
+ * This class imports the rows of a CSV file into a table.
+ *
+ * <p>The import is a pipeline of two stages. A reader thread reads the file, converts the cells
+ * to the types of the columns and validates the values with {@link TableColumn#validateValue(Object)}.
+ * The calling thread inserts the rows in JDBC batches and commits after a configurable number of batches.
+ * The stages exchange batches of rows via a bounded queue: if the database cannot keep up, the reader
+ * thread waits until there is room in the queue.
+ *
+ * <p>If the import fails, then the rows of the batches that have been committed stay in the table.
+ * {@link #getNrRowsCommitted()} returns the number of rows of the file that have been committed.
+ * Pass it to {@link #importFile(Path, long)} to resume the import after the last committed batch.
+ *
+ * <p>Cells are converted as follows. An empty cell that is not quoted is <code>null</code>.
+ * Integers, longs and doubles are parsed by the Java wrapper classes, booleans must be
+ * <code>true</code> or <code>false</code> and dates must match the date pattern.
+ * Cells can be quoted with double quotes; a double quote inside a quoted cell is written as two double quotes.
+ *
+ * <p>The connection must have auto commit disabled. Instances of this class are not thread safe.
+ *
+ * @author Sander Kooijmans
+ */
+public class CsvImporter extends AbstractDAO {
+
+	private final static int BUFFER_SIZE = 64 * 1024;
+
+	/** Marks the end of the rows in the queue. */
+	private final static List<Object[]> END_OF_ROWS = Collections.emptyList();
+
+	private List<TableColumn> columns;
+
+	private boolean header;
+
+	private char separator = ',';
+
+	private Charset charset = StandardCharsets.UTF_8;
+
+	private String datePattern = "yyyy-MM-dd";
+
+	private int batchSize = 1000;
+
+	private int commitInterval = 10;
+
+	private int queueCapacity = 4;
+
+	private final AtomicLong nrRowsRead = new AtomicLong();
+
+	private final AtomicLong readerWaitNanos = new AtomicLong();
+
+	private long nrRowsInserted;
+
+	private long nrRowsCommitted;
+
+	private long writerWaitNanos;
+
+	private long elapsedNanos;
+
+	/**
+	 * Constructor.
+	 * @param connection the connection to the database
+	 * @param table the table into which the rows are imported
+	 */
+	public CsvImporter(Connection connection, Table table) {
+		super(connection, table);
+		columns = new ArrayList<TableColumn>();
+		for (TableColumn column : table.getColumns()) {
+			if (!column.isAutoIncrement()) {
+				columns.add(column);
+			}
+		}
+	}
+
+	/**
+	 * Sets the columns that correspond to the cells of a row. By default the cells correspond to
+	 * the columns of the table that are not auto increment columns, in the order of the table.
+	 * This setting is ignored if the file has a header.
+	 * @param columns the columns
+	 */
+	public void setColumns(List<TableColumn> columns) {
+		this.columns = new ArrayList<TableColumn>(columns);
+	}
+
+	/**
+	 * Sets whether the first row of the file contains the names of the columns.
+	 * The names are matched case insensitively with the names of the columns of the table.
+	 * @param header <code>true</code> if the first row contains the names of the columns
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	public void setSeparator(char separator) {
+		if (separator == '"' || separator == '\r' || separator == '\n') {
+			throw new IllegalArgumentException("Invalid separator: " + separator);
+		}
+		this.separator = separator;
+	}
+
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Sets the pattern of date values, as used by {@link SimpleDateFormat}. The default is yyyy-MM-dd.
+	 * @param datePattern the pattern
+	 */
+	public void setDatePattern(String datePattern) {
+		new SimpleDateFormat(datePattern); // checks the pattern
+		this.datePattern = datePattern;
+	}
+
+	/**
+	 * Sets the number of rows that are inserted in a single JDBC batch.
+	 * @param batchSize the batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size must be at least 1.");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the number of batches after which the inserted rows are committed.
+	 * @param commitInterval the number of batches
+	 */
+	public void setCommitInterval(int commitInterval) {
+		if (commitInterval < 1) {
+			throw new IllegalArgumentException("The commit interval must be at least 1.");
+		}
+		this.commitInterval = commitInterval;
+	}
+
+	/**
+	 * Sets the maximum number of batches that have been read but not yet inserted.
+	 * If this number is reached, the reader thread waits for the batches to be inserted.
+	 * @param queueCapacity the maximum number of batches
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("The queue capacity must be at least 1.");
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Imports all rows of a file.
+	 * @param file the file
+	 * @throws SQLException if a row contains an invalid value or if a problem occurs while inserting the rows
+	 * @throws IOException if a problem occurs while reading the file
+	 */
+	public void importFile(Path file) throws SQLException, IOException {
+		importFile(file, 0);
+	}
+
+	/**
+	 * Imports the rows of a file, skipping a number of rows at the start of the file.
+	 * The header, if present, does not count as a row.
+	 * @param file the file
+	 * @param nrRowsToSkip the number of rows to skip; typically the number of rows committed by
+	 *        a previous import that failed
+	 * @throws SQLException if a row contains an invalid value or if a problem occurs while inserting the rows
+	 * @throws IOException if a problem occurs while reading the file
+	 */
+	public void importFile(Path file, long nrRowsToSkip) throws SQLException, IOException {
+		nrRowsRead.set(nrRowsToSkip);
+		readerWaitNanos.set(0);
+		nrRowsInserted = 0;
+		nrRowsCommitted = nrRowsToSkip;
+		writerWaitNanos = 0;
+		long startTime = System.nanoTime();
+
+		BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<List<Object[]>>(queueCapacity);
+		Reader reader = new Reader(file, nrRowsToSkip, queue);
+		Thread readerThread = new Thread(reader, "CSV reader for " + table.getName());
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		boolean success = false;
+		try {
+			insertRows(queue, reader);
+			success = true;
+		} finally {
+			if (!success) {
+				reader.abort(readerThread);
+				try {
+					connection.rollback();
+				} catch (SQLException e) {
+					logger.warn("Ignored exception while rolling back the import: {}", e.getMessage(), e);
+				}
+			}
+			joinQuietly(readerThread);
+			elapsedNanos = System.nanoTime() - startTime;
+			if (success) {
+				logger.info("Imported {} into {}: {}", file, table.getName(), this);
+			} else {
+				logger.warn("Import of {} into {} failed after reading row {}; {} rows have been committed: {}",
+						file, table.getName(), getNrRowsRead(), nrRowsCommitted, this);
+			}
+		}
+	}
+
+	private void insertRows(BlockingQueue<List<Object[]>> queue, Reader reader) throws SQLException, IOException {
+		PreparedStatement statement = null;
+		try {
+			int nrBatchesSinceCommit = 0;
+			long nrRowsSinceCommit = 0;
+			List<Object[]> rows = take(queue);
+			while (rows != END_OF_ROWS) {
+				if (statement == null) {
+					statement = prepareInsertStatement(reader.columns);
+				}
+				for (Object[] row : rows) {
+					for (int i=0; i<row.length; i++) {
+						setParameter(statement, i + 1, new ColumnValuePair(reader.columns.get(i), row[i]));
+					}
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				nrRowsInserted += rows.size();
+				nrRowsSinceCommit += rows.size();
+				nrBatchesSinceCommit++;
+				if (nrBatchesSinceCommit == commitInterval) {
+					connection.commit();
+					nrRowsCommitted += nrRowsSinceCommit;
+					nrBatchesSinceCommit = 0;
+					nrRowsSinceCommit = 0;
+				}
+				rows = take(queue);
+			}
+
+			reader.throwExceptionIfFailed();
+			connection.commit();
+			nrRowsCommitted += nrRowsSinceCommit;
+		} finally {
+			closeStatement(statement);
+		}
+	}
+
+	private PreparedStatement prepareInsertStatement(List<TableColumn> columns) throws SQLException {
+		ColumnValuePairs colValues = new ColumnValuePairs();
+		for (TableColumn column : columns) {
+			colValues.add(column, null);
+		}
+		return prepareStatement(SqlTemplateCache.getSql(table, Operation.INSERT, colValues, null));
+	}
+
+	private List<Object[]> take(BlockingQueue<List<Object[]>> queue) throws SQLException {
+		long startTime = System.nanoTime();
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for rows.", e);
+		} finally {
+			writerWaitNanos += System.nanoTime() - startTime;
+		}
+	}
+
+	private void joinQuietly(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets the number of rows of the file that have been read, including the skipped rows.
+	 * @return the number of rows
+	 */
+	public long getNrRowsRead() {
+		return nrRowsRead.get();
+	}
+
+	/**
+	 * Gets the number of rows inserted by the last import.
+	 * @return the number of rows
+	 */
+	public long getNrRowsInserted() {
+		return nrRowsInserted;
+	}
+
+	/**
+	 * Gets the number of rows of the file that have been committed, including the skipped rows.
+	 * After a failed import, pass this number to {@link #importFile(Path, long)} to resume the import.
+	 * @return the number of rows
+	 */
+	public long getNrRowsCommitted() {
+		return nrRowsCommitted;
+	}
+
+	/**
+	 * Gets the time the reader thread waited for room in the queue during the last import.
+	 * A long time indicates that inserting the rows is the bottleneck.
+	 * @param unit the unit of the result
+	 * @return the time
+	 */
+	public long getReaderWaitTime(TimeUnit unit) {
+		return unit.convert(readerWaitNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the time the inserting thread waited for rows during the last import.
+	 * A long time indicates that reading the file is the bottleneck.
+	 * @param unit the unit of the result
+	 * @return the time
+	 */
+	public long getWriterWaitTime(TimeUnit unit) {
+		return unit.convert(writerWaitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public long getElapsedTime(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the number of rows inserted per second during the last import.
+	 * @return the number of rows per second
+	 */
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0 : nrRowsInserted * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "CsvImporter[rowsRead=" + getNrRowsRead() + ", rowsInserted=" + nrRowsInserted
+			+ ", rowsCommitted=" + nrRowsCommitted + ", elapsedMs=" + getElapsedTime(TimeUnit.MILLISECONDS)
+			+ ", rowsPerSecond=" + Math.round(getRowsPerSecond())
+			+ ", readerWaitMs=" + getReaderWaitTime(TimeUnit.MILLISECONDS)
+			+ ", writerWaitMs=" + getWriterWaitTime(TimeUnit.MILLISECONDS) + ']';
+	}
+
+	/**
+	 * Reads the rows of the file, converts them and puts them in batches in the queue.
+	 * The last element put in the queue is always {@link CsvImporter#END_OF_ROWS},
+	 * unless the reader is interrupted.
+	 */
+	private class Reader implements Runnable {
+
+		private final Path file;
+		private final long nrRowsToSkip;
+		private final BlockingQueue<List<Object[]>> queue;
+		private final SimpleDateFormat dateFormat;
+
+		/** The columns of the cells. Set before the first batch is put in the queue. */
+		private volatile List<TableColumn> columns;
+
+		private volatile Exception exception;
+
+		private volatile boolean aborted;
+
+		public Reader(Path file, long nrRowsToSkip, BlockingQueue<List<Object[]>> queue) {
+			this.file = file;
+			this.nrRowsToSkip = nrRowsToSkip;
+			this.queue = queue;
+			dateFormat = new SimpleDateFormat(datePattern);
+			dateFormat.setLenient(false);
+		}
+
+		@Override
+		public void run() {
+			try {
+				readRows();
+			} catch (Exception e) {
+				if (aborted) {
+					return;
+				}
+				exception = e;
+			}
+			try {
+				queue.put(END_OF_ROWS);
+			} catch (InterruptedException e) {
+				// The import has been aborted.
+			}
+		}
+
+		/**
+		 * Stops the reader thread. Use this method if the rows are not taken from the queue anymore.
+		 * @param thread the reader thread
+		 */
+		public void abort(Thread thread) {
+			aborted = true;
+			thread.interrupt();
+		}
+
+		private void readRows() throws IOException, SQLException, InterruptedException {
+			CsvReader csvReader = new CsvReader(FileChannel.open(file, StandardOpenOption.READ), charset, separator);
+			try {
+				columns = header ? getColumnsFromHeader(csvReader) : CsvImporter.this.columns;
+
+				for (long i=0; i<nrRowsToSkip; ) {
+					List<String> cells = csvReader.readRecord();
+					if (cells == null) {
+						return;
+					} else if (!isBlank(cells)) {
+						i++;
+					}
+				}
+
+				List<Object[]> rows = new ArrayList<Object[]>(batchSize);
+				List<String> cells = csvReader.readRecord();
+				while (cells != null) {
+					if (!isBlank(cells)) {
+						rows.add(convert(cells, csvReader.getLineNr()));
+						nrRowsRead.incrementAndGet();
+						if (rows.size() == batchSize) {
+							put(rows);
+							rows = new ArrayList<Object[]>(batchSize);
+						}
+					}
+					cells = csvReader.readRecord();
+				}
+				if (!rows.isEmpty()) {
+					put(rows);
+				}
+			} finally {
+				csvReader.close();
+			}
+		}
+
+		private List<TableColumn> getColumnsFromHeader(CsvReader csvReader) throws IOException, SQLException {
+			List<String> names = csvReader.readRecord();
+			if (names == null) {
+				throw new SQLException("The file " + file + " has no header.");
+			}
+			List<TableColumn> result = new ArrayList<TableColumn>(names.size());
+			for (String name : names) {
+				TableColumn column = null;
+				for (TableColumn c : table.getColumns()) {
+					if (c.getName().equalsIgnoreCase(name)) {
+						column = c;
+					}
+				}
+				if (column == null) {
+					throw new SQLException("Table " + table.getName() + " has no column " + name + '.');
+				}
+				result.add(column);
+			}
+			return result;
+		}
+
+		private boolean isBlank(List<String> cells) {
+			return cells.size() == 1 && cells.get(0) == null;
+		}
+
+		private Object[] convert(List<String> cells, int lineNr) throws SQLException {
+			if (cells.size() != columns.size()) {
+				throw new SQLException("Line " + lineNr + ": expected " + columns.size() + " values but found "
+						+ cells.size() + '.');
+			}
+			Object[] row = new Object[cells.size()];
+			for (int i=0; i<row.length; i++) {
+				TableColumn column = columns.get(i);
+				try {
+					row[i] = convert(column, cells.get(i));
+					column.validateValue(row[i]);
+				} catch (SQLException | ParseException | IllegalArgumentException e) {
+					throw new SQLException("Line " + lineNr + ": invalid value for column " + column.getName()
+							+ ": " + e.getMessage(), e);
+				}
+			}
+			return row;
+		}
+
+		private Object convert(TableColumn column, String cell) throws SQLException, ParseException {
+			if (cell == null) {
+				return null;
+			}
+			switch (column.getType()) {
+			case TableColumn.STRING: return cell;
+			case TableColumn.INTEGER: return Integer.valueOf(cell.trim());
+			case TableColumn.LONG: return Long.valueOf(cell.trim());
+			case TableColumn.DOUBLE: return Double.valueOf(cell.trim());
+			case TableColumn.DATE: return dateFormat.parse(cell.trim());
+			case TableColumn.BOOLEAN:
+				if (cell.trim().equalsIgnoreCase("true")) {
+					return Boolean.TRUE;
+				} else if (cell.trim().equalsIgnoreCase("false")) {
+					return Boolean.FALSE;
+				}
+				throw new IllegalArgumentException("\"" + cell + "\" is not a boolean.");
+			default:
+				throw new SQLException("The type " + column.getType() +  " is unsupported.");
+			}
+		}
+
+		private void put(List<Object[]> rows) throws InterruptedException {
+			long startTime = System.nanoTime();
+			queue.put(rows);
+			readerWaitNanos.addAndGet(System.nanoTime() - startTime);
+		}
+
+		public void throwExceptionIfFailed() throws SQLException, IOException {
+			if (exception instanceof SQLException) {
+				throw (SQLException) exception;
+			} else if (exception instanceof IOException) {
+				throw (IOException) exception;
+			} else if (exception != null) {
+				throw new SQLException("Reading the file " + file + " failed.", exception);
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a CSV file from a channel. The bytes are decoded in chunks,
+	 * so that no intermediate string of a complete line is needed.
+	 */
+	private static class CsvReader implements Closeable {
+
+		private final FileChannel channel;
+		private final CharsetDecoder decoder;
+		private final char separator;
+		private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		private final StringBuilder cell = new StringBuilder();
+
+		private boolean endOfInput;
+		private boolean flushed;
+		private int pushedBack = -2;
+		private int lineNr;
+		private int nrCellsPerRecord = 10;
+
+		public CsvReader(FileChannel channel, Charset charset, char separator) {
+			this.channel = channel;
+			this.decoder = charset.newDecoder();
+			this.separator = separator;
+			chars.flip();
+		}
+
+		/**
+		 * Reads the next record.
+		 * @return the cells of the record; <code>null</code> for empty cells that are not quoted.
+		 *         Returns <code>null</code> if the end of the file has been reached.
+		 * @throws IOException if a problem occurs
+		 */
+		public List<String> readRecord() throws IOException {
+			int c = read();
+			if (c == -1) {
+				return null;
+			}
+
+			lineNr++;
+			List<String> cells = new ArrayList<String>(nrCellsPerRecord);
+			boolean quoted = false;
+			while (true) {
+				if (c == '"' && cell.length() == 0 && !quoted) {
+					quoted = true;
+					c = readQuotedValue();
+				} else if (c == separator || c == '\n' || c == '\r' || c == -1) {
+					cells.add(cell.length() == 0 && !quoted ? null : cell.toString());
+					cell.setLength(0);
+					quoted = false;
+					if (c == separator) {
+						c = read();
+					} else {
+						if (c == '\r') {
+							c = read();
+							if (c != '\n') {
+								pushedBack = c;
+							}
+						}
+						nrCellsPerRecord = cells.size();
+						return cells;
+					}
+				} else {
+					cell.append((char) c);
+					c = read();
+				}
+			}
+		}
+
+		/**
+		 * Reads a quoted value up to and including the closing quote.
+		 * @return the character following the closing quote
+		 * @throws IOException if a problem occurs
+		 */
+		private int readQuotedValue() throws IOException {
+			int startLineNr = lineNr;
+			while (true) {
+				int c = read();
+				if (c == -1) {
+					throw new IOException("Line " + startLineNr + ": a quoted value has no closing quote.");
+				} else if (c == '"') {
+					c = read();
+					if (c != '"') {
+						return c;
+					}
+				} else if (c == '\n') {
+					lineNr++;
+				}
+				cell.append((char) c);
+			}
+		}
+
+		/**
+		 * Gets the number of the line on which the last record that was read ends.
+		 * @return the line number
+		 */
+		public int getLineNr() {
+			return lineNr;
+		}
+
+		private int read() throws IOException {
+			if (pushedBack != -2) {
+				int c = pushedBack;
+				pushedBack = -2;
+				return c;
+			}
+			if (!chars.hasRemaining() && !fill()) {
+				return -1;
+			}
+			return chars.get();
+		}
+
+		private boolean fill() throws IOException {
+			chars.clear();
+			while (chars.position() == 0 && !flushed) {
+				if (!endOfInput && channel.read(bytes) < 0) {
+					endOfInput = true;
+				}
+				bytes.flip();
+				CoderResult result = decoder.decode(bytes, chars, endOfInput);
+				bytes.compact();
+				if (result.isError()) {
+					result.throwException();
+				}
+				if (endOfInput && result.isUnderflow()) {
+					decoder.flush(chars);
+					flushed = true;
+				}
+			}
+			chars.flip();
+			return chars.hasRemaining();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -17,6 +17,8 @@ package nl.gogognome.lib.dao;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
 
 /**
  * This interface specifies a plugin for DAOs that handles DMBS specific issues.
@@ -46,10 +48,77 @@ public interface DBMSSpecificDAOPlugin {
 
     /**
      * Gets column value pairs for values that were generated by the last
-     * insert statement.
-     * @param statement the inser statement that has just been executed
+     * insert statement. Only called for tables with auto increment columns.
+     * @param statement the insert statement that has just been executed. The statement
+     *        has been prepared with {@link Statement#RETURN_GENERATED_KEYS}.
      * @return the column value pairs (never null)
      * @throws SQLException if a problem occurs.
      */
 	public ColumnValuePairs getGeneratedValues(PreparedStatement statement) throws SQLException;
+
+    /**
+     * Gets column value pairs for values that were generated by the last
+     * batch of insert statements. Only called for tables with auto increment columns.
+     * @param statement the insert statement whose batch has just been executed. The statement
+     *        has been prepared with {@link Statement#RETURN_GENERATED_KEYS}.
+     * @param nrRows the number of rows inserted by the batch
+     * @return a list with the column value pairs per inserted row, in the order in which the
+     *         rows were added to the batch (never null)
+     * @throws SQLException if a problem occurs.
+     */
+	public List<ColumnValuePairs> getGeneratedValues(PreparedStatement statement, int nrRows)
+			throws SQLException;
+
+    /**
+     * Prepares a statement whose result set is read once from start to end. The result set
+     * is forward-only and read-only and the rows are fetched in chunks instead of
+     * being loaded into memory at once.
+     * @param query the query
+     * @param fetchSize the preferred number of rows to fetch from the database at once
+     * @return the prepared statement
+     * @throws SQLException if a problem occurs.
+     */
+	public PreparedStatement prepareStreamingStatement(String query, int fetchSize) throws SQLException;
+
+    /**
+     * Limits the number of rows returned by a query.
+     * @param query a select query, optionally ending with an order-by clause
+     * @param limit the maximum number of rows to be returned
+     * @return the query extended with the limit
+     */
+	public String addLimit(String query, int limit);
+
+    /**
+     * Limits the number of rows returned by a query to the value of a parameter. The parameter
+     * follows all parameters of the query.
+     * @param query a select query, optionally ending with an order-by clause
+     * @return the query extended with the limit
+     */
+	public String addLimitParameter(String query);
+
+    /**
+     * Gets the maximum number of parameters that should be used in the IN list of one query.
+     * @return the maximum number of parameters
+     */
+	public int getMaxInListSize();
+
+    /**
+     * Checks whether IN lists with row value constructors, like "(a, b) IN ((?, ?), (?, ?))",
+     * are supported and are executed efficiently.
+     * @return <code>true</code> if row value constructors can be used in IN lists;
+     *         <code>false</code> if OR-expressions must be used instead
+     */
+	public boolean supportsRowValueInList();
+
+    /**
+     * Creates a statement that inserts a record or, if a record with the same key already exists,
+     * updates that record. The statement has a parameter for each column value pair in
+     * <code>colValues</code>, in the same order.
+     * @param colValues the columns to be inserted or updated. These include the key columns.
+     * @param keyColumns the columns that identify the record
+     * @return the statement
+     * @throws SQLException if a problem occurs.
+     */
+	public String createUpsertQuery(ColumnValuePairs colValues, ColumnValuePairs keyColumns)
+			throws SQLException;
 }
@@ -43,47 +43,7 @@ public class HsqlDbDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugi
             for (Iterator<TableColumn> iter = table.getColumns().iterator(); iter.hasNext(); ) {
             	TableColumn column = iter.next();
                 sb.append("    ").append(column.getName()).append(" ");
-                switch (column.getType()) {
-                case TableColumn.STRING:
-                    if (column.getLength() < 256) {
-                        sb.append("VARCHAR(").append(column.getLength()).append(") ");
-                    } else if (column.getLength() < 65536) {
-                        sb.append("TEXT ");
-                    } else if (column.getLength() < 16777216) {
-                        sb.append("MEDIUMTEXT ");
-                    } else {
-                        sb.append("LONGTEXT ");
-                    }
-                    break;
-
-                case TableColumn.INTEGER:
-                    sb.append("INTEGER ");
-                    break;
-
-                case TableColumn.LONG:
-                    if (column.getLength() < 10) {
-                        sb.append("INTEGER ");
-                    } else {
-                        sb.append("BIGINT ");
-                    }
-                    break;
-
-                case TableColumn.DATE:
-                    sb.append("DATE ");
-                    break;
-
-                case TableColumn.DOUBLE:
-                    sb.append("DOUBLE ");
-                    break;
-
-                case TableColumn.BOOLEAN:
-                    sb.append("BOOLEAN ");
-                    break;
-
-                default:
-                    throw new SQLException("Unknown column type: " + column.getType()
-                        + " for column " + column.getName());
-                }
+                sb.append(getSqlType(column)).append(' ');
 
                 if (column.isNotNull() && !column.isAutoIncrement()) {
                     sb.append("NOT NULL ");
@@ -122,7 +82,7 @@ public class HsqlDbDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugi
 
             sb.append(")");
 
-            logger.debug("createTable(): statement = " + sb.toString());
+            logger.debug("createTable(): statement = {}", sb);
 
             statement = connection.prepareStatement(sb.toString());
 
@@ -132,12 +92,52 @@ public class HsqlDbDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugi
         }
 	}
 
+    /**
+     * Gets the SQL type of a column.
+     * @param column the column
+     * @return the SQL type
+     * @throws SQLException if the column has an unknown type
+     */
+    private String getSqlType(TableColumn column) throws SQLException {
+        switch (column.getType()) {
+        case TableColumn.STRING:
+            if (column.getLength() < 256) {
+                return "VARCHAR(" + column.getLength() + ")";
+            } else if (column.getLength() < 65536) {
+                return "TEXT";
+            } else if (column.getLength() < 16777216) {
+                return "MEDIUMTEXT";
+            } else {
+                return "LONGTEXT";
+            }
+
+        case TableColumn.INTEGER:
+            return "INTEGER";
+
+        case TableColumn.LONG:
+            return column.getLength() < 10 ? "INTEGER" : "BIGINT";
+
+        case TableColumn.DATE:
+            return "DATE";
+
+        case TableColumn.DOUBLE:
+            return "DOUBLE";
+
+        case TableColumn.BOOLEAN:
+            return "BOOLEAN";
+
+        default:
+            throw new SQLException("Unknown column type: " + column.getType()
+                + " for column " + column.getName());
+        }
+    }
+
     @Override
 	public void dropTable() throws SQLException {
         PreparedStatement statement = null;
         try {
             statement = connection.prepareStatement("DROP TABLE " + table.getName());
-            logger.debug("dropTable(): statement = " + statement.toString());
+            logger.debug("dropTable(): statement = {}", statement);
             statement.executeUpdate();
         } finally {
         	closeStatement(statement);
@@ -161,7 +161,28 @@ public class HsqlDbDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugi
 
 
     @Override
-    public ColumnValuePairs getGeneratedValues(PreparedStatement ignored) throws SQLException {
+    public ColumnValuePairs getGeneratedValues(PreparedStatement statement) throws SQLException {
+    	ColumnValuePairs cvp = new ColumnValuePairs();
+    	ResultSet result = null;
+    	try {
+    		result = statement.getGeneratedKeys();
+	    	if (result.next()) {
+	    		return getAutoIncrementValues(result);
+	    	}
+    	} catch (SQLException e) {
+    		logger.debug("Generated keys are not available from the insert statement: {}", e.getMessage());
+    	} finally {
+    		closeResultSet(result);
+    	}
+
+    	if (table.hasAutoIncrementColumns()) {
+    		// Fallback for statements that were not prepared with Statement.RETURN_GENERATED_KEYS.
+    		cvp = getIdentity();
+    	}
+    	return cvp;
+    }
+
+    private ColumnValuePairs getIdentity() throws SQLException {
     	ColumnValuePairs cvp = new ColumnValuePairs();
     	PreparedStatement statement = null;
     	ResultSet result = null;
@@ -169,18 +190,7 @@ public class HsqlDbDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugi
 	    	statement = prepareStatement("CALL IDENTITY()");
 	        result = statement.executeQuery();
 	    	if (result.next()) {
-		        int index = 1;
-	    		for (TableColumn column : table.getColumns()) {
-	    			if (column.isAutoIncrement()) {
-	    				Object o = result.getObject(index++);
-
-	    				if (column.getType() == TableColumn.INTEGER) {
-	    					o = ((Number) o).intValue();
-	    				}
-
-	    				cvp.add(column, o);
-	    			}
-	    		}
+	    		cvp = getAutoIncrementValues(result);
 	    	}
     	} finally {
     		closeResultSet(result);
@@ -189,4 +199,92 @@ public class HsqlDbDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugi
     	return cvp;
     }
 
+    @Override
+    public List<ColumnValuePairs> getGeneratedValues(PreparedStatement statement, int nrRows)
+    		throws SQLException {
+    	List<ColumnValuePairs> cvps = new ArrayList<ColumnValuePairs>(nrRows);
+    	ResultSet result = null;
+    	try {
+    		result = statement.getGeneratedKeys();
+    		while (result.next()) {
+    			cvps.add(getAutoIncrementValues(result));
+    		}
+    	} finally {
+    		closeResultSet(result);
+    	}
+    	return cvps;
+    }
+
+    @Override
+    public PreparedStatement prepareStreamingStatement(String query, int fetchSize) throws SQLException {
+    	PreparedStatement statement = prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    	statement.setFetchSize(fetchSize);
+    	return statement;
+    }
+
+    @Override
+    public String addLimit(String query, int limit) {
+    	return query + " FETCH FIRST " + limit + " ROWS ONLY";
+    }
+
+    @Override
+    public String addLimitParameter(String query) {
+    	return query + " FETCH FIRST ? ROWS ONLY";
+    }
+
+    @Override
+    public int getMaxInListSize() {
+    	return 1000;
+    }
+
+    @Override
+    public boolean supportsRowValueInList() {
+    	return true;
+    }
+
+    @Override
+    public String createUpsertQuery(ColumnValuePairs colValues, ColumnValuePairs keyColumns)
+    		throws SQLException {
+    	StringBuilder columnNames = new StringBuilder(200);
+    	StringBuilder parameters = new StringBuilder(100);
+    	StringBuilder newValues = new StringBuilder(200);
+    	StringBuilder updates = new StringBuilder(200);
+    	for (ColumnValuePair cvp : colValues) {
+    		String name = cvp.getColumn().getName();
+    		if (columnNames.length() > 0) {
+    			columnNames.append(", ");
+    			parameters.append(", ");
+    			newValues.append(", ");
+    		}
+    		columnNames.append(name);
+    		// The types of the parameters cannot be derived from the VALUES clause.
+    		parameters.append("CAST(? AS ").append(getSqlType(cvp.getColumn())).append(')');
+    		newValues.append("vals.").append(name);
+    		if (keyColumns.getColumnValuePair(cvp.getColumn()) == null) {
+    			if (updates.length() > 0) {
+    				updates.append(", ");
+    			}
+    			updates.append("t.").append(name).append(" = vals.").append(name);
+    		}
+    	}
+
+    	StringBuilder query = new StringBuilder(600);
+    	query.append("MERGE INTO ").append(table.getName()).append(" t USING (VALUES(").append(parameters);
+    	query.append(")) AS vals(").append(columnNames).append(") ON ");
+    	boolean first = true;
+    	for (ColumnValuePair cvp : keyColumns) {
+    		if (!first) {
+    			query.append(" AND ");
+    		}
+    		first = false;
+    		String name = cvp.getColumn().getName();
+    		query.append("t.").append(name).append(" = vals.").append(name);
+    	}
+    	if (updates.length() > 0) {
+    		query.append(" WHEN MATCHED THEN UPDATE SET ").append(updates);
+    	}
+    	query.append(" WHEN NOT MATCHED THEN INSERT (").append(columnNames).append(") VALUES (");
+    	query.append(newValues).append(')');
+    	return query.toString();
+    }
 }
@@ -130,7 +130,7 @@ public class MySqlDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugin
             sb.append(") ENGINE = MyISAM");
             statement = prepareStatement(sb.toString());
 
-            logger.debug("createTable(): statement = " + statement.toString());
+            logger.debug("createTable(): statement = {}", statement);
             statement.executeUpdate();
         } finally {
         	closeStatement(statement);
@@ -142,7 +142,7 @@ public class MySqlDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugin
         PreparedStatement statement = null;
         try {
             statement = prepareStatement("DROP TABLE " + table.getName());
-            logger.debug("dropTable(): statement = " + statement.toString());
+            logger.debug("dropTable(): statement = {}", statement);
             statement.executeUpdate();
         } finally {
         	closeStatement(statement);
@@ -152,24 +152,34 @@ public class MySqlDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugin
     @Override
     public ColumnValuePairs getGeneratedValues(PreparedStatement statement) throws SQLException {
     	ColumnValuePairs cvp = new ColumnValuePairs();
-        ResultSet result = statement.getGeneratedKeys();
-    	if (result.next()) {
-    		int index = 1;
-    		for (TableColumn column : table.getColumns()) {
-    			if (column.isAutoIncrement()) {
-    				Object o = result.getObject(index++);
-
-    				if (column.getType() == TableColumn.INTEGER) {
-    					o = ((Number) o).intValue();
-    				}
-
-    				cvp.add(column, o);
-    			}
+    	ResultSet result = null;
+    	try {
+    		result = statement.getGeneratedKeys();
+    		if (result.next()) {
+    			cvp = getAutoIncrementValues(result);
     		}
+    	} finally {
+    		closeResultSet(result);
     	}
     	return cvp;
     }
 
+    @Override
+    public List<ColumnValuePairs> getGeneratedValues(PreparedStatement statement, int nrRows)
+    		throws SQLException {
+    	List<ColumnValuePairs> cvps = new ArrayList<ColumnValuePairs>(nrRows);
+    	ResultSet result = null;
+    	try {
+    		result = statement.getGeneratedKeys();
+    		while (result.next()) {
+    			cvps.add(getAutoIncrementValues(result));
+    		}
+    	} finally {
+    		closeResultSet(result);
+    	}
+    	return cvps;
+    }
+
 	@Override
 	public void prepareColumnValuesForAutoIncrementColumns(ColumnValuePairs colValues) {
     	List<TableColumn> columnsToBeRemoved = new ArrayList<TableColumn>();
@@ -184,4 +194,78 @@ public class MySqlDAOPlugin extends AbstractDAO implements DBMSSpecificDAOPlugin
 			colValues.remove(column);
 		}
 	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>MySQL only fetches rows in chunks of <code>fetchSize</code> rows if the connection
+	 * URL contains <code>useCursorFetch=true</code>. Otherwise the rows are streamed one by one,
+	 * which requires a fetch size of {@link Integer#MIN_VALUE}. While rows are streamed,
+	 * no other statements can be executed on the connection.
+	 */
+	@Override
+	public PreparedStatement prepareStreamingStatement(String query, int fetchSize) throws SQLException {
+		PreparedStatement statement = prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		String url = connection.getMetaData().getURL();
+		if (url != null && url.contains("useCursorFetch=true")) {
+			statement.setFetchSize(fetchSize);
+		} else {
+			statement.setFetchSize(Integer.MIN_VALUE);
+		}
+		return statement;
+	}
+
+	@Override
+	public String addLimit(String query, int limit) {
+		return query + " LIMIT " + limit;
+	}
+
+	@Override
+	public String addLimitParameter(String query) {
+		return query + " LIMIT ?";
+	}
+
+	@Override
+	public int getMaxInListSize() {
+		return 1000;
+	}
+
+	@Override
+	public boolean supportsRowValueInList() {
+		return true;
+	}
+
+	@Override
+	public String createUpsertQuery(ColumnValuePairs colValues, ColumnValuePairs keyColumns)
+			throws SQLException {
+		StringBuilder query = new StringBuilder(600);
+		StringBuilder updates = new StringBuilder(200);
+		query.append("INSERT INTO ").append(table.getName()).append(" (");
+		for (Iterator<ColumnValuePair> iter = colValues.iterator(); iter.hasNext(); ) {
+			TableColumn column = iter.next().getColumn();
+			query.append(column.getName());
+			if (iter.hasNext()) {
+				query.append(", ");
+			}
+			if (keyColumns.getColumnValuePair(column) == null) {
+				if (updates.length() > 0) {
+					updates.append(", ");
+				}
+				updates.append(column.getName()).append(" = VALUES(").append(column.getName()).append(')');
+			}
+		}
+		query.append(") VALUES (");
+		for (int i=0; i<colValues.size(); i++) {
+			query.append(i == 0 ? "?" : ", ?");
+		}
+		query.append(") ON DUPLICATE KEY UPDATE ");
+		if (updates.length() > 0) {
+			query.append(updates);
+		} else {
+			// Nothing to update; assign a key column to itself to turn the duplicate into a no-op.
+			String name = keyColumns.iterator().next().getColumn().getName();
+			query.append(name).append(" = ").append(name);
+		}
+		return query.toString();
+	}
 }
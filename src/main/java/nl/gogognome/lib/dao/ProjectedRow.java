@@ -0,0 +1,141 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.util.BitSet;
+import java.util.Date;
+
+/**
+ * This class represents a row returned by a query for a {@link Projection}. Values can be read
+ * by column or by the index of the column in the projection. The primitive getters do not box values.
+ * For SQL NULL they return 0 or <code>false</code>; use {@link #isNull(int)} to distinguish these.
+ *
+ * @author Sander Kooijmans
+ */
+public class ProjectedRow {
+
+	private final Projection projection;
+	private final long[] primitives;
+	private final Object[] objects;
+	private final BitSet nulls;
+
+	ProjectedRow(Projection projection, long[] primitives, Object[] objects, BitSet nulls) {
+		this.projection = projection;
+		this.primitives = primitives;
+		this.objects = objects;
+		this.nulls = nulls;
+	}
+
+	public Projection getProjection() {
+		return projection;
+	}
+
+	public boolean isNull(int index) {
+		return nulls != null && nulls.get(index);
+	}
+
+	public boolean isNull(TableColumn column) {
+		return isNull(projection.getIndex(column));
+	}
+
+	public int getInt(int index) {
+		checkType(index, TableColumn.INTEGER);
+		return (int) primitives[projection.getSlot(index)];
+	}
+
+	public int getInt(TableColumn column) {
+		return getInt(projection.getIndex(column));
+	}
+
+	public long getLong(int index) {
+		checkType(index, TableColumn.LONG);
+		return primitives[projection.getSlot(index)];
+	}
+
+	public long getLong(TableColumn column) {
+		return getLong(projection.getIndex(column));
+	}
+
+	public double getDouble(int index) {
+		checkType(index, TableColumn.DOUBLE);
+		return Double.longBitsToDouble(primitives[projection.getSlot(index)]);
+	}
+
+	public double getDouble(TableColumn column) {
+		return getDouble(projection.getIndex(column));
+	}
+
+	public boolean getBoolean(int index) {
+		checkType(index, TableColumn.BOOLEAN);
+		return primitives[projection.getSlot(index)] != 0;
+	}
+
+	public boolean getBoolean(TableColumn column) {
+		return getBoolean(projection.getIndex(column));
+	}
+
+	public String getString(int index) {
+		checkType(index, TableColumn.STRING);
+		return (String) objects[projection.getSlot(index)];
+	}
+
+	public String getString(TableColumn column) {
+		return getString(projection.getIndex(column));
+	}
+
+	public Date getDate(int index) {
+		checkType(index, TableColumn.DATE);
+		return (Date) objects[projection.getSlot(index)];
+	}
+
+	public Date getDate(TableColumn column) {
+		return getDate(projection.getIndex(column));
+	}
+
+	private void checkType(int index, int type) {
+		TableColumn column = projection.getColumns().get(index);
+		if (column.getType() != type) {
+			throw new IllegalArgumentException("Column " + column.getName() + " has type " + column.getType()
+					+ " instead of type " + type);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(100);
+		sb.append('[');
+		for (int i=0; i<projection.getColumns().size(); i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			TableColumn column = projection.getColumns().get(i);
+			sb.append(column.getName()).append('=');
+			if (isNull(i)) {
+				sb.append("null");
+			} else {
+				switch (column.getType()) {
+				case TableColumn.INTEGER: sb.append(getInt(i)); break;
+				case TableColumn.LONG: sb.append(getLong(i)); break;
+				case TableColumn.DOUBLE: sb.append(getDouble(i)); break;
+				case TableColumn.BOOLEAN: sb.append(getBoolean(i)); break;
+				default: sb.append(objects[projection.getSlot(i)]); break;
+				}
+			}
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+}
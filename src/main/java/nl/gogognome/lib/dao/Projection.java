@@ -0,0 +1,144 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents a subset of the columns of a table. A query for a projection
+ * only selects these columns and returns {@link ProjectedRow}s instead of business objects.
+ *
+ * <p>Values of INTEGER, LONG, DOUBLE and BOOLEAN columns are stored in a primitive array
+ * of the row. Only values of STRING and DATE columns are stored as objects.
+ *
+ * <p>A projection is immutable and can be shared by multiple threads.
+ *
+ * @author Sander Kooijmans
+ */
+public class Projection {
+
+	private final List<TableColumn> columns;
+
+	/** Maps each column to its index in {@link #columns}. */
+	private final Map<TableColumn, Integer> columnIndexes = new IdentityHashMap<TableColumn, Integer>();
+
+	/** For each column the index in the primitive or object values of a row. */
+	private final int[] slots;
+
+	private final int nrPrimitiveSlots;
+
+	private final int nrObjectSlots;
+
+	/**
+	 * Constructor.
+	 * @param columns the columns of the projection
+	 */
+	public Projection(TableColumn... columns) {
+		if (columns.length == 0) {
+			throw new IllegalArgumentException("A projection must have at least one column.");
+		}
+		this.columns = Collections.unmodifiableList(Arrays.asList(columns.clone()));
+		slots = new int[columns.length];
+		int nrPrimitives = 0;
+		int nrObjects = 0;
+		for (int i=0; i<columns.length; i++) {
+			columnIndexes.put(columns[i], i);
+			slots[i] = isPrimitive(columns[i]) ? nrPrimitives++ : nrObjects++;
+		}
+		nrPrimitiveSlots = nrPrimitives;
+		nrObjectSlots = nrObjects;
+	}
+
+	public List<TableColumn> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Gets the index of a column in this projection.
+	 * @param column the column
+	 * @return the index (0-based)
+	 * @throws IllegalArgumentException if the column is not part of this projection
+	 */
+	public int getIndex(TableColumn column) {
+		Integer index = columnIndexes.get(column);
+		if (index == null) {
+			throw new IllegalArgumentException("Column " + column.getName() + " is not part of the projection.");
+		}
+		return index;
+	}
+
+	int getSlot(int index) {
+		return slots[index];
+	}
+
+	private static boolean isPrimitive(TableColumn column) {
+		int type = column.getType();
+		return type == TableColumn.INTEGER || type == TableColumn.LONG || type == TableColumn.DOUBLE
+				|| type == TableColumn.BOOLEAN;
+	}
+
+	/**
+	 * Reads the current row of a result set that was returned by a query for this projection.
+	 * @param resultSet the result set
+	 * @return the row
+	 * @throws SQLException if a problem occurs while reading the row
+	 */
+	ProjectedRow readRow(ResultSet resultSet) throws SQLException {
+		long[] primitives = nrPrimitiveSlots > 0 ? new long[nrPrimitiveSlots] : null;
+		Object[] objects = nrObjectSlots > 0 ? new Object[nrObjectSlots] : null;
+		BitSet nulls = null;
+		for (int i=0; i<slots.length; i++) {
+			int resultSetIndex = i + 1;
+			int slot = slots[i];
+			switch (columns.get(i).getType()) {
+			case TableColumn.INTEGER:
+				primitives[slot] = resultSet.getInt(resultSetIndex);
+				break;
+			case TableColumn.LONG:
+				primitives[slot] = resultSet.getLong(resultSetIndex);
+				break;
+			case TableColumn.DOUBLE:
+				primitives[slot] = Double.doubleToRawLongBits(resultSet.getDouble(resultSetIndex));
+				break;
+			case TableColumn.BOOLEAN:
+				primitives[slot] = resultSet.getBoolean(resultSetIndex) ? 1 : 0;
+				break;
+			case TableColumn.STRING:
+				objects[slot] = resultSet.getString(resultSetIndex);
+				break;
+			case TableColumn.DATE:
+				objects[slot] = resultSet.getDate(resultSetIndex);
+				break;
+			default:
+				throw new SQLException("The type " + columns.get(i).getType() +  " is unsupported.");
+			}
+			if (resultSet.wasNull()) {
+				if (nulls == null) {
+					nulls = new BitSet(slots.length);
+				}
+				nulls.set(i);
+			}
+		}
+		return new ProjectedRow(this, primitives, objects, nulls);
+	}
+}
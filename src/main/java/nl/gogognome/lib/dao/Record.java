@@ -16,30 +16,93 @@
 package nl.gogognome.lib.dao;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This class represents a record from the table.
  *
+ * <p>A record reads the values of the current row of a result set. If the indexes of the
+ * columns in the result set are known, then values are read by index, which avoids
+ * looking up the column by name for each value. Otherwise values are read by column name.
+ *
  * @author Sander Kooijmans
  */
 public class Record {
 
     private Table table;
     private ResultSet resultSet;
+    private Map<TableColumn, Integer> columnIndexes;
 
+    /**
+     * Constructor for a record whose values are read by column name.
+     * @param table the table
+     * @param resultSet the result set
+     */
     public Record(Table table, ResultSet resultSet) {
+        this(table, resultSet, null);
+    }
+
+    /**
+     * Constructor.
+     * @param table the table
+     * @param resultSet the result set
+     * @param columnIndexes the indexes of the columns in the result set. Columns that are not
+     *        present are read by name. If <code>null</code>, then all values are read by name.
+     */
+    Record(Table table, ResultSet resultSet, Map<TableColumn, Integer> columnIndexes) {
         super();
         this.table = table;
         this.resultSet = resultSet;
+        this.columnIndexes = columnIndexes;
+    }
+
+    /**
+     * Creates a record for a result set whose columns are exactly the columns of the table,
+     * in the order of {@link Table#getColumns()}.
+     * @param table the table
+     * @param resultSet the result set
+     * @return the record
+     */
+    static Record forAllColumns(Table table, ResultSet resultSet) {
+        return new Record(table, resultSet, table.getColumnIndexes());
+    }
+
+    /**
+     * Creates a record for a result set with arbitrary columns. The indexes of the columns
+     * of the table are determined once from the meta data of the result set.
+     * @param table the table
+     * @param resultSet the result set
+     * @return the record
+     * @throws SQLException if a problem occurs while reading the meta data
+     */
+    static Record forResultSet(Table table, ResultSet resultSet) throws SQLException {
+        Map<String, TableColumn> nameToColumn = new HashMap<String, TableColumn>();
+        for (TableColumn column : table.getColumns()) {
+            nameToColumn.put(column.getName().toUpperCase(), column);
+        }
+
+        Map<TableColumn, Integer> columnIndexes = new HashMap<TableColumn, Integer>();
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        for (int index=1; index<=metaData.getColumnCount(); index++) {
+            TableColumn column = nameToColumn.get(metaData.getColumnLabel(index).toUpperCase());
+            if (column != null && !columnIndexes.containsKey(column)) {
+                columnIndexes.put(column, index);
+            }
+        }
+        return new Record(table, resultSet, columnIndexes);
     }
 
     public String getString(TableColumn column) throws SQLException {
         if (column.getType() != TableColumn.STRING) {
             throw new SQLException("Column " + table.getIndex(column) + " is not of type STRING.");
         }
-        return resultSet.getString(column.getName());
+
+        Integer index = getColumnIndex(column);
+        return index != null ? resultSet.getString(index) : resultSet.getString(column.getName());
     }
 
     public int getInt(TableColumn column) throws SQLException {
@@ -47,7 +110,8 @@ public class Record {
             throw new SQLException("Column " + table.getIndex(column) + " is not of type INTEGER.");
         }
 
-        return resultSet.getInt(column.getName());
+        Integer index = getColumnIndex(column);
+        return index != null ? resultSet.getInt(index) : resultSet.getInt(column.getName());
     }
 
     public long getLong(TableColumn column) throws SQLException {
@@ -55,7 +119,8 @@ public class Record {
             throw new SQLException("Column " + column.getName() + " is not of type LONG.");
         }
 
-        return resultSet.getLong(column.getName());
+        Integer index = getColumnIndex(column);
+        return index != null ? resultSet.getLong(index) : resultSet.getLong(column.getName());
     }
 
     public Date getDate(TableColumn column) throws SQLException {
@@ -63,7 +128,8 @@ public class Record {
             throw new SQLException("Column " + column.getName() + " is not of type DATE.");
         }
 
-        return resultSet.getDate(column.getName());
+        Integer index = getColumnIndex(column);
+        return index != null ? resultSet.getDate(index) : resultSet.getDate(column.getName());
     }
 
     public double getDouble(TableColumn column) throws SQLException {
@@ -71,7 +137,8 @@ public class Record {
             throw new SQLException("Column " + column.getName() + " is not of type DOUBLE.");
         }
 
-        return resultSet.getDouble(column.getName());
+        Integer index = getColumnIndex(column);
+        return index != null ? resultSet.getDouble(index) : resultSet.getDouble(column.getName());
     }
 
     public boolean getBoolean(TableColumn column) throws SQLException {
@@ -79,7 +146,12 @@ public class Record {
             throw new SQLException("Column " + column.getName() + " is not of type BOOLEAN.");
         }
 
-        return resultSet.getBoolean(column.getName());
+        Integer index = getColumnIndex(column);
+        return index != null ? resultSet.getBoolean(index) : resultSet.getBoolean(column.getName());
+    }
+
+    private Integer getColumnIndex(TableColumn column) {
+        return columnIndexes != null ? columnIndexes.get(column) : null;
     }
 
     @Override
@@ -0,0 +1,535 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import nl.gogognome.lib.dao.OrderByClause.TableColumnAndDirection;
+
+/**
+ * This class caches the SQL text of the statements that DAOs use to find, create, update
+ * and delete business objects. The SQL text of these statements only depends on the table,
+ * the operation and the columns involved. It is built once and then shared by all DAOs
+ * for the lifetime of the JVM.
+ *
+ * <p>The parameters of a statement appear in the order of the column value pairs
+ * that were used to build it: first the columns to be inserted or updated (except for
+ * {@link Literal}s) and then the columns of the where clause.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Sander Kooijmans
+ */
+class SqlTemplateCache {
+
+	enum Operation {
+		FIND(false),
+		EXISTS(false),
+		COUNT(false),
+		SUM(true),
+		MIN(true),
+		MAX(true),
+		INSERT(true),
+		UPDATE(true),
+		UPSERT(true),
+		DELETE(false);
+
+		private final boolean usesColumns;
+
+		private Operation(boolean usesColumns) {
+			this.usesColumns = usesColumns;
+		}
+
+		/**
+		 * @return <code>true</code> if the SQL text depends on the columns to be inserted, updated
+		 *         or aggregated; <code>false</code> if it only depends on the where columns
+		 */
+		boolean usesColumns() {
+			return usesColumns;
+		}
+	}
+
+	private final static ConcurrentMap<Key, String> SQL_BY_KEY = new ConcurrentHashMap<Key, String>();
+
+	/** The maximum number of cached criteria queries. Queries of other shapes are built each time they are used. */
+	final static int MAX_NR_CRITERIA_QUERIES = 1000;
+
+	private final static ConcurrentMap<List<Object>, CriteriaQuery> CRITERIA_QUERY_BY_SHAPE =
+			new ConcurrentHashMap<List<Object>, CriteriaQuery>();
+
+	private SqlTemplateCache() {
+	}
+
+	/**
+	 * Gets the SQL text of a statement.
+	 * @param table the table
+	 * @param operation the operation
+	 * @param colValues the columns to be inserted or updated, or the column to be aggregated.
+	 *        Ignored for other operations. Can be <code>null</code> for those operations.
+	 * @param whereColumns the columns of the where clause. Ignored for inserts.
+	 *        Can be <code>null</code> for inserts.
+	 * @return the SQL text
+	 */
+	static String getSql(Table table, Operation operation, ColumnValuePairs colValues,
+			ColumnValuePairs whereColumns) {
+		Key key = new Key(table, null, operation, colValues, whereColumns);
+		String sql = SQL_BY_KEY.get(key);
+		if (sql == null) {
+			sql = createSql(table, operation, colValues, whereColumns);
+			String previousSql = SQL_BY_KEY.putIfAbsent(key, sql);
+			if (previousSql != null) {
+				sql = previousSql;
+			}
+		}
+		return sql;
+	}
+
+	/**
+	 * Gets the SQL text of a statement that inserts a record or updates the record if a record
+	 * with the same key already exists. The SQL text is created by the DBMS specific plugin.
+	 * @param table the table
+	 * @param plugin the DBMS specific plugin
+	 * @param colValues the columns to be inserted or updated
+	 * @param keyColumns the columns that identify the record
+	 * @return the SQL text
+	 * @throws SQLException if the plugin cannot create the SQL text
+	 */
+	static String getUpsertSql(Table table, DBMSSpecificDAOPlugin plugin, ColumnValuePairs colValues,
+			ColumnValuePairs keyColumns) throws SQLException {
+		Key key = new Key(table, plugin.getClass(), Operation.UPSERT, colValues, keyColumns);
+		String sql = SQL_BY_KEY.get(key);
+		if (sql == null) {
+			sql = plugin.createUpsertQuery(colValues, keyColumns);
+			String previousSql = SQL_BY_KEY.putIfAbsent(key, sql);
+			if (previousSql != null) {
+				sql = previousSql;
+			}
+		}
+		return sql;
+	}
+
+	/**
+	 * Gets the query for criteria. The query is compiled once per shape of the criteria.
+	 * @param table the table
+	 * @param plugin the DBMS specific plugin, used to limit the number of rows
+	 * @param operation {@link Operation#FIND}, {@link Operation#COUNT} or {@link Operation#DELETE}.
+	 *        The order by clause and limit of the criteria are only used for {@link Operation#FIND}.
+	 * @param criteria the criteria
+	 * @return the query
+	 */
+	static CriteriaQuery getCriteriaQuery(Table table, DBMSSpecificDAOPlugin plugin, Operation operation,
+			Criteria criteria) {
+		return getCriteriaQuery(table, plugin, operation, null, criteria);
+	}
+
+	/**
+	 * Gets the query that selects the columns of a projection for criteria. The query is compiled once
+	 * per projection and shape of the criteria.
+	 * @param table the table
+	 * @param plugin the DBMS specific plugin, used to limit the number of rows
+	 * @param projection the projection
+	 * @param criteria the criteria
+	 * @return the query
+	 */
+	static CriteriaQuery getProjectionQuery(Table table, DBMSSpecificDAOPlugin plugin, Projection projection,
+			Criteria criteria) {
+		return getCriteriaQuery(table, plugin, Operation.FIND, projection, criteria);
+	}
+
+	private static CriteriaQuery getCriteriaQuery(Table table, DBMSSpecificDAOPlugin plugin, Operation operation,
+			Projection projection, Criteria criteria) {
+		boolean includeOrderAndLimit = operation == Operation.FIND;
+		List<Object> shape = new ArrayList<Object>();
+		shape.add(table);
+		shape.add(plugin.getClass());
+		shape.add(operation);
+		shape.add(projection != null ? projection.getColumns() : null);
+		criteria.addShape(shape, includeOrderAndLimit, plugin.getMaxInListSize());
+
+		CriteriaQuery query = CRITERIA_QUERY_BY_SHAPE.get(shape);
+		if (query == null) {
+			query = createCriteriaQuery(table, plugin, operation, projection, criteria, includeOrderAndLimit);
+			if (CRITERIA_QUERY_BY_SHAPE.size() < MAX_NR_CRITERIA_QUERIES) {
+				CriteriaQuery previousQuery = CRITERIA_QUERY_BY_SHAPE.putIfAbsent(shape, query);
+				if (previousQuery != null) {
+					query = previousQuery;
+				}
+			}
+		}
+		return query;
+	}
+
+	private static CriteriaQuery createCriteriaQuery(Table table, DBMSSpecificDAOPlugin plugin, Operation operation,
+			Projection projection, Criteria criteria, boolean includeOrderAndLimit) {
+		StringBuilder sb = new StringBuilder(200);
+		if (projection != null) {
+			sb.append("SELECT ");
+			for (int i=0; i<projection.getColumns().size(); i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(projection.getColumns().get(i).getName());
+			}
+			sb.append(" FROM ").append(table.getName());
+		} else {
+			sb.append(getSql(table, operation, null, new ColumnValuePairs()));
+		}
+		List<TableColumn> parameterColumns = new ArrayList<TableColumn>();
+		if (criteria.hasConditions()) {
+			sb.append(" WHERE ");
+			criteria.appendConditions(sb, parameterColumns, plugin.getMaxInListSize());
+		}
+		String sql = sb.toString();
+		boolean limitParameter = false;
+		if (includeOrderAndLimit) {
+			if (criteria.getOrderByClause() != null && !criteria.getOrderByClause().getColumnAndDirections().isEmpty()) {
+				sql += ' ' + createOrderByClause(criteria.getOrderByClause());
+			}
+			if (criteria.getLimit() > 0) {
+				// The limit is a parameter, so that pages of different sizes share the query.
+				sql = plugin.addLimitParameter(sql);
+				limitParameter = true;
+			}
+		}
+		return new CriteriaQuery(sql, parameterColumns, limitParameter, plugin.getMaxInListSize());
+	}
+
+	private static String createSql(Table table, Operation operation, ColumnValuePairs colValues,
+			ColumnValuePairs whereColumns) {
+		switch (operation) {
+		case FIND:
+			return createSelectQuery(table, whereColumns);
+		case EXISTS:
+			return appendWhereClause(new StringBuilder("SELECT 1 FROM ").append(table.getName()), whereColumns);
+		case COUNT:
+			return appendWhereClause(new StringBuilder("SELECT COUNT(*) FROM ").append(table.getName()), whereColumns);
+		case SUM:
+		case MIN:
+		case MAX:
+			StringBuilder query = new StringBuilder("SELECT ").append(operation.name()).append('(');
+			query.append(colValues.iterator().next().getColumn().getName()).append(") FROM ").append(table.getName());
+			return appendWhereClause(query, whereColumns);
+		case INSERT:
+			return createInsertQuery(table, colValues);
+		case UPDATE:
+			return createUpdateQuery(table, colValues, whereColumns);
+		case DELETE:
+			return appendWhereClause(new StringBuilder("DELETE FROM ").append(table.getName()), whereColumns);
+		default:
+			throw new IllegalArgumentException("Unknown operation: " + operation);
+		}
+	}
+
+    /**
+     * Creates a query that selects all columns of the table in the order of {@link Table#getColumns()}.
+     * @param table the table
+     * @param whereColumns the columns of the where clause. If empty, then the query has no where clause.
+     * @return the query
+     */
+	private static String createSelectQuery(Table table, ColumnValuePairs whereColumns) {
+        StringBuilder query = new StringBuilder(200);
+        query.append("SELECT ");
+        for (Iterator<TableColumn> iter = table.getColumns().iterator(); iter.hasNext(); ) {
+            query.append(iter.next().getName());
+            if (iter.hasNext()) {
+                query.append(", ");
+            }
+        }
+        query.append(" FROM ").append(table.getName());
+        return appendWhereClause(query, whereColumns);
+	}
+
+	private static String appendWhereClause(StringBuilder query, ColumnValuePairs whereColumns) {
+        if (!whereColumns.isEmpty()) {
+        	query.append(' ').append(createWhereClause(whereColumns));
+        }
+        return query.toString();
+	}
+
+    /**
+     * Creates a where clause like "WHERE id=?" for the specified columns.
+     * @param columnValuePairs the columns
+     * @return the where clause
+     */
+	static String createWhereClause(ColumnValuePairs columnValuePairs) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("WHERE ");
+        for (Iterator<ColumnValuePair> iter = columnValuePairs.iterator(); iter.hasNext(); ) {
+        	ColumnValuePair c = iter.next();
+            sb.append(c.getColumn().getName()).append("=?");
+            if (iter.hasNext()) {
+                sb.append(" AND ");
+            }
+        }
+        return sb.toString();
+	}
+
+    /**
+     * Creates a condition that selects rows by a number of keys, like "id IN (?, ?)",
+     * "(a, b) IN ((?, ?), (?, ?))" or "(a = ? AND b = ?) OR (a = ? AND b = ?)".
+     * The parameters are the values of the first key, followed by the values of the second key, and so on.
+     * @param keyColumns the columns of the key
+     * @param nrKeys the number of keys
+     * @param useRowValues <code>true</code> if keys consisting of multiple columns must be
+     *        compared using row value constructors; <code>false</code> if they must be compared using OR-expressions
+     * @return the condition
+     */
+	static String createInCondition(List<TableColumn> keyColumns, int nrKeys, boolean useRowValues) {
+		StringBuilder sb = new StringBuilder(20 + nrKeys * 3 * keyColumns.size());
+		if (keyColumns.size() == 1) {
+			sb.append(keyColumns.get(0).getName()).append(" IN (");
+			appendParameters(sb, nrKeys);
+			sb.append(')');
+		} else if (useRowValues) {
+			sb.append('(');
+			for (Iterator<TableColumn> iter = keyColumns.iterator(); iter.hasNext(); ) {
+				sb.append(iter.next().getName());
+				if (iter.hasNext()) {
+					sb.append(", ");
+				}
+			}
+			sb.append(") IN (");
+			for (int i=0; i<nrKeys; i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append('(');
+				appendParameters(sb, keyColumns.size());
+				sb.append(')');
+			}
+			sb.append(')');
+		} else {
+			for (int i=0; i<nrKeys; i++) {
+				if (i > 0) {
+					sb.append(" OR ");
+				}
+				sb.append('(');
+				for (Iterator<TableColumn> iter = keyColumns.iterator(); iter.hasNext(); ) {
+					sb.append(iter.next().getName()).append(" = ?");
+					if (iter.hasNext()) {
+						sb.append(" AND ");
+					}
+				}
+				sb.append(')');
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void appendParameters(StringBuilder sb, int nrParameters) {
+		for (int i=0; i<nrParameters; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append('?');
+		}
+	}
+
+    /**
+     * Creates an order-by clause like "ORDER BY name ASC, id DESC".
+     * @param orderByClause the order-by clause
+     * @return the order-by clause as SQL text
+     */
+	static String createOrderByClause(OrderByClause orderByClause) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ORDER BY ");
+        for (Iterator<TableColumnAndDirection> iter = orderByClause.getColumnAndDirections().iterator(); iter.hasNext();) {
+        	TableColumnAndDirection colDir = iter.next();
+        	sb.append(colDir.getColumn().getName()).append(' ');
+        	sb.append(colDir.isAscending() ? "ASC" : "DESC");
+        	if (iter.hasNext()) {
+        		sb.append(", ");
+        	}
+        }
+        return sb.toString();
+	}
+
+    /**
+     * Creates the condition that selects the rows that follow a given row in the order
+     * of an order-by clause, like "a >= ? AND (a > ? OR (a = ? AND b < ?))" for "ORDER BY a ASC, b DESC".
+     * The parameters are the values of the given row; their order is determined by
+     * {@link #getKeysetParameterColumns(OrderByClause)}.
+     * @param orderByClause the order-by clause
+     * @return the condition
+     */
+	static String createKeysetCondition(OrderByClause orderByClause) {
+		List<TableColumnAndDirection> colDirs = orderByClause.getColumnAndDirections();
+		StringBuilder sb = new StringBuilder();
+		if (colDirs.size() > 1) {
+			// The first term allows the database to use an index on the first column.
+			TableColumnAndDirection first = colDirs.get(0);
+			sb.append(first.getColumn().getName()).append(first.isAscending() ? " >= ?" : " <= ?");
+			sb.append(" AND (");
+		}
+		for (int i=0; i<colDirs.size(); i++) {
+			if (i > 0) {
+				sb.append(" OR (");
+			}
+			for (int j=0; j<i; j++) {
+				sb.append(colDirs.get(j).getColumn().getName()).append(" = ? AND ");
+			}
+			TableColumnAndDirection colDir = colDirs.get(i);
+			sb.append(colDir.getColumn().getName()).append(colDir.isAscending() ? " > ?" : " < ?");
+			if (i > 0) {
+				sb.append(')');
+			}
+		}
+		if (colDirs.size() > 1) {
+			sb.append(')');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the columns whose values must be filled in for the parameters of the condition
+	 * created by {@link #createKeysetCondition(OrderByClause)}.
+	 * @param orderByClause the order-by clause
+	 * @return the columns in the order of the parameters
+	 */
+	static List<TableColumn> getKeysetParameterColumns(OrderByClause orderByClause) {
+		List<TableColumnAndDirection> colDirs = orderByClause.getColumnAndDirections();
+		List<TableColumn> columns = new ArrayList<TableColumn>();
+		if (colDirs.size() > 1) {
+			columns.add(colDirs.get(0).getColumn());
+		}
+		for (int i=0; i<colDirs.size(); i++) {
+			for (int j=0; j<=i; j++) {
+				columns.add(colDirs.get(j).getColumn());
+			}
+		}
+		return columns;
+	}
+
+    /**
+     * Creates an insert statement for the specified column values. Values that are
+     * {@link Literal}s are put in the query; for all other values a parameter is used.
+     * @param table the table
+     * @param colValues the column values
+     * @return the query
+     */
+	private static String createInsertQuery(Table table, ColumnValuePairs colValues) {
+        StringBuilder query = new StringBuilder(200);
+        query.append("INSERT INTO ").append(table.getName()).append(" (");
+        for (Iterator<ColumnValuePair> iter = colValues.iterator(); iter.hasNext(); ) {
+            ColumnValuePair ColumnValuePair = iter.next();
+            query.append(ColumnValuePair.getColumn().getName());
+            if (iter.hasNext()) {
+                query.append(", ");
+            }
+        }
+        query.append(") VALUES (");
+        for (Iterator<ColumnValuePair> iter = colValues.iterator(); iter.hasNext(); ) {
+        	ColumnValuePair cvp = iter.next();
+			if (cvp.getValue() instanceof Literal) {
+				query.append(((Literal)cvp.getValue()).getValue());
+			} else {
+				query.append('?');
+			}
+            if (iter.hasNext()) {
+                query.append(", ");
+            }
+        }
+        query.append(')');
+        return query.toString();
+	}
+
+	private static String createUpdateQuery(Table table, ColumnValuePairs colValues,
+			ColumnValuePairs whereColumns) {
+        StringBuilder query = new StringBuilder(200);
+        query.append("UPDATE ").append(table.getName()).append(" SET ");
+        for (Iterator<ColumnValuePair> iter = colValues.iterator(); iter.hasNext(); ) {
+            ColumnValuePair ColumnValuePair = iter.next();
+            query.append(ColumnValuePair.getColumn().getName()).append("=?");
+            if (iter.hasNext()) {
+                query.append(", ");
+            }
+        }
+        query.append(' ').append(createWhereClause(whereColumns));
+        return query.toString();
+	}
+
+	/**
+	 * Key of the cache. Two keys are equal if they have the same table, DBMS specific plugin class
+	 * and operation and refer to the same columns in the same order. For inserts the literals are part
+	 * of the key too.
+	 */
+	private final static class Key {
+		private final Table table;
+		private final Class<?> dialect;
+		private final Operation operation;
+		private final Object[] shape;
+		private final int hashCode;
+
+		public Key(Table table, Class<?> dialect, Operation operation, ColumnValuePairs colValues,
+				ColumnValuePairs whereColumns) {
+			this.table = table;
+			this.dialect = dialect;
+			this.operation = operation;
+
+			int size = 0;
+			boolean useColValues = operation.usesColumns();
+			if (useColValues) {
+				size += 2 * colValues.size();
+			}
+			if (operation != Operation.INSERT) {
+				size += whereColumns.size() + 1;
+			}
+
+			shape = new Object[size];
+			int index = 0;
+			if (useColValues) {
+				for (ColumnValuePair cvp : colValues) {
+					shape[index++] = cvp.getColumn();
+					if (cvp.getValue() instanceof Literal) {
+						shape[index] = ((Literal) cvp.getValue()).getValue();
+					}
+					index++;
+				}
+			}
+			if (operation != Operation.INSERT) {
+				shape[index++] = operation; // separates the columns from the where columns
+				for (ColumnValuePair cvp : whereColumns) {
+					shape[index++] = cvp.getColumn();
+				}
+			}
+
+			hashCode = 31 * (31 * table.hashCode() + operation.hashCode()) + Arrays.hashCode(shape);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof Key) {
+				Key that = (Key) obj;
+				return this.hashCode == that.hashCode && this.operation == that.operation
+						&& this.table.equals(that.table) && this.dialect == that.dialect
+						&& Arrays.equals(this.shape, that.shape);
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
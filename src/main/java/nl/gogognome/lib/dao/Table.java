@@ -17,9 +17,11 @@ package nl.gogognome.lib.dao;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
@@ -33,6 +35,8 @@ public class Table {
     private final String name;
     private List<TableColumn> columns;
     private List<TableColumn> primaryKeyColumns;
+    private Map<TableColumn, Integer> columnIndexes;
+    private boolean autoIncrementColumns;
 
     public Table(String name, TableColumn[] columns, TableColumn primaryKeyColumn) {
         this(name, Arrays.asList(columns), primaryKeyColumn);
@@ -47,6 +51,8 @@ public class Table {
         this.name = name;
         this.columns = columns;
         this.primaryKeyColumns = Arrays.asList(primaryKeyColumn);
+        this.columnIndexes = createColumnIndexes(columns);
+        this.autoIncrementColumns = containsAutoIncrementColumn(columns);
     }
 
     public Table(String name, List<TableColumn> columns, List<TableColumn> primaryKeyColumns) {
@@ -54,6 +60,25 @@ public class Table {
         this.name = name;
         this.columns = Collections.unmodifiableList(columns);
         this.primaryKeyColumns = Collections.unmodifiableList(primaryKeyColumns);
+        this.columnIndexes = createColumnIndexes(columns);
+        this.autoIncrementColumns = containsAutoIncrementColumn(columns);
+    }
+
+    private static Map<TableColumn, Integer> createColumnIndexes(List<TableColumn> columns) {
+        Map<TableColumn, Integer> indexes = new HashMap<TableColumn, Integer>();
+        for (int i=columns.size()-1; i>=0; i--) {
+            indexes.put(columns.get(i), i + 1); // SQL is 1 based instead of zero-based.
+        }
+        return Collections.unmodifiableMap(indexes);
+    }
+
+    private static boolean containsAutoIncrementColumn(List<TableColumn> columns) {
+        for (TableColumn column : columns) {
+            if (column.isAutoIncrement()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public String getName() {
@@ -68,6 +93,14 @@ public class Table {
         return primaryKeyColumns;
     }
 
+    /**
+     * Checks whether the table has columns that generate their values on insert.
+     * @return <code>true</code> if the table has auto increment columns; <code>false</code> otherwise
+     */
+    public boolean hasAutoIncrementColumns() {
+        return autoIncrementColumns;
+    }
+
     @Override
 	public boolean equals(Object obj) {
         if (obj instanceof Table) {
@@ -89,7 +122,17 @@ public class Table {
      * @return the index
      */
     public int getIndex(TableColumn column) {
-        return getColumns().indexOf(column) + 1; // SQL is 1 based instead of zero-based.
+        Integer index = columnIndexes.get(column);
+        return index != null ? index.intValue() : 0;
+    }
+
+    /**
+     * Gets the indexes of all columns of the table. The index of a column is its
+     * position in the result set of a query that selects all columns in the order of {@link #getColumns()}.
+     * @return the indexes of the columns
+     */
+    Map<TableColumn, Integer> getColumnIndexes() {
+        return columnIndexes;
     }
 
     /**
@@ -0,0 +1,591 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dao;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import nl.gogognome.lib.dao.SqlTemplateCache.Operation;
+import nl.gogognome.lib.util.Factory;
+
+/**
+ * This class exports all rows of a table to a file and imports them again. The rows are streamed
+ * from the result set to the file, so the table is never loaded into memory at once.
+ *
+ * <p>Two formats are supported:
+ * <ul>
+ *   <li>CSV, with a header containing the column names. Dates are written as yyyy-MM-dd, so the file can
+ *       be imported with a {@link CsvImporter} that has a header.</li>
+ *   <li>A compact binary format. The file starts with a header containing the names and types of
+ *       the columns. Each row starts with a marker byte, followed by a bitmap of the <code>null</code> values
+ *       and the values that are not <code>null</code>. Integers take 4 bytes, longs, doubles and dates 8 bytes,
+ *       booleans 1 byte and strings are written as UTF-8 prefixed by their length.
+ *       {@link #importFromBinary(Path)} reads this format back into the table.</li>
+ * </ul>
+ *
+ * <p>The rows are exported in the order of the primary key. Instances of this class are not thread safe.
+ *
+ * @author Sander Kooijmans
+ */
+public class TableExporter extends AbstractDAO {
+
+	private final static int BUFFER_SIZE = 64 * 1024;
+
+	/** The first four bytes of a file in the binary format. */
+	private final static int MAGIC_NUMBER = 0x67676C54;
+
+	private final static byte VERSION = 1;
+
+	private final static byte ROW_MARKER = 1;
+
+	private final static byte END_MARKER = 0;
+
+	private final DBMSSpecificDAOPlugin plugin;
+
+	private int fetchSize = AbstractBusinessObjectDAO.DEFAULT_FETCH_SIZE;
+
+	private int batchSize = AbstractBusinessObjectDAO.DEFAULT_BATCH_SIZE;
+
+	private char separator = ',';
+
+	private Charset charset = StandardCharsets.UTF_8;
+
+	/**
+	 * Constructor.
+	 * @param connection the connection to the database
+	 * @param table the table to be exported or imported
+	 */
+	public TableExporter(Connection connection, Table table) {
+		super(connection, table);
+		plugin = Factory.createInstance(DBMSSpecificDAOPlugin.class, connection, table);
+	}
+
+	/**
+	 * Sets the number of rows that are fetched from the database at once while exporting.
+	 * @param fetchSize the fetch size; must be at least 1
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("The fetch size must be at least 1.");
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Sets the number of rows that are inserted in a single JDBC batch while importing.
+	 * @param batchSize the batch size; must be at least 1
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size must be at least 1.");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public void setSeparator(char separator) {
+		if (separator == '"' || separator == '\r' || separator == '\n') {
+			throw new IllegalArgumentException("Invalid separator: " + separator);
+		}
+		this.separator = separator;
+	}
+
+	/**
+	 * Sets the character set of CSV files. The default is UTF-8. Binary files always use UTF-8.
+	 * @param charset the character set
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Exports all rows of the table to a CSV file. An existing file is overwritten.
+	 * @param file the file
+	 * @return the number of exported rows
+	 * @throws SQLException if a problem occurs while reading the rows
+	 * @throws IOException if a problem occurs while writing the file
+	 */
+	public long exportToCsv(Path file) throws SQLException, IOException {
+		List<TableColumn> columns = table.getColumns();
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		long nrRows = 0;
+		CsvWriter writer = new CsvWriter(openForWriting(file), charset);
+		try {
+			for (int i=0; i<columns.size(); i++) {
+				if (i > 0) {
+					writer.append(separator);
+				}
+				writer.appendCell(columns.get(i).getName());
+			}
+			writer.append('\n');
+
+			PreparedStatement statement = prepareSelectStatement();
+			ResultSet resultSet = null;
+			try {
+				resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					for (int i=0; i<columns.size(); i++) {
+						if (i > 0) {
+							writer.append(separator);
+						}
+						Object value = getValue(resultSet, i + 1, columns.get(i));
+						if (value instanceof String) {
+							writer.appendCell((String) value);
+						} else if (value instanceof Date) {
+							writer.append(dateFormat.format((Date) value));
+						} else if (value != null) {
+							writer.append(value.toString());
+						}
+					}
+					writer.append('\n');
+					nrRows++;
+				}
+			} finally {
+				closeResultSet(resultSet);
+				closeStatement(statement);
+			}
+			writer.flush();
+		} finally {
+			writer.close();
+		}
+		logger.debug("exportToCsv(): exported {} rows of {} to {}", nrRows, table.getName(), file);
+		return nrRows;
+	}
+
+	/**
+	 * Exports all rows of the table to a file in the binary format. An existing file is overwritten.
+	 * @param file the file
+	 * @return the number of exported rows
+	 * @throws SQLException if a problem occurs while reading the rows
+	 * @throws IOException if a problem occurs while writing the file
+	 */
+	public long exportToBinary(Path file) throws SQLException, IOException {
+		List<TableColumn> columns = table.getColumns();
+		byte[] nullBitmap = new byte[(columns.size() + 7) / 8];
+		long nrRows = 0;
+		BinaryWriter writer = new BinaryWriter(openForWriting(file));
+		try {
+			writer.ensureRemaining(9);
+			writer.buffer.putInt(MAGIC_NUMBER).put(VERSION).putInt(columns.size());
+			for (TableColumn column : columns) {
+				writer.putString(column.getName());
+				writer.ensureRemaining(1);
+				writer.buffer.put((byte) column.getType());
+			}
+
+			PreparedStatement statement = prepareSelectStatement();
+			ResultSet resultSet = null;
+			try {
+				resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					writeRow(writer, resultSet, columns, nullBitmap);
+					nrRows++;
+				}
+			} finally {
+				closeResultSet(resultSet);
+				closeStatement(statement);
+			}
+			writer.ensureRemaining(1);
+			writer.buffer.put(END_MARKER);
+			writer.flush();
+		} finally {
+			writer.close();
+		}
+		logger.debug("exportToBinary(): exported {} rows of {} to {}", nrRows, table.getName(), file);
+		return nrRows;
+	}
+
+	private void writeRow(BinaryWriter writer, ResultSet resultSet, List<TableColumn> columns, byte[] nullBitmap)
+			throws SQLException, IOException {
+		// The values are read before the null bitmap can be written. Fixed size values are at most 8 bytes.
+		writer.ensureRemaining(1 + nullBitmap.length + 8 * columns.size());
+		ByteBuffer buffer = writer.buffer;
+		buffer.put(ROW_MARKER);
+		int bitmapPosition = buffer.position();
+		buffer.position(bitmapPosition + nullBitmap.length);
+		Arrays.fill(nullBitmap, (byte) 0);
+		List<String> strings = null;
+		for (int i=0; i<columns.size(); i++) {
+			int index = i + 1;
+			switch (columns.get(i).getType()) {
+			case TableColumn.INTEGER: buffer.putInt(resultSet.getInt(index)); break;
+			case TableColumn.LONG: buffer.putLong(resultSet.getLong(index)); break;
+			case TableColumn.DOUBLE: buffer.putDouble(resultSet.getDouble(index)); break;
+			case TableColumn.BOOLEAN: buffer.put(resultSet.getBoolean(index) ? (byte) 1 : (byte) 0); break;
+			case TableColumn.DATE:
+				java.sql.Date date = resultSet.getDate(index);
+				buffer.putLong(date != null ? date.getTime() : 0);
+				break;
+			case TableColumn.STRING:
+				// Strings have a variable length and are written after the fixed size values.
+				if (strings == null) {
+					strings = new ArrayList<String>();
+				}
+				strings.add(resultSet.getString(index));
+				break;
+			default:
+				throw new SQLException("The type " + columns.get(i).getType() +  " is unsupported.");
+			}
+			if (resultSet.wasNull()) {
+				nullBitmap[i / 8] |= 1 << (i % 8);
+			}
+		}
+		int endPosition = buffer.position();
+		buffer.position(bitmapPosition);
+		buffer.put(nullBitmap);
+		buffer.position(endPosition);
+
+		if (strings != null) {
+			for (String s : strings) {
+				if (s != null) {
+					writer.putString(s);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Imports the rows of a file in the binary format into the table. The columns in the file
+	 * are matched by name with the columns of the table. Values of auto increment columns are
+	 * inserted as they are, so the imported rows keep their primary keys.
+	 * The inserted rows are not committed.
+	 * @param file the file
+	 * @return the number of imported rows
+	 * @throws SQLException if a problem occurs while inserting the rows
+	 * @throws IOException if a problem occurs while reading the file or if the file is not in the binary format
+	 */
+	public long importFromBinary(Path file) throws SQLException, IOException {
+		long nrRows = 0;
+		BinaryReader reader = new BinaryReader(FileChannel.open(file, StandardOpenOption.READ));
+		try {
+			reader.ensureAvailable(9);
+			if (reader.buffer.getInt() != MAGIC_NUMBER || reader.buffer.get() != VERSION) {
+				throw new IOException("The file " + file + " is not in the binary format.");
+			}
+			List<TableColumn> columns = readColumns(reader);
+			byte[] nullBitmap = new byte[(columns.size() + 7) / 8];
+
+			ColumnValuePairs colValues = new ColumnValuePairs();
+			for (TableColumn column : columns) {
+				colValues.add(column, null);
+			}
+			PreparedStatement statement = prepareStatement(SqlTemplateCache.getSql(table, Operation.INSERT, colValues, null));
+			try {
+				int nrRowsInBatch = 0;
+				while (true) {
+					reader.ensureAvailable(1);
+					if (reader.buffer.get() == END_MARKER) {
+						break;
+					}
+					readRow(reader, statement, columns, nullBitmap);
+					statement.addBatch();
+					nrRows++;
+					nrRowsInBatch++;
+					if (nrRowsInBatch == batchSize) {
+						statement.executeBatch();
+						nrRowsInBatch = 0;
+					}
+				}
+				if (nrRowsInBatch > 0) {
+					statement.executeBatch();
+				}
+			} finally {
+				closeStatement(statement);
+			}
+		} finally {
+			reader.close();
+		}
+		logger.debug("importFromBinary(): imported {} rows from {} into {}", nrRows, file, table.getName());
+		return nrRows;
+	}
+
+	private List<TableColumn> readColumns(BinaryReader reader) throws IOException {
+		int nrColumns = reader.buffer.getInt();
+		List<TableColumn> columns = new ArrayList<TableColumn>(nrColumns);
+		for (int i=0; i<nrColumns; i++) {
+			String name = reader.getString();
+			reader.ensureAvailable(1);
+			int type = reader.buffer.get();
+			TableColumn column = null;
+			for (TableColumn c : table.getColumns()) {
+				if (c.getName().equals(name)) {
+					column = c;
+				}
+			}
+			if (column == null || column.getType() != type) {
+				throw new IOException("Table " + table.getName() + " has no column " + name + " of type " + type + '.');
+			}
+			columns.add(column);
+		}
+		return columns;
+	}
+
+	private void readRow(BinaryReader reader, PreparedStatement statement, List<TableColumn> columns,
+			byte[] nullBitmap) throws SQLException, IOException {
+		reader.ensureAvailable(nullBitmap.length);
+		reader.buffer.get(nullBitmap);
+		for (int i=0; i<columns.size(); i++) {
+			TableColumn column = columns.get(i);
+			boolean isNull = (nullBitmap[i / 8] & (1 << (i % 8))) != 0;
+			if (column.getType() == TableColumn.STRING) {
+				continue; // strings follow the fixed size values
+			}
+			Object value;
+			switch (column.getType()) {
+			case TableColumn.INTEGER: reader.ensureAvailable(4); value = reader.buffer.getInt(); break;
+			case TableColumn.LONG: reader.ensureAvailable(8); value = reader.buffer.getLong(); break;
+			case TableColumn.DOUBLE: reader.ensureAvailable(8); value = reader.buffer.getDouble(); break;
+			case TableColumn.BOOLEAN: reader.ensureAvailable(1); value = reader.buffer.get() != 0; break;
+			case TableColumn.DATE: reader.ensureAvailable(8); value = new Date(reader.buffer.getLong()); break;
+			default:
+				throw new SQLException("The type " + column.getType() +  " is unsupported.");
+			}
+			setParameter(statement, i + 1, new ColumnValuePair(column, isNull ? null : value));
+		}
+		for (int i=0; i<columns.size(); i++) {
+			TableColumn column = columns.get(i);
+			if (column.getType() == TableColumn.STRING) {
+				boolean isNull = (nullBitmap[i / 8] & (1 << (i % 8))) != 0;
+				setParameter(statement, i + 1, new ColumnValuePair(column, isNull ? null : reader.getString()));
+			}
+		}
+	}
+
+	private PreparedStatement prepareSelectStatement() throws SQLException {
+		Projection projection = new Projection(table.getColumns().toArray(new TableColumn[0]));
+		OrderByClause orderByClause = new OrderByClause();
+		for (TableColumn column : table.getPrimaryKeyColumns()) {
+			orderByClause.addAscending(column);
+		}
+		CriteriaQuery query = SqlTemplateCache.getProjectionQuery(table, plugin, projection,
+				new Criteria().orderBy(orderByClause));
+		PreparedStatement statement = plugin.prepareStreamingStatement(query.getSql(), fetchSize);
+		logger.debug("export: statement = {}", statement);
+		return statement;
+	}
+
+	private static FileChannel openForWriting(Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes CSV text to a channel. The characters are collected in a char buffer that is
+	 * encoded and written when it is full, so no strings are created per line.
+	 */
+	private class CsvWriter {
+
+		private final FileChannel channel;
+		private final CharsetEncoder encoder;
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		public CsvWriter(FileChannel channel, Charset charset) {
+			this.channel = channel;
+			this.encoder = charset.newEncoder();
+		}
+
+		public void append(char c) throws IOException {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+			chars.put(c);
+		}
+
+		public void append(String s) throws IOException {
+			for (int i=0; i<s.length(); i++) {
+				append(s.charAt(i));
+			}
+		}
+
+		/**
+		 * Appends a cell. The cell is quoted if it is empty or contains a separator,
+		 * quote or line break, so that it reads back as the same string.
+		 * @param s the contents of the cell
+		 * @throws IOException if a problem occurs
+		 */
+		public void appendCell(String s) throws IOException {
+			boolean quote = s.isEmpty();
+			for (int i=0; i<s.length() && !quote; i++) {
+				char c = s.charAt(i);
+				quote = c == separator || c == '"' || c == '\n' || c == '\r';
+			}
+			if (!quote) {
+				append(s);
+				return;
+			}
+
+			append('"');
+			for (int i=0; i<s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"') {
+					append('"');
+				}
+				append(c);
+			}
+			append('"');
+		}
+
+		private void encode(boolean endOfInput) throws IOException {
+			chars.flip();
+			while (true) {
+				CoderResult result = encoder.encode(chars, bytes, endOfInput);
+				if (result.isError()) {
+					result.throwException();
+				}
+				if (result.isUnderflow()) {
+					break;
+				}
+				writeFully(channel, bytes);
+			}
+			chars.compact();
+		}
+
+		public void flush() throws IOException {
+			encode(true);
+			encoder.flush(bytes);
+			writeFully(channel, bytes);
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/** Writes values to a channel via a direct byte buffer. */
+	private static class BinaryWriter {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		public BinaryWriter(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Makes sure that the buffer has room for a number of bytes.
+		 * @param nrBytes the number of bytes; at most the size of the buffer
+		 * @throws IOException if a problem occurs
+		 */
+		public void ensureRemaining(int nrBytes) throws IOException {
+			if (nrBytes > BUFFER_SIZE) {
+				throw new IOException("A row of " + nrBytes + " bytes does not fit in the buffer.");
+			}
+			if (buffer.remaining() < nrBytes) {
+				writeFully(channel, buffer);
+			}
+		}
+
+		public void putString(String s) throws IOException {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			ensureRemaining(4);
+			buffer.putInt(bytes.length);
+			int offset = 0;
+			while (offset < bytes.length) {
+				if (!buffer.hasRemaining()) {
+					writeFully(channel, buffer);
+				}
+				int length = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, length);
+				offset += length;
+			}
+		}
+
+		public void flush() throws IOException {
+			writeFully(channel, buffer);
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/** Reads values from a channel via a direct byte buffer. */
+	private static class BinaryReader {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		public BinaryReader(FileChannel channel) {
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		/**
+		 * Makes sure that the buffer contains a number of bytes that have not been read yet.
+		 * @param nrBytes the number of bytes; at most the size of the buffer
+		 * @throws IOException if a problem occurs or the end of the file is reached
+		 */
+		public void ensureAvailable(int nrBytes) throws IOException {
+			if (buffer.remaining() >= nrBytes) {
+				return;
+			}
+			buffer.compact();
+			while (buffer.position() < nrBytes) {
+				if (channel.read(buffer) < 0) {
+					throw new EOFException("Unexpected end of file.");
+				}
+			}
+			buffer.flip();
+		}
+
+		public String getString() throws IOException {
+			ensureAvailable(4);
+			int length = buffer.getInt();
+			if (length < 0) {
+				throw new IOException("Invalid length of a string: " + length);
+			}
+			byte[] bytes = new byte[length];
+			int offset = 0;
+			while (offset < length) {
+				ensureAvailable(1);
+				int n = Math.min(buffer.remaining(), length - offset);
+				buffer.get(bytes, offset, n);
+				offset += n;
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
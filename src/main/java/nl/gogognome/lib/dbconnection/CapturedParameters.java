@@ -0,0 +1,132 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.util.Arrays;
+
+/**
+ * This class stores the parameters of a prepared statement so that the statement can be rendered
+ * with its parameters. Primitive values are stored in a <code>long</code> array instead of being boxed,
+ * so capturing a primitive parameter does not allocate memory.
+ *
+ * @author Sander Kooijmans
+ */
+class CapturedParameters {
+
+	private final static byte UNSET = 0;
+	private final static byte OBJECT = 1;
+	private final static byte INT = 2;
+	private final static byte LONG = 3;
+	private final static byte DOUBLE = 4;
+	private final static byte FLOAT = 5;
+	private final static byte BOOLEAN = 6;
+
+	private byte[] types;
+	private long[] primitives;
+	private Object[] objects;
+
+	/**
+	 * Constructor.
+	 * @param nrParameters the expected number of parameters. More parameters can be stored,
+	 *        but then the slots have to be enlarged.
+	 */
+	CapturedParameters(int nrParameters) {
+		types = new byte[nrParameters];
+		primitives = new long[nrParameters];
+		objects = new Object[nrParameters];
+	}
+
+	/**
+	 * Counts the parameters in a query.
+	 * @param query the query
+	 * @return the number of question marks in the query
+	 */
+	static int countParameters(String query) {
+		int count = 0;
+		for (int i=0; i<query.length(); i++) {
+			if (query.charAt(i) == '?') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	void setInt(int parameterIndex, int value) {
+		setPrimitive(parameterIndex, INT, value);
+	}
+
+	void setLong(int parameterIndex, long value) {
+		setPrimitive(parameterIndex, LONG, value);
+	}
+
+	void setDouble(int parameterIndex, double value) {
+		setPrimitive(parameterIndex, DOUBLE, Double.doubleToRawLongBits(value));
+	}
+
+	void setFloat(int parameterIndex, float value) {
+		setPrimitive(parameterIndex, FLOAT, Float.floatToRawIntBits(value));
+	}
+
+	void setBoolean(int parameterIndex, boolean value) {
+		setPrimitive(parameterIndex, BOOLEAN, value ? 1 : 0);
+	}
+
+	void setObject(int parameterIndex, Object value) {
+		int index = toSlot(parameterIndex);
+		types[index] = OBJECT;
+		objects[index] = value;
+	}
+
+	private void setPrimitive(int parameterIndex, byte type, long value) {
+		int index = toSlot(parameterIndex);
+		types[index] = type;
+		primitives[index] = value;
+		objects[index] = null;
+	}
+
+	private int toSlot(int parameterIndex) {
+		int index = parameterIndex - 1; // parameter indexes start at 1 instead of 0.
+		if (index >= types.length) {
+			int length = Math.max(index + 1, 2 * types.length);
+			types = Arrays.copyOf(types, length);
+			primitives = Arrays.copyOf(primitives, length);
+			objects = Arrays.copyOf(objects, length);
+		}
+		return index;
+	}
+
+	/**
+	 * Appends the value of a parameter. Nothing is appended if the parameter has not been set.
+	 * @param sb the string builder
+	 * @param index the index of the parameter, starting at 0
+	 * @return <code>true</code> if the value was appended; <code>false</code> if the parameter has not been set
+	 */
+	boolean appendValue(StringBuilder sb, int index) {
+		if (index >= types.length) {
+			return false;
+		}
+		switch (types[index]) {
+		case OBJECT: sb.append(objects[index]); break;
+		case INT: sb.append((int) primitives[index]); break;
+		case LONG: sb.append(primitives[index]); break;
+		case DOUBLE: sb.append(Double.longBitsToDouble(primitives[index])); break;
+		case FLOAT: sb.append(Float.intBitsToFloat((int) primitives[index])); break;
+		case BOOLEAN: sb.append(primitives[index] != 0); break;
+		default: return false;
+		}
+		return true;
+	}
+}
@@ -15,33 +15,64 @@
 */
 package nl.gogognome.lib.dbconnection;
 
+import java.io.PrintWriter;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
 
 import nl.gogognome.lib.util.ComparatorUtil;
 
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.apache.commons.dbcp.DriverManagerConnectionFactory;
 import org.apache.commons.dbcp.PoolableConnectionFactory;
-import org.apache.commons.dbcp.PoolingDriver;
+import org.apache.commons.dbcp.PoolingDataSource;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
+import org.apache.commons.pool.ObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 
 /**
- * This class creates connections to the database.
+ * This class creates connections to the database. Connections are borrowed directly from
+ * the underlying object pool; use {@link #getDataSource()} to hand the pool to code that
+ * expects a {@link DataSource}.
  *
  * @author Sander Kooijmans
  */
 public class ConnectionPool {
 
-	private final static String POOL_NAME = "service";
+	/** The default maximum number of prepared statements that are cached per connection. */
+	public final static int DEFAULT_MAX_CACHED_PREPARED_STATEMENTS = 100;
+
+	/** The data source of the current pool; <code>null</code> if the pool has not been initialized. */
+	private volatile PoolingDataSource poolingDataSource;
+
+	private final DataSource dataSource = new PoolDataSource();
+
+	private GenericObjectPool connectionPool;
 
-	private PoolingDriver driver;
+	private ConnectionPoolConfig config = new ConnectionPoolConfig();
+
+	private final ConnectionPoolMetrics metrics = new ConnectionPoolMetrics(this);
 
 	private String url;
 	private String user;
 	private String password;
 
+	private int maxCachedPreparedStatements = DEFAULT_MAX_CACHED_PREPARED_STATEMENTS;
+
 	public ConnectionPool() {
 	}
 
@@ -52,12 +83,41 @@ public class ConnectionPool {
 	 * @throws SQLException
 	 */
 	public Connection getConnection() throws SQLException {
-		ensureDriverInitialized();
-		Connection connection = DriverManager.getConnection("jdbc:apache:commons:dbcp:" + POOL_NAME);
+		PoolingDataSource currentDataSource = poolingDataSource;
+		if (currentDataSource == null) {
+			currentDataSource = ensurePoolInitialized();
+		}
+		long startTime = metrics.borrowStarted();
+		Connection connection;
+		try {
+			connection = currentDataSource.getConnection();
+		} catch (SQLException | RuntimeException e) {
+			metrics.borrowEnded(startTime, e);
+			throw e;
+		}
+		metrics.borrowEnded(startTime, null);
 		initConnection(connection);
 		return connection;
 	}
 
+	/**
+	 * Gets a data source that borrows connections from this pool. The connections are initialized
+	 * like the connections of {@link #getConnection()}. The data source remains valid when the pool
+	 * is reconfigured.
+	 * @return the data source
+	 */
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	/**
+	 * Gets the metrics of this pool. The metrics are kept when the pool is reconfigured.
+	 * @return the metrics
+	 */
+	public ConnectionPoolMetrics getMetrics() {
+		return metrics;
+	}
+
 	private void initConnection(Connection connection) throws SQLException {
 		connection.setAutoCommit(false);
 		connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
@@ -74,24 +134,104 @@ public class ConnectionPool {
 		}
 	}
 
-	private synchronized void ensureDriverInitialized() throws SQLException {
-		if (driver == null) {
-			initPoolingDriver();
+	private synchronized PoolingDataSource ensurePoolInitialized() throws SQLException {
+		if (poolingDataSource == null) {
+			initPool();
 		}
+		return poolingDataSource;
 	}
 
-	private void initPoolingDriver() throws SQLException {
+	private void initPool() throws SQLException {
 		registerHsqlDriver();
 
 		if (url == null) {
 			throw new SQLException("Connection parameters have not been set");
 		}
-		GenericObjectPool connectionPool = new GenericObjectPool(null);
+		connectionPool = createConnectionPool();
 		ConnectionFactory connectionFactory = new DriverManagerConnectionFactory(url, user, password);
-		PoolableConnectionFactory poolableConnectionFactory =
-			new PoolableConnectionFactory(connectionFactory, connectionPool, null, null, false, false);
-		driver = new PoolingDriver();
-		driver.registerPool(POOL_NAME, connectionPool);
+		new InstrumentedConnectionFactory(connectionFactory, connectionPool, createStatementPoolFactory(),
+				config.getValidationQuery(), config.getMaxLifetime(), metrics);
+		poolingDataSource = new PoolingDataSource(connectionPool);
+	}
+
+	private GenericObjectPool createConnectionPool() {
+		GenericObjectPool pool = new GenericObjectPool(null);
+		pool.setMaxActive(config.getMaxActive());
+		pool.setMaxIdle(config.getMaxIdle());
+		pool.setMinIdle(config.getMinIdle());
+		pool.setMaxWait(config.getMaxWait());
+		pool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+		pool.setTestOnBorrow(config.isTestOnBorrow());
+		pool.setTestWhileIdle(config.isTestWhileIdle());
+		pool.setTimeBetweenEvictionRunsMillis(config.getTimeBetweenEvictionRuns());
+		pool.setMinEvictableIdleTimeMillis(config.getMinEvictableIdleTime());
+		return pool;
+	}
+
+	/**
+	 * Opens the number of connections of {@link ConnectionPoolConfig#getNrPrewarmedConnections()} in parallel
+	 * and adds them to the pool as idle connections. Call this method at startup, so that the first requests
+	 * do not have to wait for connections to be opened.
+	 * @throws SQLException if a connection could not be opened
+	 */
+	public void prewarm() throws SQLException {
+		ensurePoolInitialized();
+		int nrConnections = config.getNrPrewarmedConnections();
+		if (nrConnections <= 0) {
+			return;
+		}
+
+		final GenericObjectPool pool = connectionPool;
+		ExecutorService executor = Executors.newFixedThreadPool(nrConnections);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(nrConnections);
+			for (int i=0; i<nrConnections; i++) {
+				futures.add(executor.submit(() -> {
+					pool.addObject();
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw new SQLException("Failed to prewarm the connection pool", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while prewarming the connection pool", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gets the number of connections that are borrowed from the pool.
+	 * @return the number of connections
+	 */
+	public synchronized int getNrActiveConnections() {
+		return connectionPool != null ? connectionPool.getNumActive() : 0;
+	}
+
+	/**
+	 * Gets the number of idle connections in the pool.
+	 * @return the number of connections
+	 */
+	public synchronized int getNrIdleConnections() {
+		return connectionPool != null ? connectionPool.getNumIdle() : 0;
+	}
+
+	/**
+	 * Creates the factory for the pools of prepared statements. Each connection gets its own
+	 * pool. A pool keeps at most one idle statement per query. If the pool is full, the statements
+	 * that have been idle longest are closed to make room for new statements.
+	 * @return the factory or <code>null</code> if prepared statements must not be cached
+	 */
+	private KeyedObjectPoolFactory createStatementPoolFactory() {
+		if (maxCachedPreparedStatements == 0) {
+			return null;
+		}
+		return new GenericKeyedObjectPoolFactory(null, -1, GenericKeyedObjectPool.WHEN_EXHAUSTED_FAIL,
+				0, 1, maxCachedPreparedStatements);
 	}
 
 	private void registerHsqlDriver() throws SQLException {
@@ -105,7 +245,7 @@ public class ConnectionPool {
 	public void setJdbcConnectionParameters(String url, String user, String password) throws SQLException {
 		if (!ComparatorUtil.equals(url, this.url) || !ComparatorUtil.equals(user, this.user)
 				|| !ComparatorUtil.equals(password, this.password)) {
-			ensurePoolingDriverDeinitialized();
+			ensurePoolDeinitialized();
 
 			this.url = url;
 			this.user = user;
@@ -113,15 +253,187 @@ public class ConnectionPool {
 		}
 	}
 
-	private synchronized void ensurePoolingDriverDeinitialized() throws SQLException {
-		if (driver != null) {
-			deinitPoolingDriver();
+	public ConnectionPoolConfig getConfig() {
+		return new ConnectionPoolConfig(config);
+	}
+
+	/**
+	 * Sets the configuration of the pool. If the pool has been initialized, then it is closed
+	 * and a new pool with the new configuration is created when the next connection is requested.
+	 * @param config the configuration
+	 * @throws SQLException if a problem occurs while closing the current pool
+	 */
+	public void setConfig(ConnectionPoolConfig config) throws SQLException {
+		ensurePoolDeinitialized();
+		this.config = new ConnectionPoolConfig(config);
+	}
+
+	public int getMaxCachedPreparedStatements() {
+		return maxCachedPreparedStatements;
+	}
+
+	/**
+	 * Sets the maximum number of prepared statements that are cached per connection.
+	 * Closing a cached prepared statement returns it to the cache of its connection.
+	 * Preparing the same query again on that connection reuses the statement instead of
+	 * having the database parse the query again.
+	 * @param maxCachedPreparedStatements the maximum number of prepared statements;
+	 *        0 disables caching of prepared statements
+	 * @throws SQLException if a problem occurs while closing the current pool
+	 */
+	public void setMaxCachedPreparedStatements(int maxCachedPreparedStatements) throws SQLException {
+		if (maxCachedPreparedStatements < 0) {
+			throw new IllegalArgumentException("The maximum number of cached prepared statements must not be negative");
+		}
+		if (maxCachedPreparedStatements != this.maxCachedPreparedStatements) {
+			ensurePoolDeinitialized();
+			this.maxCachedPreparedStatements = maxCachedPreparedStatements;
+		}
+	}
+
+	private synchronized void ensurePoolDeinitialized() throws SQLException {
+		if (poolingDataSource != null) {
+			deinitPool();
+		}
+	}
+
+	private void deinitPool() throws SQLException {
+		poolingDataSource = null;
+		try {
+			connectionPool.close();
+		} catch (Exception e) {
+			throw new SQLException("Failed to close the connection pool", e);
+		} finally {
+			connectionPool = null;
+		}
+	}
+
+	/**
+	 * This data source delegates to {@link ConnectionPool#getConnection()}, so that it survives
+	 * reconfiguration of the pool.
+	 */
+	private class PoolDataSource implements DataSource {
+
+		private PrintWriter logWriter;
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			return ConnectionPool.this.getConnection();
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			throw new SQLFeatureNotSupportedException("The user and password are set on the connection pool");
+		}
+
+		@Override
+		public synchronized PrintWriter getLogWriter() {
+			return logWriter;
+		}
+
+		@Override
+		public synchronized void setLogWriter(PrintWriter logWriter) {
+			this.logWriter = logWriter;
+		}
+
+		@Override
+		public int getLoginTimeout() {
+			return 0;
+		}
+
+		@Override
+		public void setLoginTimeout(int seconds) throws SQLException {
+			throw new SQLFeatureNotSupportedException("Use ConnectionPoolConfig.setMaxWait() to limit the wait for a connection");
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
 		}
 
+		@Override
+		public <T> T unwrap(Class<T> iface) throws SQLException {
+			if (iface.isInstance(ConnectionPool.this)) {
+				return iface.cast(ConnectionPool.this);
+			}
+			throw new SQLException("Not a wrapper for " + iface.getName());
+		}
+
+		@Override
+		public boolean isWrapperFor(Class<?> iface) {
+			return iface.isInstance(ConnectionPool.this);
+		}
 	}
 
-	private void deinitPoolingDriver() throws SQLException {
-		driver.closePool(POOL_NAME);
-		driver = null;
+	/**
+	 * This factory creates connections, closes connections that have exceeded their maximum lifetime
+	 * and reports the life cycle of the connections to the metrics of the pool.
+	 * Expired connections fail activation and validation, so that the pool closes them instead of lending them.
+	 */
+	private static class InstrumentedConnectionFactory extends PoolableConnectionFactory {
+
+		private final long maxLifetime;
+
+		private final ConnectionPoolMetrics metrics;
+
+		private final Map<Object, Long> creationTimes =
+				Collections.synchronizedMap(new IdentityHashMap<Object, Long>());
+
+		public InstrumentedConnectionFactory(ConnectionFactory connectionFactory, ObjectPool pool,
+				KeyedObjectPoolFactory statementPoolFactory, String validationQuery, long maxLifetime,
+				ConnectionPoolMetrics metrics) {
+			super(connectionFactory, pool, statementPoolFactory, validationQuery, false, false);
+			this.maxLifetime = maxLifetime;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public Object makeObject() throws Exception {
+			Object connection = super.makeObject();
+			metrics.connectionCreated();
+			if (maxLifetime > 0) {
+				creationTimes.put(connection, System.currentTimeMillis());
+			}
+			return connection;
+		}
+
+		@Override
+		public void activateObject(Object connection) throws Exception {
+			if (isExpired(connection)) {
+				throw new SQLException("The connection has exceeded its maximum lifetime");
+			}
+			super.activateObject(connection);
+			metrics.connectionLent(connection);
+		}
+
+		@Override
+		public void passivateObject(Object connection) throws Exception {
+			metrics.connectionReturned(connection);
+			super.passivateObject(connection);
+		}
+
+		@Override
+		public boolean validateObject(Object connection) {
+			boolean valid = !isExpired(connection) && super.validateObject(connection);
+			if (!valid) {
+				metrics.validationFailed();
+			}
+			return valid;
+		}
+
+		@Override
+		public void destroyObject(Object connection) throws Exception {
+			creationTimes.remove(connection);
+			metrics.connectionDestroyed(connection);
+			super.destroyObject(connection);
+		}
+
+		private boolean isExpired(Object connection) {
+			if (maxLifetime <= 0) {
+				return false;
+			}
+			Long creationTime = creationTimes.get(connection);
+			return creationTime != null && System.currentTimeMillis() - creationTime > maxLifetime;
+		}
 	}
 }
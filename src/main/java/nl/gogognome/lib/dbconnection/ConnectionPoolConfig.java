@@ -0,0 +1,214 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+/**
+ * This class contains the settings of a {@link ConnectionPool}. Times are in milliseconds.
+ * Changes only take effect when the configuration is passed to {@link ConnectionPool#setConfig(ConnectionPoolConfig)}.
+ *
+ * @author Sander Kooijmans
+ */
+public class ConnectionPoolConfig {
+
+	private int maxActive = 8;
+
+	private int maxIdle = 8;
+
+	private int minIdle = 0;
+
+	private long maxWait = 30000;
+
+	private String validationQuery;
+
+	private boolean testOnBorrow;
+
+	private boolean testWhileIdle;
+
+	private long timeBetweenEvictionRuns = -1;
+
+	private long minEvictableIdleTime = 30 * 60 * 1000;
+
+	private long maxLifetime = 0;
+
+	private int nrPrewarmedConnections = 0;
+
+	public ConnectionPoolConfig() {
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param that the configuration to be copied
+	 */
+	public ConnectionPoolConfig(ConnectionPoolConfig that) {
+		this.maxActive = that.maxActive;
+		this.maxIdle = that.maxIdle;
+		this.minIdle = that.minIdle;
+		this.maxWait = that.maxWait;
+		this.validationQuery = that.validationQuery;
+		this.testOnBorrow = that.testOnBorrow;
+		this.testWhileIdle = that.testWhileIdle;
+		this.timeBetweenEvictionRuns = that.timeBetweenEvictionRuns;
+		this.minEvictableIdleTime = that.minEvictableIdleTime;
+		this.maxLifetime = that.maxLifetime;
+		this.nrPrewarmedConnections = that.nrPrewarmedConnections;
+	}
+
+	public int getMaxActive() {
+		return maxActive;
+	}
+
+	/**
+	 * Sets the maximum number of connections that are borrowed at the same time.
+	 * @param maxActive the maximum number of connections; a negative value for no limit
+	 */
+	public void setMaxActive(int maxActive) {
+		this.maxActive = maxActive;
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * Sets the maximum number of idle connections. Connections that are returned to a pool
+	 * that has this number of idle connections are closed.
+	 * @param maxIdle the maximum number of idle connections; a negative value for no limit
+	 */
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	/**
+	 * Sets the minimum number of idle connections. The evictor creates connections
+	 * if there are fewer idle connections, so it only has effect if the eviction interval is positive.
+	 * @param minIdle the minimum number of idle connections
+	 */
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Sets the maximum time to wait for a connection if the maximum number of connections is borrowed.
+	 * @param maxWait the maximum time; a negative value to wait indefinitely
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public String getValidationQuery() {
+		return validationQuery;
+	}
+
+	/**
+	 * Sets the query that validates connections. The query must return at least one row.
+	 * @param validationQuery the query; <code>null</code> to validate connections by checking
+	 *        that they are not closed
+	 */
+	public void setValidationQuery(String validationQuery) {
+		this.validationQuery = validationQuery;
+	}
+
+	public boolean isTestOnBorrow() {
+		return testOnBorrow;
+	}
+
+	/**
+	 * Sets whether connections are validated before they are borrowed. Invalid connections are
+	 * closed and another connection is borrowed.
+	 * @param testOnBorrow <code>true</code> to validate connections before they are borrowed
+	 */
+	public void setTestOnBorrow(boolean testOnBorrow) {
+		this.testOnBorrow = testOnBorrow;
+	}
+
+	public boolean isTestWhileIdle() {
+		return testWhileIdle;
+	}
+
+	/**
+	 * Sets whether the evictor validates idle connections. Invalid connections are closed.
+	 * @param testWhileIdle <code>true</code> to validate idle connections
+	 */
+	public void setTestWhileIdle(boolean testWhileIdle) {
+		this.testWhileIdle = testWhileIdle;
+	}
+
+	public long getTimeBetweenEvictionRuns() {
+		return timeBetweenEvictionRuns;
+	}
+
+	/**
+	 * Sets the interval at which the evictor checks the idle connections.
+	 * @param timeBetweenEvictionRuns the interval; a value that is not positive disables the evictor
+	 */
+	public void setTimeBetweenEvictionRuns(long timeBetweenEvictionRuns) {
+		this.timeBetweenEvictionRuns = timeBetweenEvictionRuns;
+	}
+
+	public long getMinEvictableIdleTime() {
+		return minEvictableIdleTime;
+	}
+
+	/**
+	 * Sets the time a connection must be idle before the evictor closes it.
+	 * @param minEvictableIdleTime the time; a value that is not positive to keep idle connections open
+	 */
+	public void setMinEvictableIdleTime(long minEvictableIdleTime) {
+		this.minEvictableIdleTime = minEvictableIdleTime;
+	}
+
+	public long getMaxLifetime() {
+		return maxLifetime;
+	}
+
+	/**
+	 * Sets the maximum lifetime of a connection. Older connections are closed instead of being borrowed
+	 * and, if idle connections are tested, by the evictor.
+	 * @param maxLifetime the maximum lifetime; 0 for no limit
+	 */
+	public void setMaxLifetime(long maxLifetime) {
+		this.maxLifetime = maxLifetime;
+	}
+
+	public int getNrPrewarmedConnections() {
+		return nrPrewarmedConnections;
+	}
+
+	/**
+	 * Sets the number of connections that {@link ConnectionPool#prewarm()} opens.
+	 * @param nrPrewarmedConnections the number of connections; at most the maximum number of idle connections
+	 */
+	public void setNrPrewarmedConnections(int nrPrewarmedConnections) {
+		this.nrPrewarmedConnections = nrPrewarmedConnections;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPoolConfig[maxActive=" + maxActive + ", maxIdle=" + maxIdle + ", minIdle=" + minIdle
+			+ ", maxWait=" + maxWait + ", validationQuery=" + validationQuery + ", testOnBorrow=" + testOnBorrow
+			+ ", testWhileIdle=" + testWhileIdle + ", timeBetweenEvictionRuns=" + timeBetweenEvictionRuns
+			+ ", minEvictableIdleTime=" + minEvictableIdleTime + ", maxLifetime=" + maxLifetime
+			+ ", nrPrewarmedConnections=" + nrPrewarmedConnections + ']';
+	}
+}
@@ -0,0 +1,288 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class collects metrics of a {@link ConnectionPool}:
+ * <ul>
+ *   <li>gauges for the number of active and idle connections and the number of threads that are borrowing a connection</li>
+ *   <li>histograms of the time spent waiting for a connection and of the time a connection is held</li>
+ *   <li>counters for borrows, borrows that timed out because the pool was exhausted, borrows that failed
+ *       for other reasons, creations, destructions and validation failures</li>
+ *   <li>the most recent connections that were held longer than the outlier threshold, with their borrower</li>
+ * </ul>
+ *
+ * <p>The metrics can be read with {@link #getSnapshot()} or via JMX after calling {@link #registerMBean(String)}.
+ * The counters and histograms survive a reconfiguration of the pool.
+ *
+ * <p>This class is thread safe.
+ *
+ * @author Sander Kooijmans
+ */
+public class ConnectionPoolMetrics implements ConnectionPoolMetricsMXBean {
+
+	/** The maximum number of hold time outliers that are kept. */
+	public final static int MAX_NR_OUTLIERS = 20;
+
+	private final ConnectionPool connectionPool;
+
+	private final AtomicInteger pendingBorrowers = new AtomicInteger();
+	private final LongAdder borrows = new LongAdder();
+	private final LongAdder borrowTimeouts = new LongAdder();
+	private final LongAdder borrowFailures = new LongAdder();
+	private final LongAdder creations = new LongAdder();
+	private final LongAdder destructions = new LongAdder();
+	private final LongAdder validationFailures = new LongAdder();
+	private final LatencyHistogram borrowWait = new LatencyHistogram();
+	private final LatencyHistogram holdTime = new LatencyHistogram();
+
+	private final Map<Object, Borrow> borrowsByConnection = Collections.synchronizedMap(new IdentityHashMap<Object, Borrow>());
+
+	/** The most recent outliers, oldest first. Guarded by itself. */
+	private final Deque<HoldTimeOutlier> outliers = new ArrayDeque<HoldTimeOutlier>(MAX_NR_OUTLIERS);
+
+	private volatile long outlierThreshold = TimeUnit.SECONDS.toNanos(5);
+
+	private volatile boolean borrowerStackTraces;
+
+	/**
+	 * Indicates whether the current thread is borrowing a connection. The evictor also activates
+	 * and passivates connections when it validates them; those are not borrows.
+	 */
+	private final ThreadLocal<Boolean> borrowing = new ThreadLocal<Boolean>();
+
+	ConnectionPoolMetrics(ConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	/**
+	 * Registers this instance with the platform MBean server under the name
+	 * <code>nl.gogognome.lib:type=ConnectionPool,name=&lt;name&gt;</code>. If an MBean with that name
+	 * has already been registered, then this method has no effect.
+	 * @param name the name of the pool
+	 * @throws JMException if the MBean could not be registered
+	 */
+	public void registerMBean(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("nl.gogognome.lib:type=ConnectionPool,name=" + ObjectName.quote(name));
+		if (!server.isRegistered(objectName)) {
+			server.registerMBean(this, objectName);
+		}
+	}
+
+	/**
+	 * Sets the hold time from which connections are recorded as outliers. The default is 5 seconds.
+	 * @param threshold the threshold
+	 * @param unit the unit of the threshold
+	 */
+	public void setOutlierThreshold(long threshold, TimeUnit unit) {
+		outlierThreshold = unit.toNanos(threshold);
+	}
+
+	/**
+	 * Sets whether the stack trace of each borrow is recorded, so that outliers show where the
+	 * connection was borrowed. Recording stack traces makes borrowing a connection considerably slower.
+	 * By default only the name of the borrowing thread is recorded.
+	 * @param borrowerStackTraces <code>true</code> to record stack traces
+	 */
+	public void setBorrowerStackTraces(boolean borrowerStackTraces) {
+		this.borrowerStackTraces = borrowerStackTraces;
+	}
+
+	@Override
+	public int getActiveConnections() {
+		return connectionPool.getNrActiveConnections();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		return connectionPool.getNrIdleConnections();
+	}
+
+	@Override
+	public int getPendingBorrowers() {
+		return pendingBorrowers.get();
+	}
+
+	@Override
+	public ConnectionPoolSnapshot getSnapshot() {
+		long[] borrowWaitPercentiles = borrowWait.getPercentiles(0.5, 0.99);
+		long[] holdTimePercentiles = holdTime.getPercentiles(0.5, 0.99);
+		ArrayList<HoldTimeOutlier> outliersCopy;
+		synchronized (outliers) {
+			outliersCopy = new ArrayList<HoldTimeOutlier>(outliers);
+		}
+		return new ConnectionPoolSnapshot(getActiveConnections(), getIdleConnections(), getPendingBorrowers(),
+				borrows.sum(), borrowTimeouts.sum(), borrowFailures.sum(), creations.sum(), destructions.sum(), validationFailures.sum(),
+				borrowWaitPercentiles[0], borrowWaitPercentiles[1], borrowWait.getMax(),
+				holdTimePercentiles[0], holdTimePercentiles[1], holdTime.getMax(),
+				Collections.unmodifiableList(outliersCopy));
+	}
+
+	@Override
+	public void reset() {
+		borrows.reset();
+		borrowTimeouts.reset();
+		borrowFailures.reset();
+		creations.reset();
+		destructions.reset();
+		validationFailures.reset();
+		borrowWait.reset();
+		holdTime.reset();
+		synchronized (outliers) {
+			outliers.clear();
+		}
+	}
+
+	/**
+	 * Records the start of a request for a connection.
+	 * @return the start time in nanoseconds
+	 */
+	long borrowStarted() {
+		pendingBorrowers.incrementAndGet();
+		borrowing.set(Boolean.TRUE);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the end of a request for a connection.
+	 * @param startTime the start time returned by {@link #borrowStarted()}
+	 * @param failure the exception that prevented obtaining a connection; <code>null</code> if a connection
+	 *        was obtained
+	 */
+	void borrowEnded(long startTime, Exception failure) {
+		borrowing.remove();
+		pendingBorrowers.decrementAndGet();
+		borrowWait.record(System.nanoTime() - startTime);
+		if (failure == null) {
+			borrows.increment();
+		} else if (isPoolExhausted(failure)) {
+			borrowTimeouts.increment();
+		} else {
+			borrowFailures.increment();
+		}
+	}
+
+	/**
+	 * Checks whether a borrow failed because the pool was exhausted. The object pool signals this
+	 * with a {@link NoSuchElementException}, which the data source wraps in an {@link java.sql.SQLException}.
+	 * The object pool also throws a {@link NoSuchElementException} if a new connection fails validation;
+	 * only the messages tell these cases apart.
+	 * @param failure the exception
+	 * @return <code>true</code> if no connection became available in time
+	 */
+	static boolean isPoolExhausted(Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof NoSuchElementException) {
+				String message = t.getMessage();
+				return message != null
+						&& (message.startsWith("Timeout waiting for idle object") || message.startsWith("Pool exhausted"));
+			}
+		}
+		return false;
+	}
+
+	void connectionCreated() {
+		creations.increment();
+	}
+
+	void connectionDestroyed(Object connection) {
+		destructions.increment();
+		borrowsByConnection.remove(connection);
+	}
+
+	void validationFailed() {
+		validationFailures.increment();
+	}
+
+	/**
+	 * Records that a pooled connection is lent to the current thread. Activations outside
+	 * {@link #borrowStarted()} and {@link #borrowEnded(long, boolean)} are ignored.
+	 * @param connection the pooled connection
+	 */
+	void connectionLent(Object connection) {
+		if (borrowing.get() == null) {
+			return;
+		}
+		borrowsByConnection.put(connection, new Borrow(System.nanoTime(), System.currentTimeMillis(), getBorrower()));
+	}
+
+	/**
+	 * Records that a pooled connection is returned to the pool.
+	 * @param connection the pooled connection
+	 */
+	void connectionReturned(Object connection) {
+		Borrow borrow = borrowsByConnection.remove(connection);
+		if (borrow == null) {
+			return;
+		}
+		long time = System.nanoTime() - borrow.startTime;
+		holdTime.record(time);
+		if (time >= outlierThreshold) {
+			synchronized (outliers) {
+				if (outliers.size() == MAX_NR_OUTLIERS) {
+					outliers.removeFirst();
+				}
+				outliers.addLast(new HoldTimeOutlier(borrow.borrower, borrow.borrowTime, time));
+			}
+		}
+	}
+
+	private String getBorrower() {
+		String threadName = Thread.currentThread().getName();
+		if (!borrowerStackTraces) {
+			return threadName;
+		}
+
+		StringBuilder sb = new StringBuilder(threadName);
+		for (StackTraceElement element : new Throwable().getStackTrace()) {
+			String className = element.getClassName();
+			if (!className.startsWith("java.") && !className.startsWith("org.apache.commons.")
+					&& !className.startsWith(ConnectionPool.class.getPackage().getName() + '.')) {
+				sb.append("\n\tat ").append(element);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static class Borrow {
+		private final long startTime;
+		private final long borrowTime;
+		private final String borrower;
+
+		public Borrow(long startTime, long borrowTime, String borrower) {
+			this.startTime = startTime;
+			this.borrowTime = borrowTime;
+			this.borrower = borrower;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+/**
+ * Management interface of {@link ConnectionPoolMetrics}.
+ *
+ * @author Sander Kooijmans
+ */
+public interface ConnectionPoolMetricsMXBean {
+
+	int getActiveConnections();
+
+	int getIdleConnections();
+
+	/**
+	 * Gets the number of threads that are borrowing a connection. This includes threads that wait
+	 * for an idle connection and threads that create or validate a connection for their borrow.
+	 * @return the number of threads
+	 */
+	int getPendingBorrowers();
+
+	/**
+	 * Gets a snapshot of all metrics.
+	 * @return the snapshot
+	 */
+	ConnectionPoolSnapshot getSnapshot();
+
+	/**
+	 * Resets the counters, histograms and outliers. The gauges are not affected.
+	 */
+	void reset();
+}
@@ -0,0 +1,165 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+
+/**
+ * This class contains a snapshot of the metrics of a {@link ConnectionPool}. Times are in nanoseconds.
+ * The percentiles are estimates that are at most 25% too high.
+ *
+ * @author Sander Kooijmans
+ */
+public class ConnectionPoolSnapshot {
+
+	private final int activeConnections;
+	private final int idleConnections;
+	private final int pendingBorrowers;
+	private final long borrowCount;
+	private final long borrowTimeoutCount;
+	private final long borrowFailureCount;
+	private final long creationCount;
+	private final long destructionCount;
+	private final long validationFailureCount;
+	private final long borrowWaitP50;
+	private final long borrowWaitP99;
+	private final long borrowWaitMax;
+	private final long holdTimeP50;
+	private final long holdTimeP99;
+	private final long holdTimeMax;
+	private final List<HoldTimeOutlier> holdTimeOutliers;
+
+	@ConstructorProperties({ "activeConnections", "idleConnections", "pendingBorrowers", "borrowCount",
+		"borrowTimeoutCount", "borrowFailureCount", "creationCount", "destructionCount", "validationFailureCount",
+		"borrowWaitP50", "borrowWaitP99", "borrowWaitMax", "holdTimeP50", "holdTimeP99", "holdTimeMax",
+		"holdTimeOutliers" })
+	public ConnectionPoolSnapshot(int activeConnections, int idleConnections, int pendingBorrowers,
+			long borrowCount, long borrowTimeoutCount, long borrowFailureCount, long creationCount,
+			long destructionCount, long validationFailureCount, long borrowWaitP50, long borrowWaitP99, long borrowWaitMax,
+			long holdTimeP50, long holdTimeP99, long holdTimeMax, List<HoldTimeOutlier> holdTimeOutliers) {
+		this.activeConnections = activeConnections;
+		this.idleConnections = idleConnections;
+		this.pendingBorrowers = pendingBorrowers;
+		this.borrowCount = borrowCount;
+		this.borrowTimeoutCount = borrowTimeoutCount;
+		this.borrowFailureCount = borrowFailureCount;
+		this.creationCount = creationCount;
+		this.destructionCount = destructionCount;
+		this.validationFailureCount = validationFailureCount;
+		this.borrowWaitP50 = borrowWaitP50;
+		this.borrowWaitP99 = borrowWaitP99;
+		this.borrowWaitMax = borrowWaitMax;
+		this.holdTimeP50 = holdTimeP50;
+		this.holdTimeP99 = holdTimeP99;
+		this.holdTimeMax = holdTimeMax;
+		this.holdTimeOutliers = holdTimeOutliers;
+	}
+
+	public int getActiveConnections() {
+		return activeConnections;
+	}
+
+	public int getIdleConnections() {
+		return idleConnections;
+	}
+
+	/**
+	 * Gets the number of threads that are borrowing a connection. This includes threads that wait
+	 * for an idle connection and threads that create or validate a connection for their borrow.
+	 * @return the number of threads
+	 */
+	public int getPendingBorrowers() {
+		return pendingBorrowers;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount;
+	}
+
+	/**
+	 * Gets the number of requests for a connection that failed because the pool was exhausted:
+	 * no connection became available within the maximum wait time.
+	 * @return the number of timed out requests
+	 */
+	public long getBorrowTimeoutCount() {
+		return borrowTimeoutCount;
+	}
+
+	/**
+	 * Gets the number of requests for a connection that failed for another reason than a timeout,
+	 * for example because the database could not be reached or a new connection failed validation.
+	 * @return the number of failed requests
+	 */
+	public long getBorrowFailureCount() {
+		return borrowFailureCount;
+	}
+
+	public long getCreationCount() {
+		return creationCount;
+	}
+
+	public long getDestructionCount() {
+		return destructionCount;
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailureCount;
+	}
+
+	public long getBorrowWaitP50() {
+		return borrowWaitP50;
+	}
+
+	public long getBorrowWaitP99() {
+		return borrowWaitP99;
+	}
+
+	public long getBorrowWaitMax() {
+		return borrowWaitMax;
+	}
+
+	public long getHoldTimeP50() {
+		return holdTimeP50;
+	}
+
+	public long getHoldTimeP99() {
+		return holdTimeP99;
+	}
+
+	public long getHoldTimeMax() {
+		return holdTimeMax;
+	}
+
+	/**
+	 * Gets the most recent connections that were held longer than the outlier threshold.
+	 * @return the outliers, oldest first
+	 */
+	public List<HoldTimeOutlier> getHoldTimeOutliers() {
+		return holdTimeOutliers;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPoolSnapshot[active=" + activeConnections + ", idle=" + idleConnections
+			+ ", pending=" + pendingBorrowers + ", borrows=" + borrowCount + ", timeouts=" + borrowTimeoutCount
+			+ ", failures=" + borrowFailureCount
+			+ ", created=" + creationCount + ", destroyed=" + destructionCount
+			+ ", validationFailures=" + validationFailureCount
+			+ ", borrowWaitP99Us=" + borrowWaitP99 / 1000 + ", holdTimeP99Us=" + holdTimeP99 / 1000
+			+ ", outliers=" + holdTimeOutliers.size() + ']';
+	}
+}
@@ -0,0 +1,62 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * This class describes a connection that was held longer than the outlier threshold of the
+ * {@link ConnectionPoolMetrics}.
+ *
+ * @author Sander Kooijmans
+ */
+public class HoldTimeOutlier {
+
+	private final String borrower;
+	private final long borrowTime;
+	private final long holdTime;
+
+	/**
+	 * Constructor.
+	 * @param borrower the name of the thread that borrowed the connection, followed by
+	 *        the stack trace of the borrow if stack traces are recorded
+	 * @param borrowTime the time at which the connection was borrowed, in milliseconds since the epoch
+	 * @param holdTime the time the connection was held, in nanoseconds
+	 */
+	@ConstructorProperties({ "borrower", "borrowTime", "holdTime" })
+	public HoldTimeOutlier(String borrower, long borrowTime, long holdTime) {
+		this.borrower = borrower;
+		this.borrowTime = borrowTime;
+		this.holdTime = holdTime;
+	}
+
+	public String getBorrower() {
+		return borrower;
+	}
+
+	public long getBorrowTime() {
+		return borrowTime;
+	}
+
+	public long getHoldTime() {
+		return holdTime;
+	}
+
+	@Override
+	public String toString() {
+		return "HoldTimeOutlier[borrower=" + borrower + ", holdMs=" + holdTime / 1000000 + ']';
+	}
+}
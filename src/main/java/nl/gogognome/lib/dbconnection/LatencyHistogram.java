@@ -0,0 +1,122 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts latencies in buckets whose size grows with the latency: each power of two is split
+ * in four buckets. Percentiles are estimated by the upper bound of the bucket, so they are at most 25% too high.
+ * Recording a latency does not take locks.
+ *
+ * @author Sander Kooijmans
+ */
+class LatencyHistogram {
+
+	/**
+	 * The number of buckets per power of two. With 4 buckets, the upper bound
+	 * of a bucket is at most 25% more than its lower bound.
+	 */
+	private final static int SUB_BUCKETS = 4;
+
+	/** Latencies of 2^40 ns (about 18 minutes) and more are counted in the last bucket. */
+	private final static int MAX_POWER_OF_TWO = 40;
+
+	private final LongAdder[] buckets = new LongAdder[bucketIndex(Long.MAX_VALUE) + 1];
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram() {
+		for (int i=0; i<buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records a latency.
+	 * @param latency the latency in nanoseconds
+	 */
+	void record(long latency) {
+		max.accumulate(latency);
+		buckets[bucketIndex(latency)].increment();
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Estimates percentiles of the recorded latencies.
+	 * @param fractions the fractions of the percentiles, for example 0.99 for the 99th percentile
+	 * @return the percentiles in nanoseconds; 0 if no latencies have been recorded
+	 */
+	long[] getPercentiles(double... fractions) {
+		long[] counts = new long[buckets.length];
+		long total = 0;
+		for (int i=0; i<counts.length; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		long maxLatency = max.get();
+
+		long[] result = new long[fractions.length];
+		for (int f=0; f<fractions.length; f++) {
+			result[f] = percentile(counts, total, fractions[f], maxLatency);
+		}
+		return result;
+	}
+
+	void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		max.reset();
+	}
+
+	private static long percentile(long[] counts, long total, double fraction, long max) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long cumulativeCount = 0;
+		for (int i=0; i<counts.length; i++) {
+			cumulativeCount += counts[i];
+			if (cumulativeCount >= rank) {
+				return Math.min(bucketUpperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	static int bucketIndex(long latency) {
+		if (latency < SUB_BUCKETS) {
+			return (int) Math.max(latency, 0);
+		}
+		int powerOfTwo = Math.min(63 - Long.numberOfLeadingZeros(latency), MAX_POWER_OF_TWO);
+		int subBucket = (int) (latency >>> (powerOfTwo - 2)) & (SUB_BUCKETS - 1);
+		return (powerOfTwo - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int powerOfTwo = index / SUB_BUCKETS + 1;
+		long subBucketSize = 1L << (powerOfTwo - 2);
+		return (1L << powerOfTwo) + (index % SUB_BUCKETS + 1) * subBucketSize - 1;
+	}
+}
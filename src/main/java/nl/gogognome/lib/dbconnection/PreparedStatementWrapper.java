@@ -17,46 +17,103 @@ package nl.gogognome.lib.dbconnection;
 
 import java.io.InputStream;
 import java.io.Reader;
+import java.lang.ref.Reference;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class wraps a PreparedStatement. This class has two advantages over using
+ * This class wraps a PreparedStatement. This class has some advantages over using
  * the PreparedStatement directly:
  *
- * 1. Its toString() method returns the query that was used to create the statement
- * 2. Its finalizer logs a message if the statement was not closed
+ * 1. Its toString() method returns the query that was used to create the statement,
+ *    with the parameters if they are captured (see {@link ParameterCapture})
+ * 2. The {@link StatementLeakTracker} logs a message if the statement was not closed
+ * 3. Its executions are recorded in the {@link SqlStatistics}
  */
 public class PreparedStatementWrapper implements PreparedStatement {
 
+	/**
+	 * Determines which statements capture their parameters for {@link PreparedStatementWrapper#toString()}.
+	 * Statements that do not capture their parameters are rendered with question marks.
+	 */
+	public enum ParameterCapture {
+		/** No statement captures its parameters. */
+		NONE,
+		/** All statements capture their parameters. Primitive values are stored without boxing. */
+		LAZY,
+		/** One in {@link PreparedStatementWrapper#getParameterCaptureSamplingRate()} statements captures its parameters. */
+		SAMPLED
+	}
+
 	private final static Logger LOGGER = LoggerFactory.getLogger(PreparedStatementWrapper.class);
 
+	private static volatile ParameterCapture parameterCapture = ParameterCapture.LAZY;
+
+	private static volatile int parameterCaptureSamplingRate = 100;
+
 	private final PreparedStatement wrappedStatement;
 	private final String query;
+	private final SqlStatistics.Counters counters;
+	private final Reference<PreparedStatementWrapper> leakTrackerReference;
 	private boolean closed;
-	private long startTimeNano;
 
-	private List<Object> parameters = new ArrayList<>(10);
+	/** The parameters for {@link #toString()}; <code>null</code> if parameters are not captured. */
+	private final CapturedParameters parameters;
 
 	/**
 	 * Constructor.
 	 * @param wrapepdStatement the wrapped statement
-	 * @param query the query used to create the wrapped statement. Used for logging only.
-	 * @param startTimeNano the creation time (in nanoseconds) of the prepared statement
+	 * @param query the query used to create the wrapped statement. Used for logging and statistics.
 	 */
-	private PreparedStatementWrapper(PreparedStatement wrapepdStatement,
-			String query, long startTimeNano) {
+	private PreparedStatementWrapper(PreparedStatement wrapepdStatement, String query) {
 		super();
 		this.wrappedStatement = wrapepdStatement;
 		this.query = query;
-		this.startTimeNano = startTimeNano;
+		this.counters = SqlStatistics.getInstance().getCounters(query);
+		this.parameters = shouldCaptureParameters() ? new CapturedParameters(CapturedParameters.countParameters(query)) : null;
+		this.leakTrackerReference = StatementLeakTracker.track(this, wrapepdStatement, query);
+	}
+
+	public static ParameterCapture getParameterCapture() {
+		return parameterCapture;
+	}
+
+	/**
+	 * Sets which statements capture their parameters. The setting applies to statements
+	 * that are prepared after calling this method.
+	 * @param parameterCapture the parameter capture
+	 */
+	public static void setParameterCapture(ParameterCapture parameterCapture) {
+		PreparedStatementWrapper.parameterCapture = parameterCapture;
+	}
+
+	public static int getParameterCaptureSamplingRate() {
+		return parameterCaptureSamplingRate;
+	}
+
+	/**
+	 * Sets the sampling rate of {@link ParameterCapture#SAMPLED}.
+	 * @param samplingRate one in <code>samplingRate</code> statements captures its parameters
+	 */
+	public static void setParameterCaptureSamplingRate(int samplingRate) {
+		if (samplingRate < 1) {
+			throw new IllegalArgumentException("The sampling rate must be at least 1.");
+		}
+		parameterCaptureSamplingRate = samplingRate;
+	}
+
+	private static boolean shouldCaptureParameters() {
+		switch (parameterCapture) {
+		case LAZY: return true;
+		case SAMPLED: return ThreadLocalRandom.current().nextInt(parameterCaptureSamplingRate) == 0;
+		default: return false;
+		}
 	}
 
 	/**
@@ -67,9 +124,38 @@ public class PreparedStatementWrapper implements PreparedStatement {
 	 * @throws SQLException if a problem occurs
 	 */
 	public static PreparedStatement preparedStatement(Connection connection, String query) throws SQLException {
-		long startTimeNao = System.nanoTime();
 		PreparedStatement wrappedStatement = connection.prepareStatement(query);
-		return new PreparedStatementWrapper(wrappedStatement, query, startTimeNao);
+		return new PreparedStatementWrapper(wrappedStatement, query);
+	}
+
+	/**
+	 * Creates a prepared statement that produces result sets with the given type and concurrency.
+	 * @param connection the connection
+	 * @param query the query
+	 * @param resultSetType a result set type, e.g. {@link ResultSet#TYPE_FORWARD_ONLY}
+	 * @param resultSetConcurrency a concurrency type, e.g. {@link ResultSet#CONCUR_READ_ONLY}
+	 * @return the prepared statement
+	 * @throws SQLException if a problem occurs
+	 */
+	public static PreparedStatement preparedStatement(Connection connection, String query,
+			int resultSetType, int resultSetConcurrency) throws SQLException {
+		PreparedStatement wrappedStatement = connection.prepareStatement(query, resultSetType, resultSetConcurrency);
+		return new PreparedStatementWrapper(wrappedStatement, query);
+	}
+
+	/**
+	 * Creates a prepared statement that can return auto-generated keys.
+	 * @param connection the connection
+	 * @param query the query
+	 * @param autoGeneratedKeys a flag indicating whether auto-generated keys should be returned;
+	 *        one of {@link Statement#RETURN_GENERATED_KEYS} or {@link Statement#NO_GENERATED_KEYS}
+	 * @return the prepared statement
+	 * @throws SQLException if a problem occurs
+	 */
+	public static PreparedStatement preparedStatement(Connection connection, String query,
+			int autoGeneratedKeys) throws SQLException {
+		PreparedStatement wrappedStatement = connection.prepareStatement(query, autoGeneratedKeys);
+		return new PreparedStatementWrapper(wrappedStatement, query);
 	}
 
 	@Override
@@ -84,43 +170,46 @@ public class PreparedStatementWrapper implements PreparedStatement {
 
 	@Override
 	public boolean execute() throws SQLException {
+		long startTimeNano = System.nanoTime();
 		try {
-			return wrappedStatement.execute();
+			boolean result = wrappedStatement.execute();
+			recordExecution(startTimeNano, 0, false);
+			return result;
 		} catch (SQLException e) {
+			recordExecution(startTimeNano, 0, true);
 			// Throw the same exception but with the message extended with the query.
 			throw new SQLException(e.getMessage() + " in query " + toString(),
 					e.getSQLState(), e.getErrorCode(), e);
-		} finally {
-			long endTimeNano = System.nanoTime();
-			logStatement(startTimeNano, endTimeNano);
 		}
 	}
 
 	@Override
 	public ResultSet executeQuery() throws SQLException {
+		long startTimeNano = System.nanoTime();
 		try {
-			return wrappedStatement.executeQuery();
+			ResultSet result = wrappedStatement.executeQuery();
+			recordExecution(startTimeNano, 0, false);
+			return result;
 		} catch (SQLException e) {
+			recordExecution(startTimeNano, 0, true);
 			// Throw the same exception but with the message extended with the query.
 			throw new SQLException(e.getMessage() + " in query " + toString(),
 					e.getSQLState(), e.getErrorCode(), e);
-		} finally {
-			long endTimeNano = System.nanoTime();
-			logStatement(startTimeNano, endTimeNano);
 		}
 	}
 
 	@Override
 	public int executeUpdate() throws SQLException {
+		long startTimeNano = System.nanoTime();
 		try {
-			return wrappedStatement.executeUpdate();
+			int result = wrappedStatement.executeUpdate();
+			recordExecution(startTimeNano, result, false);
+			return result;
 		} catch (SQLException e) {
+			recordExecution(startTimeNano, 0, true);
 			// Throw the same exception but with the message extended with the query.
 			throw new SQLException(e.getMessage() + " in query " + toString(),
 					e.getSQLState(), e.getErrorCode(), e);
-		} finally {
-			long endTimeNano = System.nanoTime();
-			logStatement(startTimeNano, endTimeNano);
 		}
 	}
 
@@ -195,13 +284,17 @@ public class PreparedStatementWrapper implements PreparedStatement {
 
 	@Override
 	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-		addParameter(parameterIndex, x);
+		if (parameters != null) {
+			parameters.setBoolean(parameterIndex, x);
+		}
 		wrappedStatement.setBoolean(parameterIndex, x);
 	}
 
 	@Override
 	public void setByte(int parameterIndex, byte x) throws SQLException {
-		addParameter(parameterIndex, x);
+		if (parameters != null) {
+			parameters.setInt(parameterIndex, x);
+		}
 		wrappedStatement.setByte(parameterIndex, x);
 	}
 
@@ -258,25 +351,33 @@ public class PreparedStatementWrapper implements PreparedStatement {
 
 	@Override
 	public void setDouble(int parameterIndex, double x) throws SQLException {
-		addParameter(parameterIndex, x);
+		if (parameters != null) {
+			parameters.setDouble(parameterIndex, x);
+		}
 		wrappedStatement.setDouble(parameterIndex, x);
 	}
 
 	@Override
 	public void setFloat(int parameterIndex, float x) throws SQLException {
-		addParameter(parameterIndex, x);
+		if (parameters != null) {
+			parameters.setFloat(parameterIndex, x);
+		}
 		wrappedStatement.setFloat(parameterIndex, x);
 	}
 
 	@Override
 	public void setInt(int parameterIndex, int x) throws SQLException {
-		addParameter(parameterIndex, x);
+		if (parameters != null) {
+			parameters.setInt(parameterIndex, x);
+		}
 		wrappedStatement.setInt(parameterIndex, x);
 	}
 
 	@Override
 	public void setLong(int parameterIndex, long x) throws SQLException {
-		addParameter(parameterIndex, x);
+		if (parameters != null) {
+			parameters.setLong(parameterIndex, x);
+		}
 		wrappedStatement.setLong(parameterIndex, x);
 	}
 
@@ -331,7 +432,7 @@ public class PreparedStatementWrapper implements PreparedStatement {
 
 	@Override
 	public void setNull(int parameterIndex, int sqlType) throws SQLException {
-		addParameter(parameterIndex, null);
+		addParameter(parameterIndex, (Object) null);
 		wrappedStatement.setNull(parameterIndex, sqlType);
 	}
 
@@ -379,7 +480,9 @@ public class PreparedStatementWrapper implements PreparedStatement {
 
 	@Override
 	public void setShort(int parameterIndex, short x) throws SQLException {
-		addParameter(parameterIndex, x);
+		if (parameters != null) {
+			parameters.setInt(parameterIndex, x);
+		}
 		wrappedStatement.setShort(parameterIndex, x);
 	}
 
@@ -445,10 +548,18 @@ public class PreparedStatementWrapper implements PreparedStatement {
 		wrappedStatement.clearWarnings();
 	}
 
+	/**
+	 * Closes the wrapped statement. If the connection caches prepared statements, then
+	 * the wrapped statement is reused by the next wrapper that prepares the same query.
+	 * Therefore this wrapper closes the wrapped statement at most once.
+	 */
 	@Override
 	public void close() throws SQLException {
-		wrappedStatement.close();
-		closed = true;
+		if (!closed) {
+			closed = true;
+			StatementLeakTracker.untrack(leakTrackerReference);
+			wrappedStatement.close();
+		}
 	}
 
 	@Override
@@ -475,7 +586,21 @@ public class PreparedStatementWrapper implements PreparedStatement {
 
 	@Override
 	public int[] executeBatch() throws SQLException {
-		return wrappedStatement.executeBatch();
+		long startTimeNano = System.nanoTime();
+		try {
+			int[] result = wrappedStatement.executeBatch();
+			long nrRows = 0;
+			for (int count : result) {
+				if (count > 0) {
+					nrRows += count;
+				}
+			}
+			recordExecution(startTimeNano, nrRows, false);
+			return result;
+		} catch (SQLException e) {
+			recordExecution(startTimeNano, 0, true);
+			throw e;
+		}
 	}
 
 	@Override
@@ -583,7 +708,7 @@ public class PreparedStatementWrapper implements PreparedStatement {
 
 	@Override
 	public boolean isClosed() throws SQLException {
-		return wrappedStatement.isClosed();
+		return closed || wrappedStatement.isClosed();
 	}
 
 	@Override
@@ -700,50 +825,44 @@ public class PreparedStatementWrapper implements PreparedStatement {
 	}
 
 	/**
-	 * Logs a statement.
-	 * @param start the start time in nanoseconds
-	 * @param end the end time in nanoseconds
+	 * Records an execution in the {@link SqlStatistics} and logs it. The log level depends
+	 * on the duration of the execution. The message is only built if that level is enabled.
+	 * @param startTimeNano the start time of the execution in nanoseconds
+	 * @param nrRows the number of rows affected
+	 * @param error <code>true</code> if the execution failed
 	 */
-	private void logStatement(long start, long end) {
-		long ms = (end - start) / 1000000;
-		String message = toString() + " took " + ms + " ms";
+	private void recordExecution(long startTimeNano, long nrRows, boolean error) {
+		long durationNano = System.nanoTime() - startTimeNano;
+		if (counters != null) {
+			counters.record(durationNano, nrRows, error);
+		}
+
+		long ms = durationNano / 1000000;
 		if (ms < 100) {
-			LOGGER.trace(message);
+			if (LOGGER.isTraceEnabled()) {
+				LOGGER.trace(toString() + " took " + ms + " ms");
+			}
 		} else if (ms < 1000) {
-			LOGGER.debug(message);
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(toString() + " took " + ms + " ms");
+			}
 		} else if (ms < 10000) {
-			LOGGER.info(message);
+			if (LOGGER.isInfoEnabled()) {
+				LOGGER.info(toString() + " took " + ms + " ms");
+			}
 		} else {
-			LOGGER.warn(message);
+			LOGGER.warn(toString() + " took " + ms + " ms");
 		}
-
-		// Reset start time for the case this statement is used again.
-		startTimeNano = end;
 	}
 
 	/**
-	 * Stores the parameter in the {@link #parameters} list.
+	 * Stores the parameter if parameters are captured.
 	 * @param index the index of the parameter in the query
 	 * @param parameter the parameter
 	 */
 	private void addParameter(int index, Object parameter) {
-		index -= 1; // parameter indexes start at 1 instead of 0.
-		if (parameters.size() > index) {
-			parameters.set(index, parameter);
-		} else {
-			while (parameters.size() < index) {
-				parameters.add(null);
-			}
-			parameters.add(parameter);
-		}
-	}
-
-	@Override
-	protected void finalize() throws Throwable {
-		super.finalize();
-		if (!closed) {
-			LOGGER.error("PreparedStatement " + this + " was not closed before finalization!");
-			close();
+		if (parameters != null) {
+			parameters.setObject(index, parameter);
 		}
 	}
 
@@ -755,9 +874,7 @@ public class PreparedStatementWrapper implements PreparedStatement {
 		int prevIndex = 0;
 		while (index != -1) {
 			sb.append(query.substring(prevIndex, index));
-			if (paramIndex < parameters.size()) {
-				sb.append(parameters.get(paramIndex));
-			} else {
+			if (parameters == null || !parameters.appendValue(sb, paramIndex)) {
 				sb.append('?');
 			}
 			paramIndex += 1;
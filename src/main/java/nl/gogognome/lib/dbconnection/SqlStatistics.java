@@ -0,0 +1,245 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class collects statistics of the statements executed by {@link PreparedStatementWrapper}s.
+ * The statistics are kept per normalized SQL text: the number of executions, errors and rows and a
+ * histogram of the latencies.
+ *
+ * <p>Recording an execution does not take locks: the counters are {@link LongAdder}s, which spread
+ * contended updates over multiple cells. The statistics can be read with {@link #getStatements()}
+ * or via JMX after calling {@link #registerMBean()}.
+ *
+ * <p>This class is thread safe.
+ *
+ * @author Sander Kooijmans
+ */
+public class SqlStatistics implements SqlStatisticsMXBean {
+
+	/** The name under which the MBean is registered. */
+	public final static String OBJECT_NAME = "nl.gogognome.lib:type=SqlStatistics";
+
+	/** The maximum number of normalized SQL texts. Executions of other statements are counted under {@link #OTHER_SQL}. */
+	public final static int MAX_NR_STATEMENTS = 1000;
+
+	public final static String OTHER_SQL = "(other)";
+
+	private final static SqlStatistics INSTANCE = new SqlStatistics();
+
+	private final static Pattern WHITE_SPACE = Pattern.compile("\\s+");
+
+	private final static Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+	private final static Pattern LIST_OF_PARAMETER_LISTS =
+			Pattern.compile("\\(\\?\\.\\.\\.\\)(\\s*,\\s*\\(\\?\\.\\.\\.\\))+");
+
+	private volatile boolean enabled = true;
+
+	/** Maps the SQL text as passed to the wrapper to the counters. Avoids normalizing the text per execution. */
+	private final ConcurrentMap<String, Counters> countersBySql = new ConcurrentHashMap<String, Counters>();
+
+	private final ConcurrentMap<String, Counters> countersByNormalizedSql = new ConcurrentHashMap<String, Counters>();
+
+	/**
+	 * Gets the statistics that are used by all {@link PreparedStatementWrapper}s.
+	 * @return the statistics
+	 */
+	public static SqlStatistics getInstance() {
+		return INSTANCE;
+	}
+
+	SqlStatistics() {
+	}
+
+	/**
+	 * Registers this instance with the platform MBean server under the name {@link #OBJECT_NAME}.
+	 * If an MBean with that name has already been registered, then this method has no effect.
+	 * @throws JMException if the MBean could not be registered
+	 */
+	public void registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (!server.isRegistered(name)) {
+			server.registerMBean(this, name);
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables recording of statistics. Statements that have been prepared
+	 * while recording was disabled are never recorded.
+	 * @param enabled <code>true</code> to enable recording
+	 */
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Gets the counters for a statement.
+	 * @param sql the SQL text of the statement
+	 * @return the counters or <code>null</code> if recording is disabled
+	 */
+	Counters getCounters(String sql) {
+		if (!enabled) {
+			return null;
+		}
+		Counters counters = countersBySql.get(sql);
+		if (counters == null) {
+			String normalizedSql = normalize(sql);
+			counters = countersByNormalizedSql.get(normalizedSql);
+			if (counters == null) {
+				if (countersByNormalizedSql.size() >= MAX_NR_STATEMENTS) {
+					normalizedSql = OTHER_SQL;
+				}
+				Counters newCounters = new Counters(normalizedSql);
+				counters = countersByNormalizedSql.putIfAbsent(normalizedSql, newCounters);
+				if (counters == null) {
+					counters = newCounters;
+				}
+			}
+			if (countersBySql.size() < 10 * MAX_NR_STATEMENTS) {
+				countersBySql.putIfAbsent(sql, counters);
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * Normalizes an SQL text: white space is collapsed and lists of parameters are replaced
+	 * by <code>(?...)</code>.
+	 * @param sql the SQL text
+	 * @return the normalized text
+	 */
+	static String normalize(String sql) {
+		String result = WHITE_SPACE.matcher(sql.trim()).replaceAll(" ");
+		result = PARAMETER_LIST.matcher(result).replaceAll("(?...)");
+		return LIST_OF_PARAMETER_LISTS.matcher(result).replaceAll("(?...)...");
+	}
+
+	@Override
+	public long getExecutionCount() {
+		long count = 0;
+		for (Counters counters : countersByNormalizedSql.values()) {
+			count += counters.executions.sum();
+		}
+		return count;
+	}
+
+	@Override
+	public long getErrorCount() {
+		long count = 0;
+		for (Counters counters : countersByNormalizedSql.values()) {
+			count += counters.errors.sum();
+		}
+		return count;
+	}
+
+	@Override
+	public List<StatementStatistics> getStatements() {
+		List<StatementStatistics> result = new ArrayList<StatementStatistics>(countersByNormalizedSql.size());
+		for (Counters counters : countersByNormalizedSql.values()) {
+			result.add(counters.snapshot());
+		}
+		Collections.sort(result, new Comparator<StatementStatistics>() {
+			@Override
+			public int compare(StatementStatistics s1, StatementStatistics s2) {
+				return Long.compare(s2.getTotalLatency(), s1.getTotalLatency());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Gets the statistics of one normalized SQL text.
+	 * @param sql the SQL text; it is normalized by this method
+	 * @return the statistics or <code>null</code> if no statement with this text has been recorded
+	 */
+	public StatementStatistics getStatement(String sql) {
+		Counters counters = countersByNormalizedSql.get(normalize(sql));
+		return counters != null ? counters.snapshot() : null;
+	}
+
+	/**
+	 * Removes all statistics. Statements that are prepared before the reset and executed after it
+	 * are not recorded anymore.
+	 */
+	@Override
+	public void reset() {
+		countersBySql.clear();
+		countersByNormalizedSql.clear();
+	}
+
+	/**
+	 * The counters of the statements with the same normalized SQL text.
+	 */
+	static class Counters {
+
+		private final String sql;
+		private final LongAdder executions = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder totalLatency = new LongAdder();
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		Counters(String sql) {
+			this.sql = sql;
+		}
+
+		/**
+		 * Records an execution.
+		 * @param latency the latency in nanoseconds
+		 * @param nrRows the number of rows affected
+		 * @param error <code>true</code> if the execution failed
+		 */
+		void record(long latency, long nrRows, boolean error) {
+			executions.increment();
+			if (error) {
+				errors.increment();
+			}
+			if (nrRows > 0) {
+				rows.add(nrRows);
+			}
+			totalLatency.add(latency);
+			histogram.record(latency);
+		}
+
+		StatementStatistics snapshot() {
+			long[] percentiles = histogram.getPercentiles(0.5, 0.99);
+			return new StatementStatistics(sql, executions.sum(), errors.sum(), rows.sum(), totalLatency.sum(),
+					percentiles[0], percentiles[1], histogram.getMax());
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link SqlStatistics}.
+ *
+ * @author Sander Kooijmans
+ */
+public interface SqlStatisticsMXBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	long getExecutionCount();
+
+	long getErrorCount();
+
+	/**
+	 * Gets the statistics per normalized SQL text, ordered by descending total latency.
+	 * @return the statistics
+	 */
+	List<StatementStatistics> getStatements();
+
+	/**
+	 * Removes all statistics.
+	 */
+	void reset();
+}
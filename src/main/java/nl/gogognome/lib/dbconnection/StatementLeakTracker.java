@@ -0,0 +1,207 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class detects {@link PreparedStatementWrapper}s that are garbage collected without having been closed.
+ * Tracked wrappers are registered with a phantom reference. Closing a wrapper removes its reference.
+ * If a wrapper is collected while its reference is still registered, the reference ends up in a reference queue.
+ * The queue is checked each time a statement is tracked; leaked statements are logged and closed.
+ *
+ * <p>The mode determines which statements are tracked. In mode {@link Mode#SAMPLED} one in
+ * {@link #getSamplingRate()} statements is tracked. The stack trace of the creation of a statement is
+ * only recorded for tracked statements, so untracked statements cost nothing. The initial mode can be set
+ * with the system property <code>nl.gogognome.lib.statementLeakTracking</code>
+ * (<code>off</code>, <code>sampled</code> or <code>always</code>); the default is sampled.
+ *
+ * <p>This class is thread safe.
+ *
+ * @author Sander Kooijmans
+ */
+public class StatementLeakTracker {
+
+	public enum Mode {
+		/** No statements are tracked. */
+		OFF,
+		/** One in {@link StatementLeakTracker#getSamplingRate()} statements is tracked. */
+		SAMPLED,
+		/** All statements are tracked. */
+		ALWAYS
+	}
+
+	public final static String MODE_PROPERTY = "nl.gogognome.lib.statementLeakTracking";
+
+	public final static int DEFAULT_SAMPLING_RATE = 100;
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(StatementLeakTracker.class);
+
+	private final static ReferenceQueue<PreparedStatementWrapper> QUEUE = new ReferenceQueue<PreparedStatementWrapper>();
+
+	/** Keeps the references strongly reachable until their wrapper is closed or collected. */
+	private final static Set<TrackedStatement> TRACKED_STATEMENTS =
+			Collections.newSetFromMap(new ConcurrentHashMap<TrackedStatement, Boolean>());
+
+	private final static AtomicLong NR_LEAKS = new AtomicLong();
+
+	private static volatile Mode mode = parseMode(System.getProperty(MODE_PROPERTY));
+
+	private static volatile int samplingRate = DEFAULT_SAMPLING_RATE;
+
+	private StatementLeakTracker() {
+	}
+
+	/**
+	 * Parses the value of the system property {@link #MODE_PROPERTY}.
+	 * @param value the value; may be <code>null</code>
+	 * @return the mode; {@link Mode#SAMPLED} if the value is <code>null</code> or not a valid mode
+	 */
+	static Mode parseMode(String value) {
+		if (value == null) {
+			return Mode.SAMPLED;
+		}
+		try {
+			return Mode.valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn("Invalid value \"" + value + "\" for system property " + MODE_PROPERTY
+					+ "; statement leaks are tracked in mode " + Mode.SAMPLED);
+			return Mode.SAMPLED;
+		}
+	}
+
+	public static Mode getMode() {
+		return mode;
+	}
+
+	public static void setMode(Mode mode) {
+		StatementLeakTracker.mode = mode;
+	}
+
+	public static int getSamplingRate() {
+		return samplingRate;
+	}
+
+	/**
+	 * Sets the sampling rate of mode {@link Mode#SAMPLED}.
+	 * @param samplingRate one in <code>samplingRate</code> statements is tracked
+	 */
+	public static void setSamplingRate(int samplingRate) {
+		if (samplingRate < 1) {
+			throw new IllegalArgumentException("The sampling rate must be at least 1.");
+		}
+		StatementLeakTracker.samplingRate = samplingRate;
+	}
+
+	/**
+	 * Gets the number of leaked statements that have been detected.
+	 * @return the number of leaked statements
+	 */
+	public static long getNrLeaks() {
+		return NR_LEAKS.get();
+	}
+
+	/**
+	 * Gets the number of statements that are tracked and have not been closed yet.
+	 * @return the number of statements
+	 */
+	public static int getNrTrackedStatements() {
+		return TRACKED_STATEMENTS.size();
+	}
+
+	/**
+	 * Starts tracking a wrapper, depending on the mode.
+	 * @param wrapper the wrapper
+	 * @param wrappedStatement the statement wrapped by the wrapper. It is closed if the wrapper leaks.
+	 * @param query the query of the statement
+	 * @return the reference that must be passed to {@link #untrack(Reference)} when the wrapper is closed;
+	 *         <code>null</code> if the wrapper is not tracked
+	 */
+	static Reference<PreparedStatementWrapper> track(PreparedStatementWrapper wrapper,
+			PreparedStatement wrappedStatement, String query) {
+		Mode currentMode = mode;
+		if (currentMode == Mode.OFF
+				|| currentMode == Mode.SAMPLED && ThreadLocalRandom.current().nextInt(samplingRate) != 0) {
+			return null;
+		}
+
+		expungeLeakedStatements();
+		TrackedStatement reference = new TrackedStatement(wrapper, wrappedStatement, query,
+				new Throwable("Creation of the statement"));
+		TRACKED_STATEMENTS.add(reference);
+		return reference;
+	}
+
+	/**
+	 * Stops tracking a wrapper, because it has been closed.
+	 * @param reference the reference returned by {@link #track(PreparedStatementWrapper, PreparedStatement, String)}
+	 */
+	static void untrack(Reference<PreparedStatementWrapper> reference) {
+		if (reference != null) {
+			TRACKED_STATEMENTS.remove(reference);
+			reference.clear();
+		}
+	}
+
+	/**
+	 * Logs and closes the statements whose wrappers have been collected without having been closed.
+	 * This method is called automatically when statements are tracked.
+	 */
+	public static void expungeLeakedStatements() {
+		Reference<? extends PreparedStatementWrapper> reference = QUEUE.poll();
+		while (reference != null) {
+			TrackedStatement trackedStatement = (TrackedStatement) reference;
+			if (TRACKED_STATEMENTS.remove(trackedStatement)) {
+				NR_LEAKS.incrementAndGet();
+				LOGGER.error("PreparedStatement " + trackedStatement.query + " was not closed before it was "
+						+ "garbage collected!", trackedStatement.creation);
+				try {
+					trackedStatement.wrappedStatement.close();
+				} catch (SQLException e) {
+					LOGGER.warn("Ignored exception while closing leaked statement: " + e.getMessage(), e);
+				}
+			}
+			reference = QUEUE.poll();
+		}
+	}
+
+	private static class TrackedStatement extends PhantomReference<PreparedStatementWrapper> {
+
+		private final PreparedStatement wrappedStatement;
+		private final String query;
+		private final Throwable creation;
+
+		public TrackedStatement(PreparedStatementWrapper wrapper, PreparedStatement wrappedStatement,
+				String query, Throwable creation) {
+			super(wrapper, QUEUE);
+			this.wrappedStatement = wrappedStatement;
+			this.query = query;
+			this.creation = creation;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.dbconnection;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * This class contains a snapshot of the statistics of the statements with the same normalized SQL text.
+ * Latencies are in nanoseconds. The percentiles are estimates that are at most 25% too high.
+ *
+ * @author Sander Kooijmans
+ */
+public class StatementStatistics {
+
+	private final String sql;
+	private final long executionCount;
+	private final long errorCount;
+	private final long rowCount;
+	private final long totalLatency;
+	private final long medianLatency;
+	private final long p99Latency;
+	private final long maxLatency;
+
+	@ConstructorProperties({ "sql", "executionCount", "errorCount", "rowCount", "totalLatency",
+		"medianLatency", "p99Latency", "maxLatency" })
+	public StatementStatistics(String sql, long executionCount, long errorCount, long rowCount,
+			long totalLatency, long medianLatency, long p99Latency, long maxLatency) {
+		this.sql = sql;
+		this.executionCount = executionCount;
+		this.errorCount = errorCount;
+		this.rowCount = rowCount;
+		this.totalLatency = totalLatency;
+		this.medianLatency = medianLatency;
+		this.p99Latency = p99Latency;
+		this.maxLatency = maxLatency;
+	}
+
+	/**
+	 * Gets the normalized SQL text. In the normalized text, white space is collapsed and lists
+	 * of parameters are replaced by <code>(?...)</code>, so that queries that only differ in the
+	 * number of values in an IN list share their statistics.
+	 * @return the normalized SQL text
+	 */
+	public String getSql() {
+		return sql;
+	}
+
+	public long getExecutionCount() {
+		return executionCount;
+	}
+
+	/**
+	 * Gets the number of executions that failed with an exception.
+	 * @return the number of failed executions
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Gets the number of rows affected by updates and batches. Rows returned by queries are not counted.
+	 * @return the number of rows
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public long getTotalLatency() {
+		return totalLatency;
+	}
+
+	public long getMedianLatency() {
+		return medianLatency;
+	}
+
+	public long getP99Latency() {
+		return p99Latency;
+	}
+
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+
+	@Override
+	public String toString() {
+		return sql + ": executions=" + executionCount + ", errors=" + errorCount + ", rows=" + rowCount
+			+ ", totalMs=" + totalLatency / 1000000 + ", p50Us=" + medianLatency / 1000
+			+ ", p99Us=" + p99Latency / 1000 + ", maxUs=" + maxLatency / 1000;
+	}
+}
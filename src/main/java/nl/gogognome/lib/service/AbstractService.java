@@ -18,6 +18,9 @@ package nl.gogognome.lib.service;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+import javax.sql.DataSource;
+
+import nl.gogognome.lib.dao.AbstractBusinessObjectDAO;
 import nl.gogognome.lib.dbconnection.ConnectionPool;
 import nl.gogognome.lib.util.Factory;
 
@@ -36,12 +39,23 @@ public class AbstractService {
 	protected Connection connection;
 	protected boolean success;
     private ConnectionPool connectionPool;
+    private DataSource dataSource;
 
     /**
      * Constructor.
      */
     protected AbstractService() {
         connectionPool = Factory.getInstance(ConnectionPool.class);
+        dataSource = connectionPool.getDataSource();
+    }
+
+    /**
+     * Gets the connection pool. Use it to get connections in addition to the connection
+     * of {@link #createConnection()}, for example for tasks that run in parallel.
+     * @return the connection pool
+     */
+    protected ConnectionPool getConnectionPool() {
+    	return connectionPool;
     }
 
     /**
@@ -55,7 +69,7 @@ public class AbstractService {
     	}
 
     	success = false;
-    	connection = connectionPool.getConnection();
+    	connection = dataSource.getConnection();
     	connection.setAutoCommit(false);
         return connection;
     }
@@ -77,6 +91,7 @@ public class AbstractService {
     protected void rollback() {
     	try {
     		if (connection != null) {
+    			AbstractBusinessObjectDAO.discardSnapshots();
     			connection.rollback();
     		}
 		} catch (SQLException e) {
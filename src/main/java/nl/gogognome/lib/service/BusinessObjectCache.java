@@ -0,0 +1,198 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import nl.gogognome.lib.businessobject.BusinessObject;
+import nl.gogognome.lib.businessobject.PrimaryKey;
+
+/**
+ * This class implements a size bounded cache of business objects keyed by their primary key.
+ * When the cache is full, the least recently used business object is evicted. Business objects
+ * that have been in the cache longer than the time to live are not returned anymore.
+ *
+ * <p>The cache stores and returns copies of business objects, made by the copier passed to the
+ * constructor, so that a caller that modifies a business object does not modify the business object
+ * returned to other callers. Pass {@link UnaryOperator#identity()} only for immutable business objects.
+ *
+ * <p>The {@link BusinessObjectService} keeps the cache consistent with the changes that DAOs
+ * of the registered DAO class make to the database. Changes made to the database in another way
+ * are only seen after the time to live has passed.
+ *
+ * <p>This class is thread safe.
+ *
+ * @param <P> the type of the primary key
+ * @param <T> the type of the business object
+ */
+public class BusinessObjectCache<P extends PrimaryKey, T extends BusinessObject<P>> {
+
+    private final int maxSize;
+
+    private final long timeToLiveNanos;
+
+    private final UnaryOperator<T> copier;
+
+    private final LinkedHashMap<P, Entry<T>> entries;
+
+    /** Incremented on each invalidation. Used to prevent that a stale business object gets cached. */
+    private long generation;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param maxSize the maximum number of business objects in the cache
+     * @param timeToLive the maximum time a business object stays in the cache; 0 for no limit
+     * @param unit the unit of <code>timeToLive</code>
+     * @param copier creates a copy of a business object
+     */
+    public BusinessObjectCache(int maxSize, long timeToLive, TimeUnit unit, UnaryOperator<T> copier) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be at least 1.");
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("The time to live must not be negative.");
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.copier = copier;
+        entries = new LinkedHashMap<P, Entry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<P, Entry<T>> eldest) {
+                if (size() > BusinessObjectCache.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets a business object from the cache.
+     * @param pk the primary key of the business object
+     * @return a copy of the business object or <code>null</code> if it is not in the cache or has expired
+     */
+    public synchronized T get(P pk) {
+        Entry<T> entry = entries.get(pk);
+        if (entry != null && timeToLiveNanos > 0 && System.nanoTime() - entry.creationTime > timeToLiveNanos) {
+            entries.remove(pk);
+            evictionCount.incrementAndGet();
+            entry = null;
+        }
+
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return copier.apply(entry.bo);
+        } else {
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Gets the generation of the cache. Pass the generation obtained before reading a business object
+     * from the database to {@link #put(BusinessObject, long)}.
+     * @return the generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Adds a copy of a business object to the cache, unless the cache has been invalidated since
+     * the business object was read from the database.
+     * @param bo the business object
+     * @param generation the generation of the cache before the business object was read from the database
+     */
+    public synchronized void put(T bo, long generation) {
+        if (this.generation == generation) {
+            entries.put(bo.getPK(), new Entry<T>(copier.apply(bo), System.nanoTime()));
+        }
+    }
+
+    /**
+     * Removes a business object from the cache.
+     * @param pk the primary key of the business object
+     */
+    public synchronized void invalidate(P pk) {
+        generation++;
+        entries.remove(pk);
+    }
+
+    /**
+     * Removes all business objects from the cache.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gets the ratio of lookups that were served by the cache.
+     * @return the hit ratio; 0 if no lookups have been done
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "BusinessObjectCache[size=" + size() + ", maxSize=" + maxSize + ", hits=" + getHitCount()
+            + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ']';
+    }
+
+    private static class Entry<T> {
+        private final T bo;
+        private final long creationTime;
+
+        public Entry(T bo, long creationTime) {
+            this.bo = bo;
+            this.creationTime = creationTime;
+        }
+    }
+}
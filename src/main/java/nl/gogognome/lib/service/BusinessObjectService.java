@@ -16,16 +16,26 @@
 package nl.gogognome.lib.service;
 
 import java.lang.reflect.Constructor;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 import nl.gogognome.lib.businessobject.BusinessObject;
 import nl.gogognome.lib.businessobject.PrimaryKey;
 import nl.gogognome.lib.dao.AbstractBusinessObjectDAO;
+import nl.gogognome.lib.dao.BusinessObjectChangeListener;
 
 /**
  * This class implements a service for finding, updating and deleting BOs.
@@ -40,17 +50,45 @@ public class BusinessObjectService extends AbstractService {
     private final static Map<Class<?>, Class<?>> BO_CLASS_TO_DAO_MAP =
     		new HashMap<Class<?>, Class<?>>();
 
+    /** The number of ranges per thread in a parallel scan. More ranges than threads balance the load. */
+    private final static int PARTITIONS_PER_THREAD = 4;
+
+    private final static Map<Class<?>, BusinessObjectCache<?, ?>> PK_CLASS_TO_CACHE_MAP =
+    		new HashMap<Class<?>, BusinessObjectCache<?, ?>>();
+
     public BusinessObjectService() throws Exception {
         super();
     }
 
     public static void registerBO(Class<?> boClass, Class<?> pkClass, Class<?> daoClass) {
+        registerBO(boClass, pkClass, daoClass, null);
+    }
+
+    /**
+     * Registers a business object class whose business objects are cached by
+     * {@link #findByPK(PrimaryKey)} and {@link #findByPKs(Collection)}. The cache is invalidated
+     * by all changes that DAOs of the DAO class make to the database.
+     * @param boClass the class of the business object
+     * @param pkClass the class of the primary key
+     * @param daoClass the class of the DAO
+     * @param cache the cache; <code>null</code> if business objects must not be cached
+     */
+    public static void registerBO(Class<?> boClass, Class<?> pkClass, Class<?> daoClass,
+    		BusinessObjectCache<?, ?> cache) {
         PK_CLASS_TO_DAO_MAP.put(pkClass, daoClass);
         BO_CLASS_TO_DAO_MAP.put(boClass, daoClass);
+        if (cache != null) {
+        	PK_CLASS_TO_CACHE_MAP.put(pkClass, cache);
+        	AbstractBusinessObjectDAO.setChangeListener(daoClass, new CacheInvalidator(cache));
+        } else {
+        	PK_CLASS_TO_CACHE_MAP.remove(pkClass);
+        	AbstractBusinessObjectDAO.setChangeListener(daoClass, null);
+        }
     }
 
     /**
-     * Finds a business object by its PK.
+     * Finds a business object by its PK. If a cache has been registered for the business object
+     * class, then the business object is taken from the cache if possible.
      * @param pk the PK
      * @return the business object
      * @throws ServiceException if a problem occurs while searching for the business object
@@ -62,11 +100,24 @@ public class BusinessObjectService extends AbstractService {
             throw new ServiceException("No DAO registered for PK class " + pk.getClass() + '.');
         }
 
+        BusinessObjectCache<P, T> cache = getCache(pk.getClass());
+        long generation = 0;
+        if (cache != null) {
+        	generation = cache.getGeneration();
+        	T bo = cache.get(pk);
+        	if (bo != null) {
+        		return bo;
+        	}
+        }
+
         try {
         	Connection connection = createConnection();
             AbstractBusinessObjectDAO<P, T> dao = getDAO(daoClass, connection);
 
             T bo = dao.findByPK(pk);
+            if (cache != null && bo != null) {
+            	cache.put(bo, generation);
+            }
             success = true;
             return bo;
         } catch (Exception e) {
@@ -76,6 +127,67 @@ public class BusinessObjectService extends AbstractService {
         }
     }
 
+    /**
+     * Finds business objects by their PKs. All business objects are found in one transaction
+     * using as few queries as possible.
+     * @param pks the PKs. All PKs must have the same class.
+     * @return a map from PK to business object. PKs for which no business object exists
+     *         are not present in the map.
+     * @throws ServiceException if a problem occurs while searching for the business objects
+     */
+    public <P extends PrimaryKey, T extends BusinessObject<P>> Map<P, T> findByPKs(Collection<P> pks)
+    		throws ServiceException {
+    	if (pks.isEmpty()) {
+    		return new HashMap<P, T>();
+    	}
+
+    	Class<?> pkClass = pks.iterator().next().getClass();
+    	Class<AbstractBusinessObjectDAO<P, T>> daoClass =
+    			(Class<AbstractBusinessObjectDAO<P, T>>) PK_CLASS_TO_DAO_MAP.get(pkClass);
+        if (daoClass == null) {
+            throw new ServiceException("No DAO registered for PK class " + pkClass + '.');
+        }
+
+        BusinessObjectCache<P, T> cache = getCache(pkClass);
+        Map<P, T> cachedBOs = new HashMap<P, T>();
+        Collection<P> uncachedPKs = pks;
+        long generation = 0;
+        if (cache != null) {
+        	generation = cache.getGeneration();
+        	uncachedPKs = new ArrayList<P>();
+        	for (P pk : pks) {
+        		T bo = cache.get(pk);
+        		if (bo != null) {
+        			cachedBOs.put(pk, bo);
+        		} else {
+        			uncachedPKs.add(pk);
+        		}
+        	}
+        	if (uncachedPKs.isEmpty()) {
+        		return cachedBOs;
+        	}
+        }
+
+        try {
+        	Connection connection = createConnection();
+            AbstractBusinessObjectDAO<P, T> dao = getDAO(daoClass, connection);
+
+            Map<P, T> bos = dao.findByPKs(uncachedPKs);
+            if (cache != null) {
+            	for (T bo : bos.values()) {
+            		cache.put(bo, generation);
+            	}
+            }
+            bos.putAll(cachedBOs);
+            success = true;
+            return bos;
+        } catch (Exception e) {
+        	throw new ServiceException("A problem occurred while searching for " + pks.size() + " business objects.", e);
+        } finally {
+            releaseConnection(success);
+        }
+    }
+
 	public <P extends PrimaryKey, T extends BusinessObject<P>> T createBO(T bo) throws ServiceException {
     	Class<AbstractBusinessObjectDAO<P, T>> daoClass =
     			(Class<AbstractBusinessObjectDAO<P, T>>) BO_CLASS_TO_DAO_MAP.get(bo.getClass());
@@ -89,12 +201,219 @@ public class BusinessObjectService extends AbstractService {
 
             bo = dao.createBO(bo);
             success = true;
-            return bo;
         } catch (Exception e) {
        		throw new ServiceException("A problem occurred while creating business object " + bo, e);
         } finally {
             releaseConnection(success);
         }
+        invalidateCache(bo.getPK());
+        return bo;
+	}
+
+	/**
+	 * Updates a business object. The business object is removed from the cache, if any.
+	 * @param bo the business object
+	 * @throws ServiceException if a problem occurs while updating the business object
+	 */
+	public <P extends PrimaryKey, T extends BusinessObject<P>> void updateBO(T bo) throws ServiceException {
+    	Class<AbstractBusinessObjectDAO<P, T>> daoClass =
+    			(Class<AbstractBusinessObjectDAO<P, T>>) BO_CLASS_TO_DAO_MAP.get(bo.getClass());
+        if (daoClass == null) {
+            throw new ServiceException("No DAO registered for business object class " + bo.getClass() + '.');
+        }
+
+        try {
+        	Connection connection = createConnection();
+            AbstractBusinessObjectDAO<P, T> dao = getDAO(daoClass, connection);
+
+            dao.updateBO(bo);
+            success = true;
+        } catch (Exception e) {
+       		throw new ServiceException("A problem occurred while updating business object " + bo, e);
+        } finally {
+            releaseConnection(success);
+            invalidateCache(bo.getPK());
+        }
+	}
+
+	/**
+	 * Deletes a business object. The business object is removed from the cache, if any.
+	 * @param pk the PK of the business object
+	 * @throws ServiceException if a problem occurs while deleting the business object
+	 */
+	public <P extends PrimaryKey, T extends BusinessObject<P>> void deleteBO(P pk) throws ServiceException {
+    	Class<AbstractBusinessObjectDAO<P, T>> daoClass =
+    			(Class<AbstractBusinessObjectDAO<P, T>>) PK_CLASS_TO_DAO_MAP.get(pk.getClass());
+        if (daoClass == null) {
+            throw new ServiceException("No DAO registered for PK class " + pk.getClass() + '.');
+        }
+
+        try {
+        	Connection connection = createConnection();
+            AbstractBusinessObjectDAO<P, T> dao = getDAO(daoClass, connection);
+
+            dao.deleteBO(pk);
+            success = true;
+        } catch (Exception e) {
+       		throw new ServiceException("A problem occurred while deleting " + pk.getPresentationName() + '.', e);
+        } finally {
+            releaseConnection(success);
+            invalidateCache(pk);
+        }
+	}
+
+	private <P extends PrimaryKey, T extends BusinessObject<P>> BusinessObjectCache<P, T> getCache(Class<?> pkClass) {
+		return (BusinessObjectCache<P, T>) PK_CLASS_TO_CACHE_MAP.get(pkClass);
+	}
+
+	/**
+	 * Removes a business object from the cache. Must be called after the transaction that changed
+	 * the business object has ended, so that a concurrent read cannot cache the old version.
+	 * The {@link CacheInvalidator} only invalidates the cache before the transaction is committed.
+	 * @param pk the PK of the business object
+	 */
+	private <P extends PrimaryKey> void invalidateCache(P pk) {
+		if (pk != null) {
+			BusinessObjectCache<P, ?> cache = getCache(pk.getClass());
+			if (cache != null) {
+				cache.invalidate(pk);
+			}
+		}
+	}
+
+	/**
+	 * Passes all business objects of a class to a consumer. The table is split in ranges of the primary key
+	 * which are scanned in parallel, each on its own connection. The DAO of the business object class
+	 * must support primary key ranges.
+	 * @param boClass the class of the business objects
+	 * @param parallelism the maximum number of ranges that are scanned at the same time
+	 * @param consumer the consumer. It is called from multiple threads at the same time, so it must be thread-safe.
+	 * @throws ServiceException if a problem occurs while scanning the table
+	 */
+	public <P extends PrimaryKey, T extends BusinessObject<P>> void forEachBOInParallel(Class<T> boClass,
+			int parallelism, Consumer<? super T> consumer) throws ServiceException {
+		scanInParallel(boClass, parallelism, range -> consumer);
+	}
+
+	/**
+	 * Finds all business objects of a class. The table is split in ranges of the primary key
+	 * which are scanned in parallel, each on its own connection. The DAO of the business object class
+	 * must support primary key ranges.
+	 * @param boClass the class of the business objects
+	 * @param parallelism the maximum number of ranges that are scanned at the same time
+	 * @return the business objects in the order of their primary key
+	 * @throws ServiceException if a problem occurs while scanning the table
+	 */
+	public <P extends PrimaryKey, T extends BusinessObject<P>> List<T> findAllBOsInParallel(Class<T> boClass,
+			int parallelism) throws ServiceException {
+		Map<Integer, List<T>> rangeToBOs = new ConcurrentHashMap<Integer, List<T>>();
+		int nrRanges = scanInParallel(boClass, parallelism, range -> {
+			List<T> bos = new ArrayList<T>();
+			rangeToBOs.put(range, bos);
+			return bos::add;
+		});
+
+		List<T> result = new ArrayList<T>();
+		for (int range=0; range<nrRanges; range++) {
+			result.addAll(rangeToBOs.get(range));
+		}
+		return result;
+	}
+
+	/**
+	 * Scans the table of a business object class in parallel.
+	 * @param boClass the class of the business objects
+	 * @param parallelism the maximum number of ranges that are scanned at the same time
+	 * @param rangeToConsumer gets the consumer for the business objects of a range, by the number of the range
+	 * @return the number of ranges
+	 * @throws ServiceException if a problem occurs while scanning the table
+	 */
+	private <P extends PrimaryKey, T extends BusinessObject<P>> int scanInParallel(Class<T> boClass,
+			int parallelism, IntFunction<Consumer<? super T>> rangeToConsumer) throws ServiceException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1.");
+		}
+    	Class<AbstractBusinessObjectDAO<P, T>> daoClass =
+    			(Class<AbstractBusinessObjectDAO<P, T>>) BO_CLASS_TO_DAO_MAP.get(boClass);
+        if (daoClass == null) {
+            throw new ServiceException("No DAO registered for business object class " + boClass + '.');
+        }
+
+        long[] pkRange;
+        try {
+        	Connection connection = createConnection();
+            pkRange = getDAO(daoClass, connection).getPKRange();
+            success = true;
+        } catch (Exception e) {
+        	throw new ServiceException("A problem occurred while determining the ranges of " + boClass + '.', e);
+        } finally {
+            releaseConnection(success);
+        }
+        if (pkRange == null) {
+        	return 0;
+        }
+
+        List<long[]> ranges = splitRange(pkRange[0], pkRange[1], PARTITIONS_PER_THREAD * parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()));
+        try {
+	        List<Future<?>> futures = new ArrayList<Future<?>>(ranges.size());
+	        for (int i=0; i<ranges.size(); i++) {
+	        	long[] range = ranges.get(i);
+	        	Consumer<? super T> consumer = rangeToConsumer.apply(i);
+	        	futures.add(executor.submit(() -> {
+	        		scanRange(daoClass, range[0], range[1], consumer);
+	        		return null;
+	        	}));
+	        }
+	        for (Future<?> future : futures) {
+	        	future.get();
+	        }
+	        return ranges.size();
+        } catch (ExecutionException e) {
+        	throw new ServiceException("A problem occurred while scanning " + boClass + " in parallel.", e.getCause());
+        } catch (InterruptedException e) {
+        	Thread.currentThread().interrupt();
+        	throw new ServiceException("Interrupted while scanning " + boClass + " in parallel.", e);
+        } finally {
+        	executor.shutdownNow();
+        }
+	}
+
+	private <P extends PrimaryKey, T extends BusinessObject<P>> void scanRange(
+			Class<AbstractBusinessObjectDAO<P, T>> daoClass, long from, long to, Consumer<? super T> consumer)
+			throws SQLException {
+		Connection connection = getConnectionPool().getConnection();
+		try {
+			getDAO(daoClass, connection).forEachBOInPKRange(from, to, consumer);
+		} finally {
+			try {
+				connection.rollback();
+			} finally {
+				getConnectionPool().releaseConnection(connection);
+			}
+		}
+	}
+
+	/**
+	 * Splits a range of values into smaller ranges of about equal size.
+	 * @param min the smallest value (inclusive)
+	 * @param max the largest value (inclusive)
+	 * @param maxNrRanges the maximum number of ranges
+	 * @return the ranges, ordered by their values. Each range is an array containing
+	 *         the smallest and largest value of the range.
+	 */
+	static List<long[]> splitRange(long min, long max, int maxNrRanges) {
+		BigInteger size = BigInteger.valueOf(max).subtract(BigInteger.valueOf(min)).add(BigInteger.ONE);
+		int nrRanges = size.min(BigInteger.valueOf(maxNrRanges)).intValue();
+		List<long[]> ranges = new ArrayList<long[]>(nrRanges);
+		long from = min;
+		for (int i=1; i<=nrRanges; i++) {
+			long to = i == nrRanges ? max : BigInteger.valueOf(min).add(
+					size.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(nrRanges))).longValue() - 1;
+			ranges.add(new long[] { from, to });
+			from = to + 1;
+		}
+		return ranges;
 	}
 
 	private <P extends PrimaryKey, T extends BusinessObject<P>> AbstractBusinessObjectDAO<P, T>
@@ -174,4 +493,25 @@ public class BusinessObjectService extends AbstractService {
         return daos;
     }
 
+	/**
+	 * Invalidates a cache when a DAO changes the table of the cached business objects.
+	 */
+	private static class CacheInvalidator implements BusinessObjectChangeListener {
+
+		private final BusinessObjectCache<PrimaryKey, ?> cache;
+
+		public CacheInvalidator(BusinessObjectCache<?, ?> cache) {
+			this.cache = (BusinessObjectCache<PrimaryKey, ?>) cache;
+		}
+
+		@Override
+		public void businessObjectChanged(PrimaryKey pk) {
+			cache.invalidate(pk);
+		}
+
+		@Override
+		public void allBusinessObjectsChanged() {
+			cache.invalidateAll();
+		}
+	}
 }
@@ -0,0 +1,189 @@
+package nl.gogognome.lib.dao;
+
+import nl.gogognome.lib.dao.SqlTemplateCache.Operation;
+import nl.gogognome.lib.test.database.TestTable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SqlTemplateCacheTest {
+
+    private final Table table = new TestTable();
+
+    @Test
+    public void sqlForSameOperationAndColumnsShouldBeCached() {
+        String sql = SqlTemplateCache.getSql(table, Operation.DELETE, null, ColumnValuePairs.of(TestTable.ID, 1));
+
+        assertEquals("DELETE FROM test WHERE ID=?", sql);
+        assertSame(sql, SqlTemplateCache.getSql(table, Operation.DELETE, null, ColumnValuePairs.of(TestTable.ID, 2)));
+    }
+
+    @Test
+    public void sqlForInsertShouldDependOnLiterals() {
+        ColumnValuePairs withLiteral = new ColumnValuePairs();
+        withLiteral.addLiteral(TestTable.ID, "default");
+        withLiteral.add(TestTable.INT, 1);
+        ColumnValuePairs withoutLiteral = new ColumnValuePairs();
+        withoutLiteral.add(TestTable.ID, 1);
+        withoutLiteral.add(TestTable.INT, 1);
+
+        assertEquals("INSERT INTO test (ID, INT_COL) VALUES (default, ?)",
+                SqlTemplateCache.getSql(table, Operation.INSERT, withLiteral, null));
+        assertEquals("INSERT INTO test (ID, INT_COL) VALUES (?, ?)",
+                SqlTemplateCache.getSql(table, Operation.INSERT, withoutLiteral, null));
+    }
+
+    @Test
+    public void sqlForUpdateShouldHaveParametersForColumnsFollowedByWhereColumns() {
+        ColumnValuePairs colValues = new ColumnValuePairs();
+        colValues.add(TestTable.INT, 1);
+        colValues.add(TestTable.STRING_NOT_NULL, "abc");
+
+        assertEquals("UPDATE test SET INT_COL=?, STRING_NOT_NULL=? WHERE ID=?",
+                SqlTemplateCache.getSql(table, Operation.UPDATE, colValues, ColumnValuePairs.of(TestTable.ID, 1)));
+    }
+
+    @Test
+    public void sqlForFindShouldSelectAllColumnsInTableOrder() {
+        assertEquals("SELECT ID, INT_COL, BOOL_COL, DATE_COL, LONG_COL, STRING_NOT_NULL FROM test WHERE ID=?",
+                SqlTemplateCache.getSql(table, Operation.FIND, null, ColumnValuePairs.of(TestTable.ID, 1)));
+        assertEquals("SELECT ID, INT_COL, BOOL_COL, DATE_COL, LONG_COL, STRING_NOT_NULL FROM test",
+                SqlTemplateCache.getSql(table, Operation.FIND, null, new ColumnValuePairs()));
+    }
+
+    @Test
+    public void sqlForAggregatesShouldOnlySelectTheAggregate() {
+        ColumnValuePairs filter = ColumnValuePairs.of(TestTable.STRING_NOT_NULL, "abc");
+
+        assertEquals("SELECT 1 FROM test WHERE STRING_NOT_NULL=?",
+                SqlTemplateCache.getSql(table, Operation.EXISTS, null, filter));
+        assertEquals("SELECT COUNT(*) FROM test",
+                SqlTemplateCache.getSql(table, Operation.COUNT, null, new ColumnValuePairs()));
+        assertEquals("SELECT SUM(INT_COL) FROM test WHERE STRING_NOT_NULL=?",
+                SqlTemplateCache.getSql(table, Operation.SUM, ColumnValuePairs.of(TestTable.INT, null), filter));
+        assertEquals("SELECT MAX(LONG_COL) FROM test WHERE STRING_NOT_NULL=?",
+                SqlTemplateCache.getSql(table, Operation.MAX, ColumnValuePairs.of(TestTable.LONG, null), filter));
+    }
+
+    @Test
+    public void upsertSqlShouldBeCreatedByPluginAndCached() throws Exception {
+        ColumnValuePairs colValues = new ColumnValuePairs();
+        colValues.add(TestTable.ID, 1);
+        colValues.add(TestTable.INT, 2);
+        ColumnValuePairs keyColumns = ColumnValuePairs.of(TestTable.ID, 1);
+        DBMSSpecificDAOPlugin hsqlDbPlugin = new HsqlDbDAOPlugin(null, table);
+        DBMSSpecificDAOPlugin mySqlPlugin = new MySqlDAOPlugin(null, table);
+
+        String sql = SqlTemplateCache.getUpsertSql(table, hsqlDbPlugin, colValues, keyColumns);
+        assertEquals("MERGE INTO test t USING (VALUES(CAST(? AS INTEGER), CAST(? AS INTEGER))) AS vals(ID, INT_COL) ON t.ID = vals.ID"
+                + " WHEN MATCHED THEN UPDATE SET t.INT_COL = vals.INT_COL"
+                + " WHEN NOT MATCHED THEN INSERT (ID, INT_COL) VALUES (vals.ID, vals.INT_COL)", sql);
+        assertSame(sql, SqlTemplateCache.getUpsertSql(table, hsqlDbPlugin, colValues, keyColumns));
+        assertEquals("INSERT INTO test (ID, INT_COL) VALUES (?, ?) ON DUPLICATE KEY UPDATE INT_COL = VALUES(INT_COL)",
+                SqlTemplateCache.getUpsertSql(table, mySqlPlugin, colValues, keyColumns));
+    }
+
+    @Test
+    public void criteriaQueryShouldBeCompiledOncePerShape() {
+        DBMSSpecificDAOPlugin plugin = new HsqlDbDAOPlugin(null, table);
+        OrderByClause orderByClause = new OrderByClause();
+        orderByClause.addDescending(TestTable.INT);
+
+        CriteriaQuery query = SqlTemplateCache.getCriteriaQuery(table, plugin, Operation.COUNT, new Criteria()
+                .between(TestTable.INT, 1, 5)
+                .in(TestTable.ID, Arrays.asList(1, 2))
+                .or(new Criteria().isNull(TestTable.LONG), new Criteria().like(TestTable.STRING_NOT_NULL, "a%"))
+                .orderBy(orderByClause)
+                .limit(3));
+        assertEquals("SELECT COUNT(*) FROM test WHERE INT_COL BETWEEN ? AND ? AND ID IN (?, ?)"
+                + " AND ((LONG_COL IS NULL) OR (STRING_NOT_NULL LIKE ?))", query.getSql());
+
+        query = SqlTemplateCache.getCriteriaQuery(table, plugin, Operation.FIND, new Criteria()
+                .greaterOrEqual(TestTable.INT, 1).orderBy(orderByClause).limit(3));
+        assertEquals("SELECT ID, INT_COL, BOOL_COL, DATE_COL, LONG_COL, STRING_NOT_NULL FROM test"
+                + " WHERE INT_COL>=? ORDER BY INT_COL DESC FETCH FIRST ? ROWS ONLY", query.getSql());
+        assertSame(query, SqlTemplateCache.getCriteriaQuery(table, plugin, Operation.FIND, new Criteria()
+                .greaterOrEqual(TestTable.INT, 2).orderBy(orderByClause).limit(10)));
+    }
+
+    @Test
+    public void inListsShouldBePaddedToPowerOfTwo() {
+        DBMSSpecificDAOPlugin plugin = new HsqlDbDAOPlugin(null, table);
+
+        CriteriaQuery query = SqlTemplateCache.getCriteriaQuery(table, plugin, Operation.COUNT, new Criteria()
+                .in(TestTable.ID, Arrays.asList(1, 2, 3)));
+        assertEquals("SELECT COUNT(*) FROM test WHERE ID IN (?, ?, ?, ?)", query.getSql());
+        assertSame(query, SqlTemplateCache.getCriteriaQuery(table, plugin, Operation.COUNT, new Criteria()
+                .in(TestTable.ID, Arrays.asList(1, 2, 3, 4))));
+    }
+
+    @Test
+    public void inListsShouldNotBePaddedBeyondMaxInListSize() {
+        DBMSSpecificDAOPlugin plugin = createPluginWithMaxInListSize(3);
+
+        CriteriaQuery query = SqlTemplateCache.getCriteriaQuery(table, plugin, Operation.COUNT, new Criteria()
+                .in(TestTable.ID, Arrays.asList(1, 2, 3)));
+        assertEquals("SELECT COUNT(*) FROM test WHERE ID IN (?, ?, ?)", query.getSql());
+    }
+
+    @Test
+    public void inListsLongerThanMaxInListSizeShouldBeSplit() {
+        DBMSSpecificDAOPlugin plugin = createPluginWithMaxInListSize(3);
+
+        Criteria criteria = new Criteria().in(TestTable.ID, Arrays.asList(1, 2, 3, 4));
+        CriteriaQuery query = SqlTemplateCache.getCriteriaQuery(table, plugin, Operation.COUNT, criteria);
+        assertEquals("SELECT COUNT(*) FROM test WHERE (ID IN (?, ?, ?) OR ID IN (?, ?, ?))", query.getSql());
+
+        List<Object> values = new ArrayList<Object>();
+        criteria.addParameterValues(values, plugin.getMaxInListSize());
+        assertEquals(Arrays.<Object>asList(1, 2, 3, 4, 4, 4), values);
+    }
+
+    private DBMSSpecificDAOPlugin createPluginWithMaxInListSize(int maxInListSize) {
+        return new HsqlDbDAOPlugin(null, table) {
+            @Override
+            public int getMaxInListSize() {
+                return maxInListSize;
+            }
+        };
+    }
+
+    @Test
+    public void keysetConditionForOneColumn() {
+        OrderByClause orderByClause = OrderByClause.ascending(TestTable.ID);
+
+        assertEquals("ID > ?", SqlTemplateCache.createKeysetCondition(orderByClause));
+        assertEquals(Arrays.asList(TestTable.ID), SqlTemplateCache.getKeysetParameterColumns(orderByClause));
+    }
+
+    @Test
+    public void keysetConditionForMultipleColumnsWithMixedDirections() {
+        OrderByClause orderByClause = new OrderByClause();
+        orderByClause.addDescending(TestTable.INT);
+        orderByClause.addAscending(TestTable.ID);
+
+        assertEquals("INT_COL <= ? AND (INT_COL < ? OR (INT_COL = ? AND ID > ?))",
+                SqlTemplateCache.createKeysetCondition(orderByClause));
+        assertEquals(Arrays.asList(TestTable.INT, TestTable.INT, TestTable.INT, TestTable.ID),
+                SqlTemplateCache.getKeysetParameterColumns(orderByClause));
+    }
+
+    @Test
+    public void inConditionForSingleColumnKeys() {
+        assertEquals("ID IN (?, ?, ?)",
+                SqlTemplateCache.createInCondition(Arrays.asList(TestTable.ID), 3, true));
+    }
+
+    @Test
+    public void inConditionForCompositeKeys() {
+        assertEquals("(ID, INT_COL) IN ((?, ?), (?, ?))",
+                SqlTemplateCache.createInCondition(Arrays.asList(TestTable.ID, TestTable.INT), 2, true));
+        assertEquals("(ID = ? AND INT_COL = ?) OR (ID = ? AND INT_COL = ?)",
+                SqlTemplateCache.createInCondition(Arrays.asList(TestTable.ID, TestTable.INT), 2, false));
+    }
+}
@@ -0,0 +1,226 @@
+package nl.gogognome.lib.dbconnection;
+
+import org.hsqldb.jdbc.JDBCPreparedStatement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolTest {
+
+    private final ConnectionPool connectionPool = new ConnectionPool();
+    private Connection connection;
+
+    @Before
+    public void initConnectionPool() throws Exception {
+        connectionPool.setJdbcConnectionParameters("jdbc:hsqldb:mem:connectionPoolTest;shutdown=true", "SA", "");
+    }
+
+    @After
+    public void releaseConnection() throws Exception {
+        connectionPool.releaseConnection(connection);
+    }
+
+    @Test
+    public void closedPreparedStatementShouldBeReusedForSameQuery() throws Exception {
+        connection = connectionPool.getConnection();
+
+        PreparedStatement statement = connection.prepareStatement("VALUES (1)");
+        statement.close();
+
+        assertSame(unwrap(statement), unwrap(connection.prepareStatement("VALUES (1)")));
+    }
+
+    @Test
+    public void whenCachingIsDisabledPreparedStatementShouldNotBeReused() throws Exception {
+        connectionPool.setMaxCachedPreparedStatements(0);
+        connection = connectionPool.getConnection();
+
+        PreparedStatement statement = connection.prepareStatement("VALUES (1)");
+        statement.close();
+
+        assertNotSame(unwrap(statement), unwrap(connection.prepareStatement("VALUES (1)")));
+    }
+
+    @Test
+    public void closingWrapperTwiceShouldNotCloseReusedStatement() throws Exception {
+        connection = connectionPool.getConnection();
+
+        PreparedStatement oldWrapper = PreparedStatementWrapper.preparedStatement(connection, "VALUES (?)");
+        oldWrapper.close();
+        PreparedStatement newWrapper = PreparedStatementWrapper.preparedStatement(connection, "VALUES (?)");
+        oldWrapper.close();
+
+        assertTrue(oldWrapper.isClosed());
+        assertFalse(newWrapper.isClosed());
+        newWrapper.setInt(1, 123);
+        ResultSet resultSet = newWrapper.executeQuery();
+        assertTrue(resultSet.next());
+        assertEquals(123, resultSet.getInt(1));
+        resultSet.close();
+        newWrapper.close();
+    }
+
+    @Test
+    public void prewarmShouldOpenIdleConnections() throws Exception {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.setNrPrewarmedConnections(3);
+        connectionPool.setConfig(config);
+
+        connectionPool.prewarm();
+
+        assertEquals(3, connectionPool.getNrIdleConnections());
+        assertEquals(0, connectionPool.getNrActiveConnections());
+    }
+
+    @Test
+    public void whenMaxActiveConnectionsAreBorrowedGetConnectionShouldFailAfterMaxWait() throws Exception {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.setMaxActive(1);
+        config.setMaxWait(50);
+        connectionPool.setConfig(config);
+        connection = connectionPool.getConnection();
+
+        try {
+            connectionPool.getConnection();
+            fail("Expected an exception because the pool is exhausted");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void connectionThatExceededMaxLifetimeShouldBeReplaced() throws Exception {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.setMaxLifetime(20);
+        config.setValidationQuery("VALUES (1)");
+        config.setTestOnBorrow(true);
+        connectionPool.setConfig(config);
+
+        connection = connectionPool.getConnection();
+        long sessionId = getSessionId(connection);
+        connectionPool.releaseConnection(connection);
+        connection = connectionPool.getConnection();
+        assertEquals(sessionId, getSessionId(connection));
+        connectionPool.releaseConnection(connection);
+
+        Thread.sleep(50);
+        connection = connectionPool.getConnection();
+        assertNotEquals(sessionId, getSessionId(connection));
+    }
+
+    @Test
+    public void metricsShouldCountBorrowsAndHoldTimeOutliers() throws Exception {
+        ConnectionPoolMetrics metrics = connectionPool.getMetrics();
+        metrics.setOutlierThreshold(20, TimeUnit.MILLISECONDS);
+
+        connection = connectionPool.getConnection();
+        assertEquals(1, metrics.getActiveConnections());
+        connectionPool.releaseConnection(connection);
+
+        connection = connectionPool.getConnection();
+        Thread.sleep(30);
+        connectionPool.releaseConnection(connection);
+
+        ConnectionPoolSnapshot snapshot = metrics.getSnapshot();
+        assertEquals(2, snapshot.getBorrowCount());
+        assertEquals(1, snapshot.getCreationCount());
+        assertEquals(0, snapshot.getActiveConnections());
+        assertEquals(1, snapshot.getIdleConnections());
+        assertTrue(snapshot.getHoldTimeMax() >= TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(1, snapshot.getHoldTimeOutliers().size());
+        assertEquals(Thread.currentThread().getName(), snapshot.getHoldTimeOutliers().get(0).getBorrower());
+    }
+
+    @Test
+    public void metricsShouldCountBorrowTimeouts() throws Exception {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.setMaxActive(1);
+        config.setMaxWait(10);
+        connectionPool.setConfig(config);
+        connection = connectionPool.getConnection();
+
+        try {
+            connectionPool.getConnection();
+            fail("Expected an exception because the pool is exhausted");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        ConnectionPoolSnapshot snapshot = connectionPool.getMetrics().getSnapshot();
+        assertEquals(1, snapshot.getBorrowTimeoutCount());
+        assertEquals(0, snapshot.getBorrowFailureCount());
+        assertEquals(0, snapshot.getPendingBorrowers());
+        assertTrue(snapshot.getBorrowWaitMax() >= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void metricsShouldCountFailedBorrowsSeparatelyFromTimeouts() throws Exception {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.setValidationQuery("SELECT * FROM NON_EXISTING_TABLE");
+        config.setTestOnBorrow(true);
+        connectionPool.setConfig(config);
+
+        try {
+            connectionPool.getConnection();
+            fail("Expected an exception because the connection cannot be validated");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        ConnectionPoolSnapshot snapshot = connectionPool.getMetrics().getSnapshot();
+        assertEquals(0, snapshot.getBorrowTimeoutCount());
+        assertEquals(1, snapshot.getBorrowFailureCount());
+        assertEquals(1, snapshot.getValidationFailureCount());
+    }
+
+    @Test
+    public void metricsShouldBeReadableViaJmx() throws Exception {
+        connectionPool.getMetrics().registerMBean("connectionPoolTest");
+        connection = connectionPool.getConnection();
+
+        ObjectName name = new ObjectName("nl.gogognome.lib:type=ConnectionPool,name=\"connectionPoolTest\"");
+        assertEquals(1, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ActiveConnections"));
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    @Test
+    public void dataSourceShouldBorrowFromPoolAndSurviveReconfiguration() throws Exception {
+        DataSource dataSource = connectionPool.getDataSource();
+        connection = dataSource.getConnection();
+        assertFalse(connection.getAutoCommit());
+        assertEquals(1, connectionPool.getNrActiveConnections());
+        connection.close();
+        assertEquals(1, connectionPool.getNrIdleConnections());
+
+        connectionPool.setConfig(new ConnectionPoolConfig());
+        connection = dataSource.getConnection();
+        assertEquals(1, connectionPool.getNrActiveConnections());
+        assertSame(connectionPool, dataSource.unwrap(ConnectionPool.class));
+    }
+
+    private long getSessionId(Connection connection) throws Exception {
+        PreparedStatement statement = connection.prepareStatement("CALL SESSION_ID()");
+        ResultSet resultSet = statement.executeQuery();
+        assertTrue(resultSet.next());
+        long sessionId = resultSet.getLong(1);
+        resultSet.close();
+        statement.close();
+        return sessionId;
+    }
+
+    private PreparedStatement unwrap(PreparedStatement statement) throws Exception {
+        return statement.unwrap(JDBCPreparedStatement.class);
+    }
+}
@@ -0,0 +1,67 @@
+package nl.gogognome.lib.dbconnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import nl.gogognome.lib.dbconnection.PreparedStatementWrapper.ParameterCapture;
+
+import static org.junit.Assert.*;
+
+public class PreparedStatementWrapperTest {
+
+    private final ConnectionPool connectionPool = new ConnectionPool();
+    private Connection connection;
+
+    @Before
+    public void initConnectionPool() throws Exception {
+        connectionPool.setJdbcConnectionParameters("jdbc:hsqldb:mem:preparedStatementWrapperTest;shutdown=true", "SA", "");
+        connection = connectionPool.getConnection();
+    }
+
+    @After
+    public void releaseConnection() throws Exception {
+        PreparedStatementWrapper.setParameterCapture(ParameterCapture.LAZY);
+        connectionPool.releaseConnection(connection);
+    }
+
+    @Test
+    public void capturedParametersShouldBeRendered() throws Exception {
+        PreparedStatementWrapper.setParameterCapture(ParameterCapture.LAZY);
+
+        PreparedStatement statement = PreparedStatementWrapper.preparedStatement(connection, "VALUES (?, ?, ?, ?, ?)");
+        statement.setInt(1, 42);
+        statement.setLong(2, 1234567890123L);
+        statement.setDouble(3, 1.5);
+        statement.setBoolean(4, true);
+        statement.setString(5, "abc");
+
+        assertEquals("VALUES (42, 1234567890123, 1.5, true, abc)", statement.toString());
+        statement.close();
+    }
+
+    @Test
+    public void parametersThatAreNotSetShouldBeRenderedAsQuestionMarks() throws Exception {
+        PreparedStatementWrapper.setParameterCapture(ParameterCapture.LAZY);
+
+        PreparedStatement statement = PreparedStatementWrapper.preparedStatement(connection, "VALUES (?, ?)");
+        statement.setNull(2, java.sql.Types.INTEGER);
+
+        assertEquals("VALUES (?, null)", statement.toString());
+        statement.close();
+    }
+
+    @Test
+    public void whenCaptureIsNoneParametersShouldNotBeRendered() throws Exception {
+        PreparedStatementWrapper.setParameterCapture(ParameterCapture.NONE);
+
+        PreparedStatement statement = PreparedStatementWrapper.preparedStatement(connection, "VALUES (?)");
+        statement.setInt(1, 42);
+
+        assertEquals("VALUES (?)", statement.toString());
+        statement.close();
+    }
+}
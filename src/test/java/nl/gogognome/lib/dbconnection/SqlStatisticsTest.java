@@ -0,0 +1,96 @@
+package nl.gogognome.lib.dbconnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+
+public class SqlStatisticsTest {
+
+    private final ConnectionPool connectionPool = new ConnectionPool();
+    private Connection connection;
+
+    @Before
+    public void initConnectionPool() throws Exception {
+        connectionPool.setJdbcConnectionParameters("jdbc:hsqldb:mem:sqlStatisticsTest;shutdown=true", "SA", "");
+        connection = connectionPool.getConnection();
+        SqlStatistics.getInstance().reset();
+    }
+
+    @After
+    public void releaseConnection() throws Exception {
+        connectionPool.releaseConnection(connection);
+    }
+
+    @Test
+    public void normalizeShouldCollapseWhiteSpaceAndParameterLists() {
+        assertEquals("SELECT * FROM t WHERE a IN (?...) AND b=?",
+                SqlStatistics.normalize(" SELECT *\n  FROM t WHERE a IN (?, ?,?) AND b=?"));
+        assertEquals("SELECT * FROM t WHERE (a, b) IN ((?...)...)",
+                SqlStatistics.normalize("SELECT * FROM t WHERE (a, b) IN ((?, ?), (?, ?), (?, ?))"));
+    }
+
+    @Test
+    public void executionsShouldBeRecordedPerNormalizedSql() throws Exception {
+        PreparedStatement statement = PreparedStatementWrapper.preparedStatement(connection, "CREATE TABLE t (a INT)");
+        statement.execute();
+        statement.close();
+        for (int i=1; i<=3; i++) {
+            statement = PreparedStatementWrapper.preparedStatement(connection, "INSERT INTO t VALUES (?)");
+            statement.setInt(1, i);
+            statement.addBatch();
+            statement.setInt(1, 10 * i);
+            statement.addBatch();
+            statement.executeBatch();
+            statement.close();
+        }
+        statement = PreparedStatementWrapper.preparedStatement(connection, "VALUES (1 / ?)");
+        statement.setInt(1, 0);
+        try {
+            statement.executeQuery();
+            fail("Expected an exception");
+        } catch (SQLException e) {
+            // expected
+        }
+        statement.close();
+
+        StatementStatistics statistics = SqlStatistics.getInstance().getStatement("INSERT INTO t VALUES (?)");
+        assertEquals(3, statistics.getExecutionCount());
+        assertEquals(0, statistics.getErrorCount());
+        assertEquals(6, statistics.getRowCount());
+        assertTrue(statistics.getMedianLatency() <= statistics.getP99Latency());
+        assertTrue(statistics.getP99Latency() <= statistics.getMaxLatency());
+        assertTrue(statistics.getMaxLatency() > 0);
+
+        assertEquals(1, SqlStatistics.getInstance().getStatement("VALUES (1 / ?)").getErrorCount());
+        assertEquals(5, SqlStatistics.getInstance().getExecutionCount());
+        assertEquals(3, SqlStatistics.getInstance().getStatements().size());
+
+        SqlStatistics.getInstance().registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(5L, server.getAttribute(new ObjectName(SqlStatistics.OBJECT_NAME), "ExecutionCount"));
+        assertEquals(3, ((Object[]) server.getAttribute(new ObjectName(SqlStatistics.OBJECT_NAME), "Statements")).length);
+    }
+
+    @Test
+    public void percentilesShouldBeEstimatedWithinBucketPrecision() {
+        SqlStatistics.Counters counters = new SqlStatistics.Counters("sql");
+        for (int i=1; i<=100; i++) {
+            counters.record(i * 1000L, 0, false);
+        }
+
+        StatementStatistics statistics = counters.snapshot();
+        assertEquals(100000, statistics.getMaxLatency());
+        assertTrue(statistics.getMedianLatency() >= 50000 && statistics.getMedianLatency() <= 50000 * 1.25);
+        assertTrue(statistics.getP99Latency() >= 99000 && statistics.getP99Latency() <= 100000);
+    }
+}
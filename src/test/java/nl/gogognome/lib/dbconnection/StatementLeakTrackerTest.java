@@ -0,0 +1,71 @@
+package nl.gogognome.lib.dbconnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import static org.junit.Assert.*;
+
+public class StatementLeakTrackerTest {
+
+    private final ConnectionPool connectionPool = new ConnectionPool();
+    private Connection connection;
+
+    @Before
+    public void initConnectionPool() throws Exception {
+        connectionPool.setJdbcConnectionParameters("jdbc:hsqldb:mem:statementLeakTrackerTest;shutdown=true", "SA", "");
+        connection = connectionPool.getConnection();
+    }
+
+    @After
+    public void releaseConnection() throws Exception {
+        StatementLeakTracker.setMode(StatementLeakTracker.Mode.SAMPLED);
+        connectionPool.releaseConnection(connection);
+    }
+
+    @Test
+    public void closedStatementShouldNotBeTrackedAnymore() throws Exception {
+        StatementLeakTracker.setMode(StatementLeakTracker.Mode.ALWAYS);
+        int nrTrackedStatements = StatementLeakTracker.getNrTrackedStatements();
+
+        PreparedStatement statement = PreparedStatementWrapper.preparedStatement(connection, "VALUES (1)");
+        assertEquals(nrTrackedStatements + 1, StatementLeakTracker.getNrTrackedStatements());
+        statement.close();
+        assertEquals(nrTrackedStatements, StatementLeakTracker.getNrTrackedStatements());
+    }
+
+    @Test
+    public void whenTrackingIsOffStatementShouldNotBeTracked() throws Exception {
+        StatementLeakTracker.setMode(StatementLeakTracker.Mode.OFF);
+        int nrTrackedStatements = StatementLeakTracker.getNrTrackedStatements();
+
+        PreparedStatement statement = PreparedStatementWrapper.preparedStatement(connection, "VALUES (1)");
+        assertEquals(nrTrackedStatements, StatementLeakTracker.getNrTrackedStatements());
+        statement.close();
+    }
+
+    @Test
+    public void leakedStatementShouldBeDetected() throws Exception {
+        StatementLeakTracker.setMode(StatementLeakTracker.Mode.ALWAYS);
+        long nrLeaks = StatementLeakTracker.getNrLeaks();
+
+        PreparedStatementWrapper.preparedStatement(connection, "VALUES (2)");
+
+        for (int i=0; i<100 && StatementLeakTracker.getNrLeaks() == nrLeaks; i++) {
+            System.gc();
+            Thread.sleep(10);
+            StatementLeakTracker.expungeLeakedStatements();
+        }
+        assertEquals(nrLeaks + 1, StatementLeakTracker.getNrLeaks());
+    }
+
+    @Test
+    public void invalidModePropertyShouldFallBackToSampled() {
+        assertEquals(StatementLeakTracker.Mode.ALWAYS, StatementLeakTracker.parseMode("always"));
+        assertEquals(StatementLeakTracker.Mode.SAMPLED, StatementLeakTracker.parseMode("alwayz"));
+        assertEquals(StatementLeakTracker.Mode.SAMPLED, StatementLeakTracker.parseMode(null));
+    }
+}
@@ -0,0 +1,68 @@
+package nl.gogognome.lib.service;
+
+import nl.gogognome.lib.test.database.TestBO;
+import nl.gogognome.lib.test.database.TestPK;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BusinessObjectCacheTest {
+
+    private final BusinessObjectCache<TestPK, TestBO> cache = new BusinessObjectCache<>(2, 0, TimeUnit.SECONDS, TestBO::copy);
+
+    @Test
+    public void cachedBOShouldBeReturnedAndCountedAsHit() {
+        TestBO bo = new TestBO(new TestPK(1));
+        cache.put(bo, cache.getGeneration());
+
+        assertEquals(bo, cache.get(new TestPK(1)));
+        assertNull(cache.get(new TestPK(2)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void changesToReturnedBOShouldNotChangeCachedBO() {
+        TestBO bo = new TestBO(new TestPK(1));
+        cache.put(bo, cache.getGeneration());
+        bo.setIntValue(1);
+        cache.get(new TestPK(1)).setIntValue(2);
+
+        assertNotSame(bo, cache.get(new TestPK(1)));
+        assertEquals(0, cache.get(new TestPK(1)).getIntValue());
+    }
+
+    @Test
+    public void leastRecentlyUsedBOShouldBeEvicted() {
+        cache.put(new TestBO(new TestPK(1)), cache.getGeneration());
+        cache.put(new TestBO(new TestPK(2)), cache.getGeneration());
+        cache.get(new TestPK(1));
+        cache.put(new TestBO(new TestPK(3)), cache.getGeneration());
+
+        assertNotNull(cache.get(new TestPK(1)));
+        assertNull(cache.get(new TestPK(2)));
+        assertNotNull(cache.get(new TestPK(3)));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void expiredBOShouldNotBeReturned() throws Exception {
+        BusinessObjectCache<TestPK, TestBO> cache = new BusinessObjectCache<>(2, 1, TimeUnit.MILLISECONDS, TestBO::copy);
+        cache.put(new TestBO(new TestPK(1)), cache.getGeneration());
+        Thread.sleep(5);
+
+        assertNull(cache.get(new TestPK(1)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void boReadBeforeInvalidationShouldNotBeCached() {
+        long generation = cache.getGeneration();
+        cache.invalidate(new TestPK(1));
+        cache.put(new TestBO(new TestPK(1)), generation);
+
+        assertNull(cache.get(new TestPK(1)));
+    }
+}
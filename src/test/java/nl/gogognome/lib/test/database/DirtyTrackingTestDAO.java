@@ -0,0 +1,35 @@
+/*
+   Copyright 2011 Sander Kooijmans
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.gogognome.lib.test.database;
+
+import java.sql.Connection;
+
+/**
+ * DAO for the test business object that only updates changed columns.
+ *
+ * @author Sander Kooijmans
+ */
+public class DirtyTrackingTestDAO extends TestDAO {
+
+	public DirtyTrackingTestDAO(Connection connection) {
+		super(connection);
+	}
+
+	@Override
+	protected boolean isDirtyTrackingEnabled() {
+		return true;
+	}
+}
@@ -35,6 +35,16 @@ public class TestBO extends AbstractBusinessObject<TestPK> {
 		super(pk);
 	}
 
+	public TestBO copy() {
+		TestBO copy = new TestBO(getPK());
+		copy.intValue = intValue;
+		copy.boolValue = boolValue;
+		copy.dateValue = dateValue != null ? (Date) dateValue.clone() : null;
+		copy.longValue = longValue;
+		copy.stringValue = stringValue;
+		return copy;
+	}
+
 	public int getIntValue() {
 		return intValue;
 	}
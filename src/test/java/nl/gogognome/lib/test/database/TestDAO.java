@@ -18,10 +18,16 @@ package nl.gogognome.lib.test.database;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import nl.gogognome.lib.dao.AbstractBusinessObjectDAO;
 import nl.gogognome.lib.dao.ColumnValuePairs;
+import nl.gogognome.lib.dao.ColumnarTable;
+import nl.gogognome.lib.dao.Criteria;
 import nl.gogognome.lib.dao.OrderByClause;
+import nl.gogognome.lib.dao.ProjectedRow;
+import nl.gogognome.lib.dao.Projection;
 import nl.gogognome.lib.dao.Record;
 
 /**
@@ -55,6 +61,58 @@ public class TestDAO extends AbstractBusinessObjectDAO<TestPK, TestBO> {
 		return findAllBOs(OrderByClause.ascending(TestTable.INT));
 	}
 
+	public void forEachBO(Consumer<TestBO> consumer) throws SQLException {
+		forEachBO(OrderByClause.ascending(TestTable.INT), consumer);
+	}
+
+	public Stream<TestBO> streamAllBOs() throws SQLException {
+		return streamAllBOs(OrderByClause.ascending(TestTable.INT));
+	}
+
+	public List<TestBO> findPageOrderedByIntDescending(TestBO lastSeenBO, int limit) throws SQLException {
+		OrderByClause orderByClause = new OrderByClause();
+		orderByClause.addDescending(TestTable.INT);
+		orderByClause.addAscending(TestTable.ID);
+		return findPageAfter(orderByClause, lastSeenBO, limit);
+	}
+
+	public List<TestBO> findWithIntValueBetweenOrStringValue(int from, int to, String stringValue, int limit)
+			throws SQLException {
+		return findByCriteria(new Criteria()
+				.or(new Criteria().between(TestTable.INT, from, to), new Criteria().equal(TestTable.STRING_NOT_NULL, stringValue))
+				.orderBy(OrderByClause.ascending(TestTable.INT))
+				.limit(limit));
+	}
+
+	public List<ProjectedRow> findIntAndStringValues(int minIntValue) throws SQLException {
+		return findProjection(new Projection(TestTable.INT, TestTable.STRING_NOT_NULL, TestTable.LONG),
+				new Criteria().greaterOrEqual(TestTable.INT, minIntValue).orderBy(OrderByClause.ascending(TestTable.INT)));
+	}
+
+	public ColumnarTable loadAllColumnar() throws SQLException {
+		return loadColumnar(new Criteria());
+	}
+
+	public int deleteWithStringValue(String stringValue) throws SQLException {
+		return deleteByWhereClause(ColumnValuePairs.of(TestTable.STRING_NOT_NULL, stringValue));
+	}
+
+	public boolean existsWithStringValue(String stringValue) throws SQLException {
+		return exists(ColumnValuePairs.of(TestTable.STRING_NOT_NULL, stringValue));
+	}
+
+	public long countWithStringValue(String stringValue) throws SQLException {
+		return count(ColumnValuePairs.of(TestTable.STRING_NOT_NULL, stringValue));
+	}
+
+	public Number sumOfIntValues() throws SQLException {
+		return sum(TestTable.INT, new ColumnValuePairs());
+	}
+
+	public Integer maxIntValue() throws SQLException {
+		return (Integer) max(TestTable.INT, new ColumnValuePairs());
+	}
+
 	@Override
 	public TestBO convert(Record record) throws SQLException {
 		TestPK pk = new TestPK(record.getInt(TestTable.ID));
@@ -16,13 +16,41 @@
 package nl.gogognome.lib.test.database;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
+import nl.gogognome.lib.dao.AbstractBusinessObjectDAO;
+import nl.gogognome.lib.dao.ColumnarTable;
+import nl.gogognome.lib.dao.CsvImporter;
+import nl.gogognome.lib.dao.ProjectedRow;
+import nl.gogognome.lib.dao.TableExporter;
+import nl.gogognome.lib.dbconnection.ConnectionPool;
+import nl.gogognome.lib.service.BusinessObjectCache;
+import nl.gogognome.lib.service.BusinessObjectService;
 import nl.gogognome.lib.util.DateUtil;
+import nl.gogognome.lib.util.Factory;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * This class tests the database specific code of the gogolib.
@@ -31,6 +59,9 @@ import org.junit.Test;
  */
 public class TestDatabase extends AbstractDatabaseTest {
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	@Test
 	public void createAndGetTestBO() throws Exception {
 		TestBO bo = new TestBO(null);
@@ -70,4 +101,499 @@ public class TestDatabase extends AbstractDatabaseTest {
 			assertEquals(i, testBOs.get(i).getIntValue());
 		}
 	}
+
+	@Test
+	public void createListOfBOsInBatches() throws Exception {
+		List<TestBO> bos = new ArrayList<TestBO>();
+		for (int i=0; i<10; i++) {
+			TestBO bo = new TestBO(null);
+			bo.setDateValue(DateUtil.createDate(2011, 10, 5));
+			bo.setIntValue(i);
+			bo.setStringValue("Test" + i);
+			bos.add(bo);
+		}
+
+		List<TestBO> createdBOs = testService.createTestBOs(bos, 3);
+		assertEquals(10, createdBOs.size());
+		for (int i=0; i<10; i++) {
+			assertNotNull(createdBOs.get(i).getPK());
+			TestBO actualBO = boService.findByPK(createdBOs.get(i).getPK());
+			assertEquals(i, actualBO.getIntValue());
+			assertEquals("Test" + i, actualBO.getStringValue());
+		}
+	}
+
+	@Test
+	public void forEachBOShouldPassAllBOsToConsumer() throws Exception {
+		createTestBOs(5);
+
+		assertEquals(0 + 1 + 2 + 3 + 4, testService.sumIntValuesOfAllTestBOs());
+	}
+
+	@Test
+	public void streamAllBOsShouldReturnAllBOsInOrder() throws Exception {
+		createTestBOs(3);
+
+		assertEquals(Arrays.asList("Test0", "Test1", "Test2"), testService.findStringValuesOfAllTestBOs());
+	}
+
+	@Test
+	public void findPageShouldReturnBOsFollowingLastSeenBO() throws Exception {
+		createTestBOs(7);
+
+		List<Integer> intValues = new ArrayList<Integer>();
+		List<TestBO> page = testService.findPageOfTestBOs(null, 3);
+		while (!page.isEmpty()) {
+			assertTrue(page.size() <= 3);
+			for (TestBO bo : page) {
+				intValues.add(bo.getIntValue());
+			}
+			page = testService.findPageOfTestBOs(page.get(page.size() - 1), 3);
+		}
+
+		assertEquals(Arrays.asList(6, 5, 4, 3, 2, 1, 0), intValues);
+	}
+
+	@Test
+	public void findByPKsShouldReturnExistingBOs() throws Exception {
+		List<TestBO> bos = createTestBOs(5);
+
+		Map<TestPK, TestBO> pkToBO = boService.findByPKs(Arrays.asList(
+				bos.get(0).getPK(), bos.get(2).getPK(), bos.get(3).getPK(), new TestPK(-1)));
+
+		assertEquals(3, pkToBO.size());
+		assertEquals(0, pkToBO.get(bos.get(0).getPK()).getIntValue());
+		assertEquals(2, pkToBO.get(bos.get(2).getPK()).getIntValue());
+		assertEquals(3, pkToBO.get(bos.get(3).getPK()).getIntValue());
+	}
+
+	@Test
+	public void aggregatesShouldBeCalculatedByDatabase() throws Exception {
+		assertTrue(Arrays.equals(new long[] { 0, 0, -1, -1 }, testService.getAggregatesOfTestBOs("Test2")));
+
+		createTestBOs(5);
+
+		assertTrue(Arrays.equals(new long[] { 1, 1, 10, 4 }, testService.getAggregatesOfTestBOs("Test2")));
+		assertTrue(Arrays.equals(new long[] { 0, 0, 10, 4 }, testService.getAggregatesOfTestBOs("Test9")));
+	}
+
+	@Test
+	public void saveBOShouldUpdateExistingBOAndCreateMissingBO() throws Exception {
+		TestBO bo = createTestBOs(1).get(0);
+		bo.setStringValue("Updated");
+		testService.saveTestBO(bo);
+
+		TestBO newBO = new TestBO(new TestPK(bo.getPK().getId() + 100));
+		newBO.setDateValue(DateUtil.createDate(2011, 10, 5));
+		newBO.setStringValue("New");
+		testService.saveTestBO(newBO);
+
+		assertEquals("Updated", boService.<TestPK, TestBO>findByPK(bo.getPK()).getStringValue());
+		assertEquals("New", boService.<TestPK, TestBO>findByPK(newBO.getPK()).getStringValue());
+	}
+
+	@Test
+	public void saveBOsShouldSaveBOsInBatchesAndCreateBOsWithoutPK() throws Exception {
+		List<TestBO> bos = createTestBOs(3);
+		for (TestBO bo : bos) {
+			bo.setIntValue(bo.getIntValue() + 10);
+		}
+		TestBO boWithoutPK = new TestBO(null);
+		boWithoutPK.setDateValue(DateUtil.createDate(2011, 10, 5));
+		boWithoutPK.setIntValue(20);
+		boWithoutPK.setStringValue("Test20");
+		bos.add(1, boWithoutPK);
+
+		List<TestBO> savedBOs = testService.saveTestBOs(bos, 2);
+
+		assertEquals(4, savedBOs.size());
+		assertNotNull(savedBOs.get(1).getPK());
+		List<Integer> intValues = new ArrayList<Integer>();
+		for (TestBO bo : testService.findAllTestBOs()) {
+			intValues.add(bo.getIntValue());
+		}
+		assertEquals(Arrays.asList(10, 11, 12, 20), intValues);
+	}
+
+	@Test
+	public void updateBOWithDirtyTrackingShouldOnlyUpdateChangedColumns() throws Exception {
+		TestPK pk = createTestBOs(1).get(0).getPK();
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			DirtyTrackingTestDAO dao = new DirtyTrackingTestDAO(connection);
+			TestBO bo = dao.findByPK(pk);
+			executeUpdate(connection, "UPDATE test SET STRING_NOT_NULL = 'Changed' WHERE ID = " + pk.getId());
+			bo.setIntValue(42);
+
+			dao.updateBO(bo);
+
+			TestBO updatedBO = dao.findByPK(pk);
+			assertEquals(42, updatedBO.getIntValue());
+			// A full update would have overwritten the string value with the value of bo
+			assertEquals("Changed", updatedBO.getStringValue());
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+	}
+
+	@Test
+	public void updateBOWithDirtyTrackingWithoutChangesShouldNotAccessDatabase() throws Exception {
+		TestPK pk = createTestBOs(1).get(0).getPK();
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			DirtyTrackingTestDAO dao = new DirtyTrackingTestDAO(connection);
+			TestBO bo = dao.findByPK(pk);
+			executeUpdate(connection, "DELETE FROM test WHERE ID = " + pk.getId());
+
+			// Would fail because no row is updated if an update statement was executed
+			dao.updateBO(bo);
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+	}
+
+	@Test
+	public void updateBOWithDirtyTrackingShouldDetectDateChangedInPlace() throws Exception {
+		TestPK pk = createTestBOs(1).get(0).getPK();
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			DirtyTrackingTestDAO dao = new DirtyTrackingTestDAO(connection);
+			TestBO bo = dao.findByPK(pk);
+			bo.getDateValue().setTime(DateUtil.createDate(2012, 3, 4).getTime());
+
+			dao.updateBO(bo);
+
+			assertEquals(DateUtil.createDate(2012, 3, 4), dao.findByPK(pk).getDateValue());
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+	}
+
+	@Test
+	public void updateBOWithDirtyTrackingAfterSaveBOsShouldNotUseStaleSnapshot() throws Exception {
+		TestPK pk = createTestBOs(2).get(1).getPK();
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			DirtyTrackingTestDAO dao = new DirtyTrackingTestDAO(connection);
+			TestBO bo = dao.findByPK(pk);
+			bo.setIntValue(2);
+			dao.saveBOs(Arrays.asList(bo));
+			bo.setIntValue(1);
+
+			dao.updateBO(bo);
+
+			assertEquals(1, dao.findByPK(pk).getIntValue());
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+	}
+
+	@Test
+	public void updateBOWithDirtyTrackingShouldNotUseSnapshotOfRolledBackTransaction() throws Exception {
+		TestPK pk = createTestBOs(1).get(0).getPK();
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			DirtyTrackingTestDAO dao = new DirtyTrackingTestDAO(connection);
+			executeUpdate(connection, "UPDATE test SET INT_COL = 7 WHERE ID = " + pk.getId());
+			TestBO bo = dao.findByPK(pk);
+			AbstractBusinessObjectDAO.discardSnapshots();
+			connection.rollback();
+
+			dao.updateBO(bo);
+
+			assertEquals(7, dao.findByPK(pk).getIntValue());
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+	}
+
+	@Test
+	public void updateBOWithDirtyTrackingShouldUseSnapshotOfEarlierServiceCall() throws Exception {
+		TestPK pk = createTestBOs(1).get(0).getPK();
+		TestBO bo = testService.findTestBOWithDirtyTracking(pk);
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			executeUpdate(connection, "UPDATE test SET STRING_NOT_NULL = 'Changed' WHERE ID = " + pk.getId());
+			connection.commit();
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+		bo.setIntValue(42);
+
+		testService.updateTestBOWithDirtyTracking(bo);
+
+		TestBO updatedBO = testService.findTestBOWithDirtyTracking(pk);
+		assertEquals(42, updatedBO.getIntValue());
+		// A full update would have overwritten the string value with the value of bo
+		assertEquals("Changed", updatedBO.getStringValue());
+	}
+
+	@Test
+	public void snapshotsShouldNotBeSharedWithOtherInstances() throws Exception {
+		TestPK pk = createTestBOs(1).get(0).getPK();
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			DirtyTrackingTestDAO dao = new DirtyTrackingTestDAO(connection);
+			TestBO loadedBO = dao.findByPK(pk);
+			executeUpdate(connection, "UPDATE test SET STRING_NOT_NULL = 'Changed' WHERE ID = " + pk.getId());
+			TestBO copy = loadedBO.copy();
+			copy.setIntValue(42);
+
+			dao.updateBO(copy);
+
+			assertEquals(loadedBO.getStringValue(), dao.findByPK(pk).getStringValue());
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+	}
+
+	private void executeUpdate(Connection connection, String sql) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql);
+		try {
+			statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	@Test
+	public void deleteBOsShouldDeleteExistingBOs() throws Exception {
+		List<TestBO> bos = createTestBOs(5);
+
+		int count = testService.deleteTestBOs(Arrays.asList(
+				bos.get(0).getPK(), bos.get(2).getPK(), bos.get(3).getPK(), new TestPK(-1)));
+
+		assertEquals(3, count);
+		assertEquals(2, testService.findAllTestBOs().size());
+	}
+
+	@Test
+	public void deleteByWhereClauseShouldReturnNumberOfDeletedRecords() throws Exception {
+		createTestBOs(3);
+
+		assertEquals(1, testService.deleteTestBOsWithStringValue("Test1"));
+		assertEquals(0, testService.deleteTestBOsWithStringValue("Test1"));
+		assertEquals(2, testService.findAllTestBOs().size());
+	}
+
+	@Test
+	public void findByCriteriaShouldReturnMatchingBOsInOrder() throws Exception {
+		createTestBOs(10);
+
+		List<Integer> intValues = new ArrayList<Integer>();
+		for (TestBO bo : testService.findTestBOsWithIntValueBetweenOrStringValue(2, 4, "Test8", 10)) {
+			intValues.add(bo.getIntValue());
+		}
+		assertEquals(Arrays.asList(2, 3, 4, 8), intValues);
+
+		assertEquals(2, testService.findTestBOsWithIntValueBetweenOrStringValue(2, 4, "Test8", 2).size());
+	}
+
+	@Test
+	public void findProjectionShouldReturnValuesOfSelectedColumns() throws Exception {
+		createTestBOs(4);
+
+		List<ProjectedRow> rows = testService.findIntAndStringValuesOfTestBOs(2);
+
+		assertEquals(2, rows.size());
+		assertEquals(2, rows.get(0).getInt(TestTable.INT));
+		assertEquals("Test2", rows.get(0).getString(TestTable.STRING_NOT_NULL));
+		assertEquals(3, rows.get(1).getInt(0));
+		assertEquals("Test3", rows.get(1).getString(1));
+		assertFalse(rows.get(1).isNull(TestTable.LONG));
+		assertEquals(0, rows.get(1).getLong(TestTable.LONG));
+	}
+
+	@Test
+	public void columnarTableShouldSupportFilterSumAndGroupBy() throws Exception {
+		List<TestBO> bos = new ArrayList<TestBO>();
+		for (int i=0; i<6; i++) {
+			TestBO bo = new TestBO(null);
+			bo.setDateValue(DateUtil.createDate(2011, 10, 5 + i));
+			bo.setIntValue(i);
+			bo.setBoolValue(i % 2 == 0);
+			bo.setStringValue(i < 4 ? "A" : "B");
+			bos.add(bo);
+		}
+		testService.createTestBOs(bos, 10);
+
+		ColumnarTable columnarTable = testService.loadTestBOsColumnar();
+
+		assertEquals(6, columnarTable.getNrRows());
+		BitSet all = columnarTable.selectAll();
+		assertEquals(15, columnarTable.sumLong(TestTable.INT, all));
+		assertEquals(0 + 2 + 4, columnarTable.sumLong(TestTable.INT, columnarTable.filterBoolean(TestTable.BOOL, true)));
+		BitSet selection = columnarTable.filterInt(TestTable.INT, value -> value >= 2);
+		selection.and(columnarTable.filterString(TestTable.STRING_NOT_NULL, "A"));
+		assertEquals(2 + 3, columnarTable.sumLong(TestTable.INT, selection));
+		assertEquals(Arrays.asList("A", "B"), columnarTable.getDistinctStrings(TestTable.STRING_NOT_NULL));
+
+		Map<String, Double> sums = columnarTable.sumGroupedBy(TestTable.STRING_NOT_NULL, TestTable.INT, all);
+		assertEquals(6.0, sums.get("A"));
+		assertEquals(9.0, sums.get("B"));
+
+		int row = columnarTable.filterInt(TestTable.INT, value -> value == 3).nextSetBit(0);
+		assertEquals(DateUtil.createDate(2011, 10, 8), columnarTable.getDate(TestTable.DATE, row));
+	}
+
+	@Test
+	public void cachedBOShouldBeFoundWithoutDatabaseUntilItIsUpdated() throws Exception {
+		BusinessObjectCache<TestPK, TestBO> cache = new BusinessObjectCache<TestPK, TestBO>(10, 1, TimeUnit.HOURS, TestBO::copy);
+		BusinessObjectService.registerBO(TestBO.class, TestPK.class, TestDAO.class, cache);
+		try {
+			TestBO bo = createTestBOs(1).get(0);
+
+			assertEquals(0, boService.<TestPK, TestBO>findByPK(bo.getPK()).getIntValue());
+			assertEquals(0, boService.<TestPK, TestBO>findByPK(bo.getPK()).getIntValue());
+			assertEquals(1, cache.getHitCount());
+			assertEquals(1, cache.getMissCount());
+
+			bo.setIntValue(42);
+			boService.updateBO(bo);
+			assertEquals(42, boService.<TestPK, TestBO>findByPK(bo.getPK()).getIntValue());
+
+			boService.deleteBO(bo.getPK());
+			assertNull(boService.findByPK(bo.getPK()));
+		} finally {
+			BusinessObjectService.registerBO(TestBO.class, TestPK.class, TestDAO.class);
+		}
+	}
+
+	@Test
+	public void cachedBOShouldBeInvalidatedByChangesMadeWithDAO() throws Exception {
+		BusinessObjectCache<TestPK, TestBO> cache = new BusinessObjectCache<TestPK, TestBO>(10, 1, TimeUnit.HOURS, TestBO::copy);
+		BusinessObjectService.registerBO(TestBO.class, TestPK.class, TestDAO.class, cache);
+		try {
+			TestBO bo = createTestBOs(1).get(0);
+			boService.<TestPK, TestBO>findByPK(bo.getPK()).setIntValue(13);
+			assertEquals(0, boService.<TestPK, TestBO>findByPK(bo.getPK()).getIntValue());
+
+			bo.setIntValue(42);
+			testService.saveTestBOs(Arrays.asList(bo), 10);
+			assertEquals(42, boService.<TestPK, TestBO>findByPK(bo.getPK()).getIntValue());
+
+			testService.deleteTestBOs(Arrays.asList(bo.getPK()));
+			assertNull(boService.findByPK(bo.getPK()));
+		} finally {
+			BusinessObjectService.registerBO(TestBO.class, TestPK.class, TestDAO.class);
+		}
+	}
+
+	@Test
+	public void parallelScanShouldFindAllBOs() throws Exception {
+		List<TestBO> bos = createTestBOs(10);
+
+		List<TestBO> foundBOs = boService.findAllBOsInParallel(TestBO.class, 3);
+		assertEquals(10, foundBOs.size());
+		for (int i=0; i<bos.size(); i++) {
+			assertEquals(bos.get(i).getPK(), foundBOs.get(i).getPK());
+		}
+
+		Queue<TestBO> consumedBOs = new ConcurrentLinkedQueue<TestBO>();
+		boService.forEachBOInParallel(TestBO.class, 3, consumedBOs::add);
+		assertEquals(10, consumedBOs.size());
+	}
+
+	@Test
+	public void csvImportShouldResumeAfterLastCommittedBatch() throws Exception {
+		Path file = temporaryFolder.newFile("import.csv").toPath();
+		List<String> lines = new ArrayList<String>();
+		lines.add("int_col,bool_col,date_col,long_col,string_not_null");
+		for (int i=0; i<10; i++) {
+			lines.add(i + ",true,2011-10-" + (10 + i) + ",100," + (i == 6 ? "" : "\"Test, " + i + '"'));
+		}
+		Files.write(file, lines, StandardCharsets.UTF_8);
+
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			CsvImporter importer = new CsvImporter(connection, new TestTable());
+			importer.setHeader(true);
+			importer.setBatchSize(2);
+			importer.setCommitInterval(1);
+			importer.setQueueCapacity(1);
+			try {
+				importer.importFile(file);
+				fail("Expected an exception because row 7 has no string value");
+			} catch (SQLException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("Line 8:"));
+			}
+			assertEquals(6, importer.getNrRowsCommitted());
+			assertEquals(6, testService.findAllTestBOs().size());
+
+			lines.set(7, "6,false,2011-10-16,42,Test6");
+			Files.write(file, lines, StandardCharsets.UTF_8);
+			importer.importFile(file, importer.getNrRowsCommitted());
+			assertEquals(4, importer.getNrRowsInserted());
+			assertEquals(10, importer.getNrRowsCommitted());
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+
+		List<TestBO> bos = testService.findAllTestBOs();
+		assertEquals(10, bos.size());
+		assertEquals("Test, 0", bos.get(0).getStringValue());
+		assertEquals(DateUtil.createDate(2011, 10, 10), bos.get(0).getDateValue());
+		assertTrue(bos.get(0).getBoolValue());
+		assertEquals("Test6", bos.get(6).getStringValue());
+		assertEquals(42, bos.get(6).getLongValue());
+	}
+
+	@Test
+	public void exportedTableShouldBeImportedAgain() throws Exception {
+		List<TestBO> bos = createTestBOs(5);
+		bos.get(1).setStringValue("a, \"b\"");
+		bos.get(2).setStringValue("");
+		bos.get(3).setLongValue(1234567890123L);
+		testService.saveTestBOs(bos, 10);
+		List<TestPK> pks = new ArrayList<TestPK>();
+		for (TestBO bo : bos) {
+			pks.add(bo.getPK());
+		}
+		Path binaryFile = temporaryFolder.newFile("export.bin").toPath();
+		Path csvFile = temporaryFolder.newFile("export.csv").toPath();
+
+		Connection connection = Factory.getInstance(ConnectionPool.class).getConnection();
+		try {
+			TableExporter exporter = new TableExporter(connection, new TestTable());
+			assertEquals(5, exporter.exportToBinary(binaryFile));
+			assertEquals(5, exporter.exportToCsv(csvFile));
+
+			testService.deleteTestBOs(pks);
+			assertEquals(5, exporter.importFromBinary(binaryFile));
+			connection.commit();
+			assertTestBOsEqual(bos, testService.findAllTestBOs());
+
+			testService.deleteTestBOs(pks);
+			CsvImporter importer = new CsvImporter(connection, new TestTable());
+			importer.setHeader(true);
+			importer.importFile(csvFile);
+			assertTestBOsEqual(bos, testService.findAllTestBOs());
+		} finally {
+			Factory.getInstance(ConnectionPool.class).releaseConnection(connection);
+		}
+	}
+
+	private void assertTestBOsEqual(List<TestBO> expected, List<TestBO> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i=0; i<expected.size(); i++) {
+			assertEquals(expected.get(i).getPK(), actual.get(i).getPK());
+			assertEquals(expected.get(i).getIntValue(), actual.get(i).getIntValue());
+			assertEquals(expected.get(i).getBoolValue(), actual.get(i).getBoolValue());
+			assertEquals(expected.get(i).getDateValue(), actual.get(i).getDateValue());
+			assertEquals(expected.get(i).getLongValue(), actual.get(i).getLongValue());
+			assertEquals(expected.get(i).getStringValue(), actual.get(i).getStringValue());
+		}
+	}
+
+	private List<TestBO> createTestBOs(int nrBOs) throws Exception {
+		List<TestBO> bos = new ArrayList<TestBO>();
+		for (int i=0; i<nrBOs; i++) {
+			TestBO bo = new TestBO(null);
+			bo.setDateValue(DateUtil.createDate(2011, 10, 5));
+			bo.setIntValue(i);
+			bo.setStringValue("Test" + i);
+			bos.add(boService.createBO(bo));
+		}
+		return bos;
+	}
 }
@@ -5,7 +5,12 @@ package nl.gogognome.lib.test.database;
 
 import java.sql.Connection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import nl.gogognome.lib.dao.ColumnarTable;
+import nl.gogognome.lib.dao.ProjectedRow;
 import nl.gogognome.lib.service.AbstractService;
 import nl.gogognome.lib.service.ServiceException;
 
@@ -29,4 +34,237 @@ public class TestService extends AbstractService {
 	    }
         return bos;
 	}
+
+	public List<TestBO> createTestBOs(List<TestBO> bos, int batchSize) throws ServiceException {
+		List<TestBO> createdBOs;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+	        testDao.setBatchSize(batchSize);
+
+	        createdBOs = testDao.createBOs(bos);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while creating TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return createdBOs;
+	}
+
+	public long sumIntValuesOfAllTestBOs() throws ServiceException {
+		AtomicLong sum = new AtomicLong();
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+	        testDao.setFetchSize(2);
+
+	        testDao.forEachBO(bo -> sum.addAndGet(bo.getIntValue()));
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while summing TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return sum.get();
+	}
+
+	public List<TestBO> saveTestBOs(List<TestBO> bos, int batchSize) throws ServiceException {
+		List<TestBO> savedBOs;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+	        testDao.setBatchSize(batchSize);
+
+	        savedBOs = testDao.saveBOs(bos);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while saving TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return savedBOs;
+	}
+
+	public TestBO saveTestBO(TestBO bo) throws ServiceException {
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+
+	        bo = testDao.saveBO(bo);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while saving TestBO " + bo, e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return bo;
+	}
+
+	public List<TestBO> findTestBOsWithIntValueBetweenOrStringValue(int from, int to, String stringValue, int limit)
+			throws ServiceException {
+		List<TestBO> bos;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+
+	        bos = testDao.findWithIntValueBetweenOrStringValue(from, to, stringValue, limit);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while searching for TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return bos;
+	}
+
+	public List<ProjectedRow> findIntAndStringValuesOfTestBOs(int minIntValue) throws ServiceException {
+		List<ProjectedRow> rows;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+
+	        rows = testDao.findIntAndStringValues(minIntValue);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while searching for values of TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return rows;
+	}
+
+	public ColumnarTable loadTestBOsColumnar() throws ServiceException {
+		ColumnarTable columnarTable;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+	        testDao.setFetchSize(2);
+
+	        columnarTable = testDao.loadAllColumnar();
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while loading TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return columnarTable;
+	}
+
+	public int deleteTestBOs(List<TestPK> pks) throws ServiceException {
+		int count;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+
+	        count = testDao.deleteBOs(pks);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while deleting TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return count;
+	}
+
+	public int deleteTestBOsWithStringValue(String stringValue) throws ServiceException {
+		int count;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+
+	        count = testDao.deleteWithStringValue(stringValue);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while deleting TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return count;
+	}
+
+	public long[] getAggregatesOfTestBOs(String stringValue) throws ServiceException {
+		long[] aggregates = new long[4];
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+
+	        aggregates[0] = testDao.existsWithStringValue(stringValue) ? 1 : 0;
+	        aggregates[1] = testDao.countWithStringValue(stringValue);
+	        Number sum = testDao.sumOfIntValues();
+	        aggregates[2] = sum != null ? sum.longValue() : -1;
+	        Integer max = testDao.maxIntValue();
+	        aggregates[3] = max != null ? max : -1;
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while aggregating TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return aggregates;
+	}
+
+	public List<String> findStringValuesOfAllTestBOs() throws ServiceException {
+		List<String> values;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+
+	        try (Stream<TestBO> stream = testDao.streamAllBOs()) {
+	        	values = stream.map(TestBO::getStringValue).collect(Collectors.toList());
+	        }
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while streaming TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return values;
+	}
+
+	public List<TestBO> findPageOfTestBOs(TestBO lastSeenBO, int limit) throws ServiceException {
+		List<TestBO> bos;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new TestDAO(connection);
+
+	        bos = testDao.findPageOrderedByIntDescending(lastSeenBO, limit);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while fetching a page of TestBOs", e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return bos;
+	}
+
+	public TestBO findTestBOWithDirtyTracking(TestPK pk) throws ServiceException {
+		TestBO bo;
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new DirtyTrackingTestDAO(connection);
+
+	        bo = testDao.findByPK(pk);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while fetching TestBO " + pk, e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+        return bo;
+	}
+
+	public void updateTestBOWithDirtyTracking(TestBO bo) throws ServiceException {
+	    try {
+	    	Connection connection = createConnection();
+	        TestDAO testDao = new DirtyTrackingTestDAO(connection);
+
+	        testDao.updateBO(bo);
+	        success = true;
+	    } catch (Exception e) {
+	   		throw new ServiceException("A problem occurred while updating TestBO " + bo, e);
+	    } finally {
+	        releaseConnection(success);
+	    }
+	}
 }